@@ -0,0 +1,377 @@
+package com.ontotext.ehri.georecon;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Split access points into atomic access points exactly like Scripts/atomize.pl, so that atomization can run in the
+ * same pass as reconciliation. The regular expressions are those of the Perl script, compiled once with Unicode
+ * character classes and Perl's notion of line ends. Nested brackets are extracted by a single scan instead of repeated
+ * regular expression passes, but in the same order.
+ */
+public class Atomizer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Atomizer.class);
+
+    // make \d, \s and \w match like in Perl with Unicode strings, and $ match before \n only
+    private static final int FLAGS = Pattern.UNICODE_CHARACTER_CLASS | Pattern.UNIX_LINES;
+
+    // remove_itemization
+    private static final Pattern ITEM_BRACKETS = Pattern.compile("^(?:\\d?-)?(?:\\d+[a-zA-Z]?|[a-zA-Z])\\.?\\d*\\s?\\((.*)\\)?$", FLAGS);
+    private static final Pattern ITEM_SPACE = Pattern.compile("^(?:[a-zA-Z]|\\d?-\\d+|\\d\\.\\d+\\.?)\\)?\\s", FLAGS);
+    private static final Pattern ITEM_DOT = Pattern.compile("^\\d+\\.\\s", FLAGS);
+    private static final Pattern MILITARY_UNIT = Pattern.compile("armee|division", FLAGS | Pattern.CASE_INSENSITIVE);
+
+    // normalize_punctuation
+    private static final Pattern USELESS_PUNCTUATION = Pattern.compile("<>|\\{[^}]*\\}|\\[\\??\\]|\\*|\"|_", FLAGS);
+    private static final Pattern EN_DASH = Pattern.compile("\\u2013", FLAGS);
+    private static final Pattern DOT_DASH = Pattern.compile("\\.-", FLAGS);
+    private static final Pattern DATE_INTERVAL = Pattern.compile("(\\d)\\s*-\\s*(\\d)", FLAGS);
+    private static final Pattern DATE_SLASHES = Pattern.compile("(\\d{2})/(\\d{2})/(\\d{4})", FLAGS);
+    private static final Pattern LETTER_SLASH = Pattern.compile("([^\\W\\d])\\s*/\\s*([^\\W\\d])", FLAGS);
+
+    // split_compound (the separators are kept like in Perl's split with a capturing group)
+    private static final Pattern COMPOUND_SPLITTER = Pattern.compile("\\s*(\\s-\\s|-->?|\\s>>\\s)\\s*", FLAGS);
+
+    // split_lists
+    private static final Pattern OUTER_BRACKETS = Pattern.compile("^[\\(\\)\\[\\]]+|[\\(\\)\\[\\]]+$", FLAGS);
+    private static final Pattern DOT_SPACE = Pattern.compile("(\\D)\\.\\s", FLAGS);
+    private static final Pattern SAINT = Pattern.compile("St\\s\\.\\s", FLAGS);
+    private static final Pattern LIST_SPLITTER = Pattern.compile("[\\(\\)\\[\\],;:=]+|\\s[/\\.]\\s", FLAGS);
+
+    // cleanup
+    private static final Pattern SPACES = Pattern.compile("\\s+", FLAGS);
+    private static final Pattern OUTER_SPACE = Pattern.compile("^\\s|\\s$", FLAGS);
+    private static final Pattern FINAL_DOT = Pattern.compile("([^A-Z])\\.$", FLAGS);
+    private static final Pattern OUTER_PUNCTUATION = Pattern.compile("^[\\?-]\\s*|\\s*[\\?-]$", FLAGS);
+    private static final Pattern LEFTOVERS = Pattern.compile("^\\W+$", FLAGS);
+
+    // separators used in files
+    private static final String FIELD_DELIM = "\t";
+    private static final Pattern FIELD_SPLITTER = Pattern.compile(FIELD_DELIM);
+    private static final String LIST_DELIM = ",";
+
+    /**
+     * Run the program with the same arguments as Scripts/atomize.pl.
+     * @param args Command-line arguments: <input file> <input column> <output file> <output column>.
+     */
+    public static void main(String[] args) {
+
+        // check arguments
+        if (args.length != 4) {
+            System.out.println("USAGE: java " + Atomizer.class.getName() +
+                    " <input file> <input column> <output file> <output column>");
+            System.exit(0);
+        }
+
+        try {
+            LOGGER.info("atomizing access points...");
+            long start = System.currentTimeMillis();
+            atomizeFile(new File(args[0]), args[1], new File(args[2]), args[3]);
+            long time = System.currentTimeMillis() - start;
+            LOGGER.info("access points atomized in " + time + " ms");
+        } catch (IOException e) {
+            LOGGER.error("exception while atomizing", e);
+        }
+    }
+
+    /**
+     * Prepend a column with the atomized access points of an input column to each line of a TSV file.
+     * @param inputFile The input file.
+     * @param inputColumnName The name of the column with access points.
+     * @param outputFile The output file.
+     * @param outputColumnName The name of the column with atomized access points.
+     * @throws IOException
+     */
+    public static void atomizeFile(File inputFile, String inputColumnName, File outputFile, String outputColumnName)
+            throws IOException {
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(inputFile), StandardCharsets.UTF_8));
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputFile), StandardCharsets.UTF_8))) {
+            int inputColumn = -1;
+            String line;
+
+            while ((line = readLine(reader)) != null) {
+                line = line.replace("\r", "");
+                String[] fields = FIELD_SPLITTER.split(line);
+
+                // find the index of the input column in the header line (the last one if repeated)
+                if (inputColumn == -1) {
+                    for (int i = 0; i < fields.length; i++) {
+                        if (fields[i].equals(inputColumnName)) inputColumn = i;
+                    }
+
+                    if (inputColumn == -1) throw new IOException("input column does not exist: " + inputColumnName);
+                    writer.write(outputColumnName + FIELD_DELIM + line + "\n");
+                    continue;
+                }
+
+                // output list of atoms at the beginning of the line
+                String field = inputColumn < fields.length ? fields[inputColumn] : "";
+                writer.write(join(atomize(field)) + FIELD_DELIM + line + "\n");
+            }
+        }
+    }
+
+    /**
+     * Read a line that ends with \n like Perl does, so that a lone \r does not end the line.
+     * @param reader The reader.
+     * @return The line without \n, or null at the end of input.
+     * @throws IOException
+     */
+    private static String readLine(BufferedReader reader) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+
+        while ((c = reader.read()) != -1) {
+            if (c == '\n') return line.toString();
+            line.append((char) c);
+        }
+
+        return line.length() > 0 ? line.toString() : null;
+    }
+
+    /**
+     * Split an access point into atomic access points.
+     * @param text The access point.
+     * @return The non-empty atomic access points in order.
+     */
+    public static List<String> atomize(String text) {
+        text = Normalizer.normalize(text, Normalizer.Form.NFKC);
+
+        // remove itemizations and normalize punctuation
+        text = removeItemization(text);
+        text = normalizePunctuation(text);
+
+        // split text into access points
+        List<String> accessPoints = new ArrayList<String>();
+        accessPoints.add(text);
+        accessPoints = splitCompound(accessPoints);
+        accessPoints = splitNested(accessPoints);
+        accessPoints = splitLists(accessPoints);
+
+        // return only non-empty atomic access points
+        List<String> atoms = new ArrayList<String>();
+        for (String accessPoint : accessPoints) {
+            String atom = cleanup(accessPoint);
+            if (! atom.isEmpty()) atoms.add(atom);
+        }
+
+        return atoms;
+    }
+
+    /**
+     * Join atomic access points with the list separator of the reconciler.
+     * @param atoms The atomic access points.
+     * @return The joined access points.
+     */
+    public static String join(List<String> atoms) {
+        StringBuilder result = new StringBuilder();
+
+        for (String atom : atoms) {
+            if (result.length() > 0) result.append(LIST_DELIM);
+            result.append(atom);
+        }
+
+        return result.toString();
+    }
+
+    /**
+     * Remove starting text which indicates some sort of itemization.
+     */
+    private static String removeItemization(String text) {
+
+        // itemizations where the item is enclosed in brackets
+        text = ITEM_BRACKETS.matcher(text).replaceAll("$1");
+
+        // itemizations that end with a space
+        text = ITEM_SPACE.matcher(text).replaceAll("");
+
+        // itemizations with a dot unless the item is a military unit
+        if (! MILITARY_UNIT.matcher(text).find()) text = ITEM_DOT.matcher(text).replaceAll("");
+        return text;
+    }
+
+    /**
+     * Normalize punctuation.
+     */
+    private static String normalizePunctuation(String text) {
+        text = USELESS_PUNCTUATION.matcher(text).replaceAll("");
+        text = EN_DASH.matcher(text).replaceAll("-");
+        text = DOT_DASH.matcher(text).replaceAll("-");
+        text = DATE_INTERVAL.matcher(text).replaceAll("$1-$2");
+        text = DATE_SLASHES.matcher(text).replaceAll("$1.$2.$3");
+        return LETTER_SLASH.matcher(text).replaceAll("$1 / $2");
+    }
+
+    /**
+     * Split compound access points, keeping the separators as separate access points.
+     */
+    private static List<String> splitCompound(List<String> accessPoints) {
+        List<String> result = new ArrayList<String>();
+        for (String accessPoint : accessPoints) split(COMPOUND_SPLITTER, accessPoint, result);
+        return result;
+    }
+
+    /**
+     * Extract nested access points. Innermost brackets come first, then those that become innermost once they are
+     * removed, and so on, and the remaining text comes last. A bracket in parentheses may contain ")" and a bracket in
+     * square brackets may contain "]" like in the regular expression of the Perl script.
+     */
+    private static List<String> splitNested(List<String> accessPoints) {
+        List<String> result = new ArrayList<String>();
+
+        for (String accessPoint : accessPoints) {
+            List<List<String>> levels = new ArrayList<List<String>>();
+            String remainder = extractNested(accessPoint, levels);
+            for (List<String> level : levels) result.addAll(level);
+            result.add(remainder);
+        }
+
+        return result;
+    }
+
+    /**
+     * Scan a text once and collect the bracketed parts by the round of extraction in which the Perl script would
+     * remove them.
+     * @param text The text.
+     * @param levels List to which to add the bracketed parts of each round in order of appearance.
+     * @return The text without the bracketed parts.
+     */
+    private static String extractNested(String text, List<List<String>> levels) {
+        List<Bracket> stack = new ArrayList<Bracket>();
+        StringBuilder remainder = new StringBuilder(text.length());
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            Bracket top = stack.isEmpty() ? null : stack.get(stack.size() - 1);
+
+            // open a bracket
+            if (c == '(' || c == '[') {
+                stack.add(new Bracket(c));
+                continue;
+            }
+
+            // close the innermost bracket if it is of the same kind
+            if (top != null && ((c == ')' && top.opening == '(') || (c == ']' && top.opening == '['))) {
+                stack.remove(stack.size() - 1);
+                int level = top.height;
+                while (levels.size() <= level) levels.add(new ArrayList<String>());
+                levels.get(level).add(top.content.append(c).toString());
+
+                // the enclosing bracket can only be removed after this one
+                if (! stack.isEmpty()) {
+                    Bracket parent = stack.get(stack.size() - 1);
+                    parent.height = Math.max(parent.height, level + 1);
+                }
+
+                continue;
+            }
+
+            // anything else belongs to the innermost bracket or the remaining text
+            if (top == null) remainder.append(c);
+            else top.content.append(c);
+        }
+
+        // brackets that are never closed stay in the text
+        for (int i = stack.size() - 1; i >= 0; i--) {
+            String content = stack.get(i).content.toString();
+            if (i == 0) remainder.append(content);
+            else stack.get(i - 1).content.append(content);
+        }
+
+        return remainder.toString();
+    }
+
+    /**
+     * Split items in lists.
+     */
+    private static List<String> splitLists(List<String> accessPoints) {
+        List<String> result = new ArrayList<String>();
+
+        // trim leading or trailing brackets and split
+        for (String accessPoint : accessPoints) {
+            accessPoint = OUTER_BRACKETS.matcher(accessPoint).replaceAll("");
+            accessPoint = DOT_SPACE.matcher(accessPoint).replaceAll("$1 . ");
+            accessPoint = SAINT.matcher(accessPoint).replaceAll("St. ");
+            split(LIST_SPLITTER, accessPoint, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Clean up an access point.
+     */
+    private static String cleanup(String text) {
+
+        // squash repeated spaces and trim one leading and trailing space
+        text = SPACES.matcher(text).replaceAll(" ");
+        text = OUTER_SPACE.matcher(text).replaceAll("");
+
+        // remove dot at the end unless preceded by a capital letter
+        text = FINAL_DOT.matcher(text).replaceAll("$1");
+
+        // trim leading and trailing punctuation and remove any leftovers
+        text = OUTER_PUNCTUATION.matcher(text).replaceAll("");
+        return LEFTOVERS.matcher(text).replaceAll("");
+    }
+
+    /**
+     * Split a string like Perl's split: captured groups are kept as fields and trailing empty fields are dropped.
+     * @param splitter The pattern that matches separators (must not match the empty string).
+     * @param text The string to split.
+     * @param result List to which to add the fields.
+     */
+    private static void split(Pattern splitter, String text, List<String> result) {
+        int size = result.size();
+        Matcher matcher = splitter.matcher(text);
+        int start = 0;
+
+        while (matcher.find()) {
+            result.add(text.substring(start, matcher.start()));
+            for (int group = 1; group <= matcher.groupCount(); group++) {
+                String captured = matcher.group(group);
+                result.add(captured == null ? "" : captured);
+            }
+
+            start = matcher.end();
+        }
+
+        result.add(text.substring(start));
+
+        // drop trailing empty fields
+        while (result.size() > size && result.get(result.size() - 1).isEmpty()) result.remove(result.size() - 1);
+    }
+
+    /**
+     * A bracket that has been opened but not closed yet.
+     */
+    private static class Bracket {
+        private final char opening;
+        private final StringBuilder content;
+
+        // number of rounds of extraction before this bracket can be removed
+        private int height = 0;
+
+        private Bracket(char opening) {
+            this.opening = opening;
+            content = new StringBuilder();
+            content.append(opening);
+        }
+    }
+}
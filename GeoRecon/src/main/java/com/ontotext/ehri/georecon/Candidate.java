@@ -0,0 +1,163 @@
+package com.ontotext.ehri.georecon;
+
+import com.ontotext.ehri.georecon.place.Place;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A candidate place for an atom with the evidence used to rank it and a confidence score.
+ */
+public class Candidate {
+
+    // separator for fields in the string representation
+    public static final String FIELD_SEPARATOR = "|";
+
+    // weights of the features in the score (they add up to one)
+    private static final double ANCESTORS_WEIGHT = 0.4;
+    private static final double POPULATION_WEIGHT = 0.3;
+    private static final double DISTANCE_WEIGHT = 0.1;
+    private static final double PRIOR_WEIGHT = 0.2;
+
+    // factor of the score of a candidate whose name was derived by a variant rule
+    private static final double VARIANT_DISCOUNT = 0.8;
+
+    // largest population and distance, used to scale features to [0, 1]
+    private static final double MAX_LOG_POPULATION = Math.log10(1 + Place.ROOT.getPopulation());
+    private static final double MAX_DISTANCE = 20037.5;
+
+    // prior of GeoNames feature classes, as archival access points mostly refer to countries, regions and settlements
+    private static final double DEFAULT_PRIOR = 0.2;
+    private static final Map<Character, Double> FEATURE_CLASS_PRIORS = new HashMap<Character, Double>();
+    static {
+        FEATURE_CLASS_PRIORS.put('A', 1.0);
+        FEATURE_CLASS_PRIORS.put('P', 0.9);
+        FEATURE_CLASS_PRIORS.put('L', 0.5);
+        FEATURE_CLASS_PRIORS.put('T', 0.4);
+        FEATURE_CLASS_PRIORS.put('H', 0.3);
+        FEATURE_CLASS_PRIORS.put('S', 0.3);
+    }
+
+    private Place place;
+    private int numAncestors;
+    private double distance;
+    private double prior;
+    private String variantRule;
+    private boolean derived;
+    private double score;
+    private double confidence;
+
+    /**
+     * Construct a candidate and compute its score.
+     * @param place The candidate place.
+     * @param numAncestors The number of other atoms with a match that is an ancestor of the place.
+     * @param numOtherAtoms The number of other atoms with matches.
+     */
+    public Candidate(Place place, int numAncestors, int numOtherAtoms) {
+        this(place, numAncestors, numOtherAtoms, null);
+    }
+
+    /**
+     * Construct a candidate and compute its score, which is discounted if the candidate matched a derived name.
+     * @param place The candidate place.
+     * @param numAncestors The number of other atoms with a match that is an ancestor of the place.
+     * @param numOtherAtoms The number of other atoms with matches.
+     * @param variantRule The rule that derived the matched name of the place, or null if the name is original.
+     */
+    public Candidate(Place place, int numAncestors, int numOtherAtoms, String variantRule) {
+        this.place = place;
+        this.variantRule = variantRule;
+        this.derived = variantRule != null;
+        this.numAncestors = numAncestors;
+        distance = place.referenceDistance();
+        prior = featureClassPrior(place.getFeature());
+
+        // combine features scaled to [0, 1]
+        double ancestors = numOtherAtoms == 0 ? 0 : (double) numAncestors / numOtherAtoms;
+        double population = Math.min(1, Math.log10(1 + place.getPopulation()) / MAX_LOG_POPULATION);
+        double closeness = 1 - Math.min(1, distance / MAX_DISTANCE);
+        score = ANCESTORS_WEIGHT * ancestors + POPULATION_WEIGHT * population + DISTANCE_WEIGHT * closeness +
+                PRIOR_WEIGHT * prior;
+        if (variantRule != null) score *= VARIANT_DISCOUNT;
+        confidence = score;
+    }
+
+    /**
+     * Construct a candidate without a score, for rankings that need no confidence. The distance, prior, score and
+     * confidence are NaN, and the variant rule is null.
+     * @param place The candidate place.
+     * @param numAncestors The number of other atoms with a match that is an ancestor of the place.
+     * @param derived Whether the matched name of the place was derived by a variant rule.
+     */
+    public Candidate(Place place, int numAncestors, boolean derived) {
+        this.place = place;
+        this.derived = derived;
+        this.numAncestors = numAncestors;
+        distance = prior = score = confidence = Double.NaN;
+    }
+
+    /**
+     * Get the prior of the class of a GeoNames feature.
+     * @param feature The feature code, e.g. "P.PPLC".
+     * @return The prior of the feature class.
+     */
+    public static double featureClassPrior(String feature) {
+        if (feature == null || feature.isEmpty()) return DEFAULT_PRIOR;
+        Double prior = FEATURE_CLASS_PRIORS.get(feature.charAt(0));
+        return prior == null ? DEFAULT_PRIOR : prior;
+    }
+
+    public Place getPlace() {
+        return place;
+    }
+
+    public int getNumAncestors() {
+        return numAncestors;
+    }
+
+    public long getPopulation() {
+        return place.getPopulation();
+    }
+
+    public double getDistance() {
+        return distance;
+    }
+
+    public double getPrior() {
+        return prior;
+    }
+
+    public String getVariantRule() {
+        return variantRule;
+    }
+
+    public boolean isDerived() {
+        return derived;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    public double getConfidence() {
+        return confidence;
+    }
+
+    /**
+     * Normalize the confidence of this candidate against the other candidates of the same atom. The confidence is the
+     * score of the candidate times its share of the scores of all candidates, so it is low if the evidence is weak or
+     * if other candidates are about as good.
+     * @param totalScore The sum of the scores of all candidates of the atom.
+     */
+    void normalize(double totalScore) {
+        confidence = totalScore > 0 ? score * score / totalScore : 0;
+    }
+
+    @Override
+    public String toString() {
+        return place.toString() + FIELD_SEPARATOR + String.format(Locale.ROOT, "%.3f", confidence) + FIELD_SEPARATOR +
+                numAncestors + FIELD_SEPARATOR + place.getPopulation() + FIELD_SEPARATOR +
+                String.format(Locale.ROOT, "%.0f", distance) + FIELD_SEPARATOR + place.getFeature();
+    }
+}
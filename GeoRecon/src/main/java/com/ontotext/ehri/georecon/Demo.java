@@ -5,6 +5,8 @@ import com.ontotext.ehri.georecon.place.PlaceIndex;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
 import java.util.Scanner;
 import java.util.SortedSet;
 
@@ -33,7 +35,7 @@ public class Demo {
         try {
             System.out.println("Loading index...");
             long start = System.currentTimeMillis();
-            PlaceIndex index = Tools.deserializeIndex(file);
+            PlaceIndex index = Reconciler.excludeStopFeatures(Tools.deserializeIndex(file));
             long time = System.currentTimeMillis() - start;
             System.out.println("Index loaded in " + time + " ms.");
 
@@ -46,7 +48,8 @@ public class Demo {
             // reconcile user input
             while (! (input = scanner.nextLine().trim()).equals(CMD_QUIT)) {
                 String[] atoms = Reconciler.LIST_SPLITTER.split(input);
-                SortedSet<Place> recons = Reconciler.reconcile(index, atoms, false);
+                List<List<Candidate>> candidates = Reconciler.rankCandidates(index, atoms, Integer.MAX_VALUE);
+                SortedSet<Place> recons = Reconciler.bestPlaces(candidates, false);
 
                 // print result from reconciliation if any
                 if (recons == null) {
@@ -60,14 +63,14 @@ public class Demo {
                     System.out.println();
                 }
 
-                // for each atom, get all matches in order of relevance
-                for (String atom : atoms) {
-                    SortedSet<Place> matches = index.get(atom);
-                    if (matches == null) continue;
+                // for each atom, print all candidates in order of relevance
+                for (int i = 0; i < atoms.length; i++) {
 
                     // print some additional information
-                    for (Place match : matches) {
-                        System.out.println("\"" + atom + "\": " + match.lineageString());
+                    for (Candidate candidate : candidates.get(i)) {
+                        System.out.println("\"" + atoms[i] + "\": " +
+                                String.format(Locale.ROOT, "%.3f", candidate.getConfidence()) + " " +
+                                candidate.getPlace().lineageString());
                     }
                 }
             }
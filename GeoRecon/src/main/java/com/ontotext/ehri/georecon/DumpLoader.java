@@ -1,5 +1,8 @@
 package com.ontotext.ehri.georecon;
 
+import com.ontotext.ehri.georecon.metrics.Counter;
+import com.ontotext.ehri.georecon.metrics.Histogram;
+import com.ontotext.ehri.georecon.metrics.Metrics;
 import org.openrdf.model.Model;
 import org.openrdf.model.URI;
 import org.openrdf.model.ValueFactory;
@@ -32,6 +35,10 @@ public class DumpLoader {
     // number of places to add in one batch
     private static final int BATCH_SIZE = 250000;
 
+    // metrics of parsed places and added batches (times in nanoseconds)
+    private static final Counter PLACES = Metrics.counter("dumploader.places");
+    private static final Histogram ADD_TIME = Metrics.histogram("dumploader.batch_add_nanos");
+
     /**
      * Run the program.
      * @param args Command-line arguments: <dump file> <repo dir>.
@@ -46,6 +53,7 @@ public class DumpLoader {
 
         File dump = new File(args[0]);
         File repo = new File(args[1]);
+        Metrics.start(DumpLoader.class.getSimpleName());
 
         try {
             LOGGER.info("loading dump...");
@@ -89,7 +97,9 @@ public class DumpLoader {
 
             // add triples in batches
             while ((triples = collectTriples(bufferedReader, parser, BATCH_SIZE)).size() > 0) {
+                long nanos = System.nanoTime();
                 connection.add(triples);
+                ADD_TIME.recordSince(nanos);
                 batchNum++;
                 int numAdded = BATCH_SIZE * batchNum;
                 long time = System.currentTimeMillis() - start;
@@ -149,6 +159,7 @@ public class DumpLoader {
                 parser.parse(stringReader, geoLink.toString());
                 stringReader.close();
                 numPlaces++;
+                PLACES.increment();
                 geoLink = null;
             }
         }
@@ -0,0 +1,267 @@
+package com.ontotext.ehri.georecon;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Sort lines of text within a memory budget. Lines are buffered until the budget is reached, then the buffer is
+ * sorted and spilled to a temporary file as a run. The sorted lines are read by merging the runs, so only one line
+ * and one read buffer per run are in memory. The number of runs merged at once is limited by the budget: if there are
+ * more runs, the oldest ones are merged into new runs first. Lines must not contain line breaks.
+ */
+public class ExternalSorter implements Closeable {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // estimated memory of a line: object headers and references plus two bytes per character
+    private static final long LINE_OVERHEAD = 64;
+
+    // size in characters of the buffer for reading a run, and estimated memory of an open run: the character buffer
+    // plus the byte buffer of the decoder
+    private static final int RUN_BUFFER = 8192;
+    private static final long RUN_MEMORY = 2L * RUN_BUFFER + 8192;
+
+    private final Comparator<String> comparator;
+    private final long memoryBudget;
+    private final File tempDir;
+
+    private List<String> buffer = new ArrayList<String>();
+    private long bufferMemory = 0;
+    private List<File> runs = new ArrayList<File>();
+    private List<BufferedReader> readers = new ArrayList<BufferedReader>();
+    private long size = 0;
+
+    /**
+     * Construct a sorter in natural order that spills to the default temporary directory.
+     * @param memoryBudget The memory for buffered lines in bytes.
+     */
+    public ExternalSorter(long memoryBudget) {
+        this(null, memoryBudget, null);
+    }
+
+    /**
+     * Construct a sorter.
+     * @param comparator The order of lines, or null for natural order.
+     * @param memoryBudget The memory for buffered lines in bytes.
+     * @param tempDir The directory of the runs, or null for the default temporary directory.
+     */
+    public ExternalSorter(Comparator<String> comparator, long memoryBudget, File tempDir) {
+        this.comparator = comparator;
+        this.memoryBudget = memoryBudget;
+        this.tempDir = tempDir;
+    }
+
+    /**
+     * Add a line to sort.
+     * @param line The line.
+     * @throws IOException
+     */
+    public void add(String line) throws IOException {
+        buffer.add(line);
+        bufferMemory += LINE_OVERHEAD + 2L * line.length();
+        size++;
+        if (bufferMemory >= memoryBudget) spill();
+    }
+
+    /**
+     * Get the number of lines added.
+     * @return The number of lines.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Get the number of runs on disk: the spilled runs, or the runs left to merge once the sorted lines are read.
+     * @return The number of runs.
+     */
+    public int numRuns() {
+        return runs.size();
+    }
+
+    /**
+     * Get the largest number of runs merged at once, which is the number of read buffers that fit in the budget.
+     * @return The maximum fan-in, at least two.
+     */
+    public int maxFanIn() {
+        return (int) Math.max(2, Math.min(Integer.MAX_VALUE, memoryBudget / RUN_MEMORY));
+    }
+
+    /**
+     * Get the sorted lines. No more lines can be added afterwards.
+     * @return Iterator over the lines in sorted order. Read errors are thrown as UncheckedIOException.
+     * @throws IOException
+     */
+    public Iterator<String> sorted() throws IOException {
+
+        // sort in memory if nothing was spilled
+        if (runs.isEmpty()) {
+            Collections.sort(buffer, comparator);
+            List<String> lines = buffer;
+            buffer = null;
+            return lines.iterator();
+        }
+
+        if (! buffer.isEmpty()) spill();
+        buffer = null;
+
+        // merge the oldest runs until the rest can be merged at once
+        int maxFanIn = maxFanIn();
+        while (runs.size() > maxFanIn) merge(maxFanIn);
+
+        for (File run : runs) readers.add(open(run));
+        return new MergeIterator(readers);
+    }
+
+    /**
+     * Close the runs and delete their files.
+     */
+    @Override
+    public void close() throws IOException {
+        for (BufferedReader reader : readers) reader.close();
+        readers.clear();
+        for (File run : runs) run.delete();
+        runs.clear();
+        buffer = null;
+    }
+
+    /**
+     * Sort the buffered lines and write them to a new run.
+     * @throws IOException
+     */
+    private void spill() throws IOException {
+        Collections.sort(buffer, comparator);
+        write(buffer.iterator());
+        buffer.clear();
+        bufferMemory = 0;
+    }
+
+    /**
+     * Merge the oldest runs into a new run and delete them.
+     * @param fanIn The number of runs to merge.
+     * @throws IOException
+     */
+    private void merge(int fanIn) throws IOException {
+        List<File> merged = new ArrayList<File>(runs.subList(0, fanIn));
+        List<BufferedReader> mergedReaders = new ArrayList<BufferedReader>();
+
+        try {
+            for (File run : merged) mergedReaders.add(open(run));
+            write(new MergeIterator(mergedReaders));
+        } finally {
+            for (BufferedReader reader : mergedReaders) reader.close();
+        }
+
+        runs.removeAll(merged);
+        for (File run : merged) run.delete();
+    }
+
+    /**
+     * Write lines to a new run. The run is deleted on close, even if writing fails.
+     * @param lines The lines in sorted order.
+     * @throws IOException
+     */
+    private void write(Iterator<String> lines) throws IOException {
+        File run = File.createTempFile("georecon-sort", ".run", tempDir);
+        runs.add(run);
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(run), UTF8));
+
+        try {
+            while (lines.hasNext()) {
+                writer.write(lines.next());
+                writer.write('\n');
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Open a run for reading.
+     * @param run The file of the run.
+     * @return The reader of the run.
+     * @throws IOException
+     */
+    private static BufferedReader open(File run) throws IOException {
+        return new BufferedReader(new InputStreamReader(new FileInputStream(run), UTF8), RUN_BUFFER);
+    }
+
+    /**
+     * The head line of a run.
+     */
+    private static class Head {
+        private String line;
+        private final BufferedReader reader;
+
+        private Head(String line, BufferedReader reader) {
+            this.line = line;
+            this.reader = reader;
+        }
+    }
+
+    /**
+     * Merges runs, taking the least head line each time.
+     */
+    private class MergeIterator implements Iterator<String> {
+        private final PriorityQueue<Head> heads;
+
+        private MergeIterator(List<BufferedReader> readers) throws IOException {
+            heads = new PriorityQueue<Head>(readers.size(), new Comparator<Head>() {
+
+                @Override
+                public int compare(Head head1, Head head2) {
+                    if (comparator == null) return head1.line.compareTo(head2.line);
+                    return comparator.compare(head1.line, head2.line);
+                }
+            });
+
+            for (BufferedReader reader : readers) {
+                String line = reader.readLine();
+                if (line != null) heads.add(new Head(line, reader));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return ! heads.isEmpty();
+        }
+
+        @Override
+        public String next() {
+            Head head = heads.poll();
+            if (head == null) throw new NoSuchElementException();
+            String line = head.line;
+
+            try {
+                head.line = head.reader.readLine();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            if (head.line != null) heads.add(head);
+            return line;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
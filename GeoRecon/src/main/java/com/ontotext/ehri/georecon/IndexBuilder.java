@@ -1,7 +1,12 @@
 package com.ontotext.ehri.georecon;
 
+import com.ontotext.ehri.georecon.metrics.Counter;
+import com.ontotext.ehri.georecon.metrics.Histogram;
+import com.ontotext.ehri.georecon.metrics.Metrics;
 import com.ontotext.ehri.georecon.place.Place;
 import com.ontotext.ehri.georecon.place.PlaceIndex;
+import com.ontotext.ehri.georecon.place.SegmentedIndex;
+import com.ontotext.ehri.georecon.variant.VariantGenerator;
 import org.openrdf.model.Value;
 import org.openrdf.model.ValueFactory;
 import org.openrdf.query.BindingSet;
@@ -20,8 +25,16 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Build place index from Sesame repository and serialize it to disk.
@@ -32,6 +45,19 @@ public class IndexBuilder {
     // prefix added before GeoNames feature codes
     private static String FEATURE_PREFIX = "http://www.geonames.org/ontology#";
 
+    // file with the rules of spelling variants
+    private static final File VARIANTS_FILE = new File("src/main/resources/variants.rules");
+
+    // number of places whose variants are generated together
+    private static final int BATCH_SIZE = 10000;
+
+    // metrics of added places, names and variants (times in nanoseconds)
+    private static final Counter PLACES = Metrics.counter("indexbuilder.places");
+    private static final Counter NAMES = Metrics.counter("indexbuilder.names");
+    private static final Counter VARIANTS = Metrics.counter("indexbuilder.variants");
+    private static final Histogram VARIANTS_TIME = Metrics.histogram("indexbuilder.variants_batch_nanos");
+    private static final Histogram NAMES_QUERY_TIME = Metrics.histogram("indexbuilder.names_query_nanos");
+
     // query the children of a place (variable parent must be bound)
     private static final String QUERY_CHILDREN = "PREFIX gn: <http://www.geonames.org/ontology#>\n" +
             "PREFIX wgs84_pos: <http://www.w3.org/2003/01/geo/wgs84_pos#>\n" +
@@ -60,29 +86,37 @@ public class IndexBuilder {
 
     /**
      * Run the program.
-     * @param args Command-line arguments: <repo dir> <index file>.
+     * @param args Command-line arguments: [--segmented] <repo dir> <index file>.
+     *             Option: --segmented to write the index in segments per country, which are loaded on first access.
      */
     public static void main(String[] args) {
+        boolean segmented = args.length > 0 && args[0].equals("--segmented");
+        int arg = segmented ? 1 : 0;
 
         // check arguments
-        if (args.length != 2) {
-            System.out.println("USAGE: java " + IndexBuilder.class.getName() + " <repo dir> <index file>");
+        if (args.length - arg != 2) {
+            System.out.println("USAGE: java " + IndexBuilder.class.getName() + " [--segmented] <repo dir> <index file>");
             System.exit(0);
         }
 
-        File repo = new File(args[0]);
-        File file = new File(args[1]);
+        File repo = new File(args[arg]);
+        File file = new File(args[arg + 1]);
+        Metrics.start(IndexBuilder.class.getSimpleName());
 
         try {
             LOGGER.info("building index...");
             long start = System.currentTimeMillis();
-            PlaceIndex index = buildIndex(repo);
+            VariantGenerator generator = VariantGenerator.load(VARIANTS_FILE);
+            PlaceIndex index = buildIndex(repo, generator);
+            index.numberPlaces();
+            index.compact();
             long time = System.currentTimeMillis() - start;
             LOGGER.info("index built in " + time + " ms");
 
             LOGGER.info("serializing index...");
             start = System.currentTimeMillis();
-            Tools.serializeIndex(index, file);
+            if (segmented) SegmentedIndex.write(index, file);
+            else Tools.serializeIndex(index, file);
             time = System.currentTimeMillis() - start;
             LOGGER.info("index serialized in " + time + " ms");
         } catch (RepositoryException e) {
@@ -91,18 +125,22 @@ public class IndexBuilder {
             LOGGER.error("exception while building index", e);
         } catch (IOException e) {
             LOGGER.error("exception while serializing index", e);
+        } catch (IllegalArgumentException e) {
+            LOGGER.error("exception while loading variant rules", e);
         }
     }
 
     /**
      * Build place index from Sesame repository and return it.
      * @param repo The repository directory.
+     * @param generator The generator of spelling variants.
      * @return The built index.
      * @throws RepositoryException
      * @throws SailException
      */
-    private static PlaceIndex buildIndex(File repo) throws RepositoryException, SailException {
+    private static PlaceIndex buildIndex(File repo, VariantGenerator generator) throws RepositoryException, SailException {
         PlaceIndex index = new PlaceIndex();
+        PlaceBatch batch = new PlaceBatch(index, generator);
 
         // start repository
         NativeStore store = new NativeStore(repo);
@@ -123,11 +161,13 @@ public class IndexBuilder {
 
             // add children recursively, starting from the root
             queryChildren.setBinding("parent", root);
-            addChildren(index, Place.ROOT, queryChildren, queryNamesOff, queryNamesAlt);
+            addChildren(batch, Place.ROOT, queryChildren, queryNamesOff, queryNamesAlt);
+            batch.flush();
 
         } catch (RepositoryException e) {
             LOGGER.error("exception while building index", e);
         } finally {
+            batch.shutdown();
             connection.close();
             repository.shutDown();
             store.shutDown();
@@ -136,15 +176,15 @@ public class IndexBuilder {
     }
 
     /**
-     * Recursively add the children of a given place to the given index.
-     * @param index The index to add children to.
+     * Recursively add the children of a given place to the given batch of places.
+     * @param batch The batch to add children to.
      * @param parent The parent place.
      * @param queryChildren The prepared query for children.
      * @param queryNamesOff The prepared query for official names.
      * @param queryNamesAlt The prepared query for alternative names.
      * @throws QueryEvaluationException
      */
-    private static void addChildren(PlaceIndex index, Place parent, TupleQuery queryChildren,
+    private static void addChildren(PlaceBatch batch, Place parent, TupleQuery queryChildren,
                                     TupleQuery queryNamesOff, TupleQuery queryNamesAlt)
             throws QueryEvaluationException {
         TupleQueryResult resultChildren = queryChildren.evaluate();
@@ -163,6 +203,7 @@ public class IndexBuilder {
                 names.add(mainName.stringValue());
 
                 // collect the official names of the child
+                long nanos = System.nanoTime();
                 queryNamesOff.setBinding("place", place);
                 TupleQueryResult resultNamesOff = queryNamesOff.evaluate();
                 try {
@@ -196,15 +237,16 @@ public class IndexBuilder {
                     resultNamesAlt.close();
                 }
 
-                // add the child with all its names to the index
-                for (String name : names) {
-                    index.add(child, name);
-                    index.add(child, expandUmlauts(name)); // additional spelling variants for German places
-                }
+                NAMES_QUERY_TIME.recordSince(nanos);
+                PLACES.increment();
+                NAMES.add(names.size());
+
+                // add the child with all its names to the batch
+                batch.add(child, names);
 
                 // bind the parent variable to this child and add its children
                 queryChildren.setBinding("parent", place);
-                addChildren(index, child, queryChildren, queryNamesOff, queryNamesAlt);
+                addChildren(batch, child, queryChildren, queryNamesOff, queryNamesAlt);
             }
 
         } catch (QueryEvaluationException e) {
@@ -271,11 +313,102 @@ public class IndexBuilder {
     }
 
     /**
-     * Turns the given name to lowercase and expands German umlauts.
-     * @param name The name.
-     * @return The name with all letter in lowercase and German umlauts expanded.
+     * Places with their names, which are added to the index in batches. The spelling variants of the names in a batch
+     * are generated in parallel, then the names and variants are added to the index in order.
      */
-    private static String expandUmlauts(String name) {
-        return name.toLowerCase().replace("ä", "ae").replace("ö", "oe").replace("ü", "ue");
+    private static class PlaceBatch {
+        private final PlaceIndex index;
+        private final VariantGenerator generator;
+        private final ExecutorService executor;
+        private final int numThreads;
+        private List<Place> places = new ArrayList<Place>();
+        private List<Set<String>> names = new ArrayList<Set<String>>();
+
+        private PlaceBatch(PlaceIndex index, VariantGenerator generator) {
+            this.index = index;
+            this.generator = generator;
+            numThreads = Runtime.getRuntime().availableProcessors();
+            executor = Executors.newFixedThreadPool(numThreads);
+        }
+
+        /**
+         * Add a place with its names and add the batch to the index if it is full.
+         * @param place The place.
+         * @param placeNames The names of the place.
+         */
+        private void add(Place place, Set<String> placeNames) {
+            places.add(place);
+            names.add(placeNames);
+            if (places.size() >= BATCH_SIZE) flush();
+        }
+
+        /**
+         * Generate the variants of the places in the batch and add them with their names to the index.
+         */
+        private void flush() {
+            long nanos = System.nanoTime();
+            final List<Place> batchPlaces = places;
+            final List<Set<String>> batchNames = names;
+            places = new ArrayList<Place>();
+            names = new ArrayList<Set<String>>();
+            List<Future<List<Map<String, String>>>> futures = new ArrayList<Future<List<Map<String, String>>>>();
+            int chunkSize = (batchPlaces.size() + numThreads - 1) / numThreads;
+
+            // generate the variants of each chunk of places in parallel
+            for (int start = 0; start < batchPlaces.size(); start += chunkSize) {
+                final int chunkStart = start;
+                final int chunkEnd = Math.min(start + chunkSize, batchPlaces.size());
+
+                futures.add(executor.submit(new Callable<List<Map<String, String>>>() {
+
+                    @Override
+                    public List<Map<String, String>> call() {
+                        List<Map<String, String>> variants = new ArrayList<Map<String, String>>();
+
+                        for (int i = chunkStart; i < chunkEnd; i++) {
+                            variants.add(generator.variants(batchPlaces.get(i), batchNames.get(i)));
+                        }
+
+                        return variants;
+                    }
+                }));
+            }
+
+            // add names and variants in the order of the places
+            for (int chunk = 0; chunk < futures.size(); chunk++) {
+                List<Map<String, String>> variants = null;
+
+                try {
+                    variants = futures.get(chunk).get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    LOGGER.error("interrupted while generating variants", e);
+                } catch (ExecutionException e) {
+                    LOGGER.error("exception while generating variants", e.getCause());
+                }
+
+                int chunkStart = chunk * chunkSize;
+                int chunkEnd = Math.min(chunkStart + chunkSize, batchPlaces.size());
+
+                for (int i = chunkStart; i < chunkEnd; i++) {
+                    Place place = batchPlaces.get(i);
+                    for (String name : batchNames.get(i)) index.add(place, name);
+                    if (variants == null) continue;
+                    Map<String, String> placeVariants = variants.get(i - chunkStart);
+
+                    for (Map.Entry<String, String> variant : placeVariants.entrySet()) {
+                        index.add(place, variant.getKey(), variant.getValue());
+                    }
+
+                    VARIANTS.add(placeVariants.size());
+                }
+            }
+
+            VARIANTS_TIME.recordSince(nanos);
+        }
+
+        private void shutdown() {
+            executor.shutdown();
+        }
     }
 }
@@ -1,7 +1,12 @@
 package com.ontotext.ehri.georecon;
 
+import com.ontotext.ehri.georecon.filter.FilterEngine;
+import com.ontotext.ehri.georecon.metrics.Counter;
+import com.ontotext.ehri.georecon.metrics.Histogram;
+import com.ontotext.ehri.georecon.metrics.Metrics;
 import com.ontotext.ehri.georecon.place.Place;
 import com.ontotext.ehri.georecon.place.PlaceIndex;
+import com.ontotext.ehri.georecon.place.SegmentedIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -12,9 +17,14 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
@@ -34,6 +44,33 @@ public class Reconciler {
     public static final String LIST_SEPARATOR = ",";
     public static final Pattern LIST_SPLITTER = Pattern.compile(LIST_SEPARATOR);
 
+    // separator for the candidates of different atoms
+    public static final String ATOM_SEPARATOR = ";";
+
+    // GeoNames feature class of administrative units, which scope the lookup of other atoms
+    private static final String ADMIN_FEATURE_CLASS = "A.";
+
+    // format of row numbers in sorted files, so that they sort as strings
+    private static final String ROW_NUMBER_FORMAT = "%019d";
+
+    // mark of rows that need review in sorted files
+    private static final String REVIEW = "R";
+
+    // number of candidates per atom if only a review file is given
+    private static final int DEFAULT_NUM_CANDIDATES = 3;
+
+    // metrics of rows, atoms and lookups (times in nanoseconds)
+    private static final Counter ROWS = Metrics.counter("reconciler.rows");
+    private static final Counter DISTINCT_ROWS = Metrics.counter("reconciler.distinct_rows");
+    private static final Counter INDEX_HITS = Metrics.counter("reconciler.index_hits");
+    private static final Counter INDEX_MISSES = Metrics.counter("reconciler.index_misses");
+    private static final Histogram ATOMS_PER_ROW = Metrics.histogram("reconciler.atoms_per_row");
+    private static final Histogram CANDIDATES_PER_ATOM = Metrics.histogram("reconciler.candidates_per_atom");
+    private static final Histogram ATOMIZE_TIME = Metrics.histogram("reconciler.atomize_nanos");
+    private static final Histogram FILTER_TIME = Metrics.histogram("reconciler.filter_nanos");
+    private static final Histogram LOOKUP_TIME = Metrics.histogram("reconciler.lookup_nanos");
+    private static final Histogram RECONCILE_TIME = Metrics.histogram("reconciler.reconcile_nanos");
+
     // files with features and words to exclude
     private static final File STOPFEATS_FILE = new File("src/main/resources/stopfeats.lst");
     private static final File STOPWORDS_FILE = new File("src/main/resources/stopwords.lst");
@@ -50,54 +87,117 @@ public class Reconciler {
         ALLOWED_TYPES.add("corporateBodyAccess");
     }
 
-    // match acronyms except for some countries
-    private static final Pattern ACRO_PATTERN = Pattern.compile("(?!^DDR|USA|USSR$)^[\\d\\p{IsLu}]+$");
-
-    // match names of people
-    private static final Pattern PERS_PATTERN = Pattern.compile("(?!.*(Amsterdam|Brabant|Drenthe|Friesland|Gelderland|Groningen|Haarlem|Limburg))" + // exceptions
-            "^((de|van de|van den|van der|vander|van|von|zur) )?" + // particles
-            "\\p{IsLu}?\\p{IsLl}+, (?!(city|town|village|село|селище)$)" + // last name
-            "(\\p{IsLu}?(\\p{IsLl}+(\\-\\p{IsLu}?\\p{IsLl}+)?|\\.|\\[\\?\\]))" + // first name
-            "( (vom|von dem|von der|von|von und zu|zu|zur|op ten|van|van de|van den|van der|de))?" + // particles
-            "( \\([^\\p{IsL}][^\\)]+\\)|\\s?\\p{IsLu}?\\[.+\\])?$"); // stuff in brackets
-
-    // match junk to remove
-    private static final Pattern JUNK_PATTERN = Pattern.compile("(^Kreis | (Area|Region)$|)");
+    // filters of names of people, acronyms and junk
+    private static final File FILTERS_FILE = new File("src/main/resources/filters.rules");
+    private static final FilterEngine FILTERS = loadFilters(FILTERS_FILE);
+    private static final FilterEngine.Filter PERSON_FILTER = FILTERS.filter("person");
+    private static final FilterEngine.Filter ACRONYM_FILTER = FILTERS.filter("acronym");
+    private static final FilterEngine.Filter JUNK_FILTER = FILTERS.filter("junk");
 
     /**
      * Run the program.
-     * @param args Command-line arguments: <index file> <input file> <input column> <original column> <type column> <output file> <output column>.
+     * @param args Command-line arguments: [options] <index file> <input file> <input column> <original column> <type column> <output file> <output column>.
+     *             Options: --atomize to atomize the original column on the fly (the input column is then omitted),
+     *             --scoped to restrict the matches of atoms to the administrative units that other atoms resolve to,
+     *             --candidates <k> to add the top k candidates per atom and the confidence of the row to the output,
+     *             --review <review file> <threshold> to also write rows with confidence below the threshold, or without any candidate, to the review file,
+     *             --dedup <memory in MB> to reconcile each distinct access point once, sorting rows on disk within the memory budget,
+     *             --countries <IDs or names> to load only the segments of these countries from a segmented index and restrict matches to them.
      */
     public static void main(String[] args) {
+        boolean atomize = false;
+        boolean scoped = false;
+        int numCandidates = 0;
+        File reviewFile = null;
+        double threshold = 0;
+        long dedupMemory = 0;
+        List<String> countries = null;
+        int arg = 0;
+        boolean valid = true;
+
+        // parse options
+        try {
+
+            while (arg < args.length && args[arg].startsWith("--")) {
+                String option = args[arg++];
+
+                if (option.equals("--atomize")) {
+                    atomize = true;
+                } else if (option.equals("--scoped")) {
+                    scoped = true;
+                } else if (option.equals("--candidates") && arg < args.length) {
+                    numCandidates = Integer.parseInt(args[arg++]);
+                    if (numCandidates < 1) valid = false;
+                } else if (option.equals("--review") && arg + 1 < args.length) {
+                    reviewFile = new File(args[arg++]);
+                    threshold = Double.parseDouble(args[arg++]);
+                } else if (option.equals("--dedup") && arg < args.length) {
+                    dedupMemory = Long.parseLong(args[arg++]) << 20;
+                    if (dedupMemory <= 0) valid = false;
+                } else if (option.equals("--countries") && arg < args.length) {
+                    countries = Arrays.asList(LIST_SPLITTER.split(args[arg++]));
+                } else {
+                    valid = false;
+                }
+            }
+
+        } catch (NumberFormatException e) {
+            valid = false;
+        }
 
         // check arguments
-        if (args.length != 7) {
+        if (! valid || args.length - arg != (atomize ? 6 : 7)) {
             System.out.println("USAGE: java " + Reconciler.class.getName() +
-                    " <index file> <input file> <input column> <original column> <type column> <output file> <output column>");
+                    " [options] <index file> <input file> <input column> <original column> <type column> <output file> <output column>");
+            System.out.println("OPTIONS: --atomize (omit <input column>), --scoped, --candidates <k>, --review <review file> <threshold>, --dedup <memory in MB>, --countries <IDs or names>");
             System.exit(0);
         }
 
-        File indexFile = new File(args[0]);
-        File inputFile = new File(args[1]);
-        String inputColumnName = args[2];
-        String originalColumnName = args[3];
-        String typeColumnName = args[4];
-        File outputFile = new File(args[5]);
-        String outputColumnName = args[6];
+        // the review needs the confidence of each row
+        if (reviewFile != null && numCandidates == 0) numCandidates = DEFAULT_NUM_CANDIDATES;
+
+        // without an input column, the atoms are taken from the original column
+        File indexFile = new File(args[arg++]);
+        File inputFile = new File(args[arg++]);
+        String inputColumnName = atomize ? null : args[arg++];
+        String originalColumnName = args[arg++];
+        String typeColumnName = args[arg++];
+        File outputFile = new File(args[arg++]);
+        String outputColumnName = args[arg];
+        Metrics.start(Reconciler.class.getSimpleName());
 
         try {
             LOGGER.info("loading index...");
             long start = System.currentTimeMillis();
-            PlaceIndex index = Tools.deserializeIndex(indexFile);
+            PlaceIndex index = excludeStopFeatures(Tools.deserializeIndex(indexFile));
             long time = System.currentTimeMillis() - start;
             LOGGER.info("index loaded in " + time + " ms");
 
+            // load only the segments of chosen countries
+            if (countries != null && index instanceof SegmentedIndex) {
+                LOGGER.info("loading segments of countries...");
+                start = System.currentTimeMillis();
+
+                try {
+                    ((SegmentedIndex) index).restrict(countries);
+                } catch (IllegalArgumentException e) {
+                    LOGGER.error(e.getMessage());
+                    System.exit(1);
+                }
+
+                time = System.currentTimeMillis() - start;
+                LOGGER.info(((SegmentedIndex) index).numLoadedSegments() + " segments loaded in " + time + " ms");
+            } else if (countries != null) {
+                LOGGER.warn("index is not segmented, ignoring countries: " + indexFile.getAbsolutePath());
+            }
+
             LOGGER.info("reconciling access points...");
             start = System.currentTimeMillis();
             FileReader fileReader = new FileReader(inputFile);
             BufferedReader bufferedReader = new BufferedReader(fileReader);
             FileWriter fileWriter = new FileWriter(outputFile);
             BufferedWriter bufferedWriter = new BufferedWriter(fileWriter);
+            BufferedWriter reviewWriter = reviewFile == null ? null : new BufferedWriter(new FileWriter(reviewFile));
 
             try {
                 String line = bufferedReader.readLine();
@@ -122,7 +222,7 @@ public class Reconciler {
                 }
 
                 // check if indexes were found
-                if (inputColumn == -1) {
+                if (inputColumn == -1 && ! atomize) {
                     LOGGER.error("no input column with name: " + inputColumnName);
                     System.exit(1);
                 } else if (originalColumn == -1) {
@@ -134,50 +234,32 @@ public class Reconciler {
                 }
 
                 // write header line
-                bufferedWriter.write(outputColumnName + COLUMN_SEPARATOR + line + "\n");
-
-                // process each line
-                while ((line = bufferedReader.readLine()) != null) {
-                    fields = COLUMN_SPLITTER.split(line);
-                    String[] atoms = LIST_SPLITTER.split(fields[inputColumn]);
-
-                    // ignore if access-point type is not allowed
-                    if (! ALLOWED_TYPES.contains(fields[typeColumn])) atoms = null;
-
-                    // ignore if original access point looks like person
-                    if (PERS_PATTERN.matcher(fields[originalColumn]).matches()) atoms = null;
-
-                    // clean atoms
-                    if (atoms != null) {
-
-                        for (int i = 0; i < atoms.length; i++) {
-                            if (STOPWORDS.contains(PlaceIndex.normalizeName(atoms[i]))) atoms[i] = null;
-                            else if (ACRO_PATTERN.matcher(atoms[i]).matches()) atoms[i] = null;
-                            else atoms[i] = JUNK_PATTERN.matcher(atoms[i]).replaceAll("");
-                        }
+                String header = outputColumnName + COLUMN_SEPARATOR;
+                if (numCandidates > 0) header += outputColumnName + "_candidates" + COLUMN_SEPARATOR +
+                        outputColumnName + "_confidence" + COLUMN_SEPARATOR;
+                bufferedWriter.write(header + line + "\n");
+                if (reviewWriter != null) reviewWriter.write(header + line + "\n");
+
+                RowReconciler rowReconciler = new RowReconciler(index, atomize ? -1 : inputColumn, originalColumn,
+                        typeColumn, numCandidates, scoped, reviewWriter == null ? Double.NaN : threshold);
+
+                // reconcile distinct access points or each line
+                if (dedupMemory > 0) {
+                    reconcileDistinct(rowReconciler, bufferedReader, inputFile, bufferedWriter, reviewWriter, dedupMemory);
+                } else {
+
+                    while ((line = bufferedReader.readLine()) != null) {
+                        ROWS.increment();
+                        RowResult result = rowReconciler.reconcile(COLUMN_SPLITTER.split(line));
+                        bufferedWriter.write(result.columns + COLUMN_SEPARATOR + line + "\n");
+                        if (result.review) reviewWriter.write(result.columns + COLUMN_SEPARATOR + line + "\n");
                     }
-
-                    // reconcile atoms
-                    SortedSet<Place> places = reconcile(index, atoms, false);
-                    StringBuilder result = new StringBuilder();
-
-                    // collect result
-                    if (places != null) {
-                        Iterator<Place> iterator = places.iterator();
-                        result.append(iterator.next().toString());
-
-                        while (iterator.hasNext()) {
-                            result.append(LIST_SEPARATOR + iterator.next().toString());
-                        }
-                    }
-
-                    // write result
-                    bufferedWriter.write(result.toString() + COLUMN_SEPARATOR + line + "\n");
                 }
 
             } catch (IOException e) {
                 LOGGER.error("exception while reconciling", e);
             } finally {
+                if (reviewWriter != null) reviewWriter.close();
                 bufferedWriter.close();
                 fileWriter.close();
                 bufferedReader.close();
@@ -191,6 +273,78 @@ public class Reconciler {
         }
     }
 
+    /**
+     * Reconcile each distinct access point once and join the results back to the rows in input order. The rows are
+     * sorted by access point with an external sort, so that equal access points are adjacent; the results are then
+     * sorted back by row number and merged with a second pass over the input file.
+     * @param rowReconciler The reconciler of rows.
+     * @param reader The reader of the input file, after the header line.
+     * @param inputFile The input file.
+     * @param writer The writer of the output file.
+     * @param reviewWriter The writer of the review file, or null.
+     * @param memoryBudget The memory for sorting in bytes, shared by the two sorts.
+     * @throws IOException
+     */
+    private static void reconcileDistinct(RowReconciler rowReconciler, BufferedReader reader, File inputFile,
+                                          BufferedWriter writer, BufferedWriter reviewWriter, long memoryBudget)
+            throws IOException {
+        ExternalSorter rows = new ExternalSorter(memoryBudget / 2);
+        ExternalSorter results = new ExternalSorter(memoryBudget / 2);
+
+        try {
+            String line;
+            long rowNumber = 0;
+
+            // sort rows by access point, then by row number
+            while ((line = reader.readLine()) != null) {
+                ROWS.increment();
+                String key = rowReconciler.key(COLUMN_SPLITTER.split(line));
+                rows.add(key + COLUMN_SEPARATOR + String.format(ROW_NUMBER_FORMAT, rowNumber++));
+            }
+
+            String previousKey = null;
+            RowResult result = null;
+
+            // reconcile each distinct access point and sort its results by row number
+            for (Iterator<String> iterator = rows.sorted(); iterator.hasNext(); ) {
+                line = iterator.next();
+                int separator = line.lastIndexOf(COLUMN_SEPARATOR);
+                String key = line.substring(0, separator);
+
+                if (! key.equals(previousKey)) {
+                    result = rowReconciler.reconcile(COLUMN_SPLITTER.split(key, -1));
+                    previousKey = key;
+                    DISTINCT_ROWS.increment();
+                }
+
+                results.add(line.substring(separator + 1) + COLUMN_SEPARATOR + (result.review ? REVIEW : "") +
+                        COLUMN_SEPARATOR + result.columns);
+            }
+
+            rows.close();
+            BufferedReader inputReader = new BufferedReader(new FileReader(inputFile));
+
+            // join results with rows in input order
+            try {
+                inputReader.readLine();
+
+                for (Iterator<String> iterator = results.sorted(); iterator.hasNext(); ) {
+                    String[] parts = iterator.next().split(COLUMN_SEPARATOR, 3);
+                    line = inputReader.readLine();
+                    writer.write(parts[2] + COLUMN_SEPARATOR + line + "\n");
+                    if (parts[1].equals(REVIEW)) reviewWriter.write(parts[2] + COLUMN_SEPARATOR + line + "\n");
+                }
+
+            } finally {
+                inputReader.close();
+            }
+
+        } finally {
+            rows.close();
+            results.close();
+        }
+    }
+
     /**
      * Collect the lines in a file into a set.
      * @param file The file.
@@ -227,6 +381,35 @@ public class Reconciler {
         }
     }
 
+    /**
+     * Load the filters from a rule file.
+     * @param file The rule file.
+     * @return The filters, or filters without rules if the file cannot be read or has an invalid rule.
+     */
+    private static FilterEngine loadFilters(File file) {
+
+        try {
+            return FilterEngine.load(file);
+        } catch (IOException e) {
+            LOGGER.error("exception while loading filters from file: " + file.getAbsolutePath(), e);
+        } catch (IllegalArgumentException e) {
+            LOGGER.error("no filters loaded from file: " + file.getAbsolutePath() + " (" + e.getMessage() + ")");
+        }
+
+        return FilterEngine.parse(new ArrayList<String>());
+    }
+
+    /**
+     * Exclude places with stop-features from the valid matches of an index. This is done once, after the index is
+     * loaded and before it is used for lookups.
+     * @param index The lookup index to use.
+     * @return The same index.
+     */
+    public static PlaceIndex excludeStopFeatures(PlaceIndex index) {
+        index.setStopFeatures(STOPFEATS);
+        return index;
+    }
+
     /**
      * Lookup places from an array of atomized access points and return the most relevant places.
      * @param index The lookup index to use.
@@ -236,39 +419,109 @@ public class Reconciler {
      */
     public static SortedSet<Place> reconcile(PlaceIndex index, String[] atoms, boolean keepAncestors) {
         if (atoms == null) return null;
-        SortedSet<Place> bestMatches = new TreeSet<Place>();
+        return bestPlaces(rankCandidates(index, atoms, 1, false, false), keepAncestors);
+    }
+
+    /**
+     * Lookup places from an array of atomized access points and rank the candidates of each atom. Candidates are
+     * ranked by the number of other atoms with a match that is their ancestor, then matches of original names before
+     * matches of derived names, then by the order of places in the index. The confidence of each candidate is normalized against all candidates of its atom.
+     * @param index The lookup index to use.
+     * @param atoms An array of atomized access points.
+     * @param k The maximum number of candidates per atom.
+     * @return For each atom, its best candidates in order, or an empty list if the atom is null or has no valid matches.
+     */
+    public static List<List<Candidate>> rankCandidates(PlaceIndex index, String[] atoms, int k) {
+        return rankCandidates(index, atoms, k, false);
+    }
+
+    /**
+     * Lookup places from an array of atomized access points and rank the candidates of each atom, optionally in the
+     * scope of the administrative units that other atoms resolve to. An atom resolves to an administrative unit if its
+     * most relevant valid match is one; the matches of the other atoms are then restricted to the subtree of the
+     * deepest such unit that contains any of them.
+     * @param index The lookup index to use.
+     * @param atoms An array of atomized access points.
+     * @param k The maximum number of candidates per atom.
+     * @param scoped Whether to restrict matches to the administrative units of other atoms.
+     * @return For each atom, its best candidates in order, or an empty list if the atom is null or has no valid matches.
+     */
+    public static List<List<Candidate>> rankCandidates(PlaceIndex index, String[] atoms, int k, boolean scoped) {
+        return rankCandidates(index, atoms, k, scoped, true);
+    }
+
+    /**
+     * Lookup places from an array of atomized access points and rank the candidates of each atom, optionally without
+     * scoring them. The ranking does not depend on the scores, so callers that only need the best places can skip
+     * the distance and population features of every match.
+     * @param index The lookup index to use.
+     * @param atoms An array of atomized access points.
+     * @param k The maximum number of candidates per atom.
+     * @param scoped Whether to restrict matches to the administrative units of other atoms.
+     * @param scored Whether to score the candidates; unscored candidates have no confidence.
+     * @return For each atom, its best candidates in order, or an empty list if the atom is null or has no valid matches.
+     */
+    public static List<List<Candidate>> rankCandidates(PlaceIndex index, String[] atoms, int k, boolean scoped,
+                                                       boolean scored) {
+        List<List<Candidate>> candidates = new ArrayList<List<Candidate>>(atoms.length);
+
+        // look up the places of each atom once, without the places that have stop-features
+        List<SortedSet<Place>> atomMatches = new ArrayList<SortedSet<Place>>(atoms.length);
+        long start = System.nanoTime();
 
-        // iterate through valid atoms
         for (String atom : atoms) {
+            SortedSet<Place> matches = atom == null ? null : index.getAllowed(atom);
+            atomMatches.add(matches);
+
+            // count hits and misses of valid atoms
             if (atom == null) continue;
+            if (matches == null) INDEX_MISSES.increment();
+            else INDEX_HITS.increment();
+        }
+
+        LOOKUP_TIME.recordSince(start);
+
+        // restrict matches to the administrative units of other atoms
+        List<SortedSet<Place>> atomAllowed = scoped ? scope(index, atoms, atomMatches) : atomMatches;
 
-            // get matches for atom
-            SortedSet<Place> matches = index.get(atom);
-            if (matches == null) continue;
+        // iterate through atoms
+        for (int i = 0; i < atoms.length; i++) {
+            SortedSet<Place> matches = atomMatches.get(i);
+            SortedSet<Place> allowed = atomAllowed.get(i);
 
-            // map from number of ancestors to sets of matches
-            List<SortedSet<Place>> numAncestors2matches = new ArrayList<SortedSet<Place>>();
+            if (allowed == null) {
+                candidates.add(new ArrayList<Candidate>());
+                continue;
+            }
+
+            // collect valid matches of other atoms
+            List<SortedSet<Place>> otherAtomMatches = new ArrayList<SortedSet<Place>>();
+
+            for (int j = 0; j < atoms.length; j++) {
+                SortedSet<Place> otherAllowed = atomAllowed.get(j);
+                if (otherAllowed == null) continue;
+                if (atoms[j] == atoms[i]) continue;
+                if (atomMatches.get(j).equals(matches)) continue;
+                otherAtomMatches.add(otherAllowed);
+            }
+
+            // the names of the variant rules are only output with scores; the ranking only needs to know which places
+            // have the name as a variant, which a single match does not
+            Map<Place, String> variantRules = scored ? index.getVariantRules(atoms[i]) : null;
+            Set<Place> variantPlaces = scored || allowed.size() == 1 ? null : index.getVariantPlaces(atoms[i]);
+            List<Candidate> atomCandidates = new ArrayList<Candidate>();
+            double totalScore = 0;
 
             // iterate through valid matches
-            for (Place match : matches) {
-                if (STOPFEATS.contains(match.getFeature())) continue;
+            for (Place match : allowed) {
                 int numAncestors = 0;
 
-                // iterate through other valid atoms
-                for (String otherAtom : atoms) {
-                    if (otherAtom == null) continue;
-                    if (otherAtom == atom) continue;
-
-                    // get matches for other atom
-                    SortedSet<Place> otherMatches = index.get(otherAtom);
-                    if (otherMatches == null) continue;
-                    if (otherMatches.equals(matches)) continue;
+                // iterate through valid matches of other atoms
+                for (SortedSet<Place> otherMatches : otherAtomMatches) {
 
-                    // iterate through valid matches of other atom
+                    // check if at least one of the valid matches of the other atom is ancestor
                     for (Place otherMatch : otherMatches) {
-                        if (STOPFEATS.contains(otherMatch.getFeature())) continue;
 
-                        // check if at least one of the matches of the other atom is ancestor
                         if (match.isDescendantOf(otherMatch)) {
                             numAncestors++;
                             break;
@@ -276,20 +529,88 @@ public class Reconciler {
                     }
                 }
 
-                // extend list if necessary
-                while (numAncestors2matches.size() <= numAncestors) {
-                    numAncestors2matches.add(new TreeSet<Place>());
+                Candidate candidate = scored ?
+                        new Candidate(match, numAncestors, otherAtomMatches.size(), variantRules.get(match)) :
+                        new Candidate(match, numAncestors, variantPlaces != null && variantPlaces.contains(match));
+                atomCandidates.add(candidate);
+                totalScore += candidate.getScore();
+            }
+
+            // rank by number of ancestors, then original names before derived ones; the sort is stable, so the order of
+            // the index breaks ties
+            Collections.sort(atomCandidates, new Comparator<Candidate>() {
+
+                @Override
+                public int compare(Candidate c1, Candidate c2) {
+                    int result = Integer.compare(c2.getNumAncestors(), c1.getNumAncestors());
+                    if (result != 0) return result;
+                    return Boolean.compare(c1.isDerived(), c2.isDerived());
                 }
+            });
 
-                // add match to the set of matches with so many ancestors
-                numAncestors2matches.get(numAncestors).add(match);
+            // keep the best candidates
+            CANDIDATES_PER_ATOM.record(atomCandidates.size());
+            if (atomCandidates.size() > k) atomCandidates = new ArrayList<Candidate>(atomCandidates.subList(0, k));
+            if (scored) for (Candidate candidate : atomCandidates) candidate.normalize(totalScore);
+            candidates.add(atomCandidates);
+        }
+
+        return candidates;
+    }
+
+    /**
+     * Restrict the valid matches of each atom to the deepest administrative unit of another atom that contains any of
+     * them. Atoms without matches in these units keep all their valid matches.
+     * @param index The lookup index to use.
+     * @param atoms An array of atomized access points.
+     * @param atomAllowed For each atom, its valid matches or null.
+     * @return For each atom, its valid matches in scope or null.
+     */
+    private static List<SortedSet<Place>> scope(PlaceIndex index, String[] atoms, List<SortedSet<Place>> atomAllowed) {
+        Place[] units = new Place[atoms.length];
+
+        // find the administrative units that atoms resolve to
+        for (int i = 0; i < atoms.length; i++) {
+            SortedSet<Place> allowed = atomAllowed.get(i);
+            if (allowed == null) continue;
+            Place best = allowed.first();
+            if (best.getFeature() != null && best.getFeature().startsWith(ADMIN_FEATURE_CLASS)) units[i] = best;
+        }
+
+        List<SortedSet<Place>> scoped = new ArrayList<SortedSet<Place>>(atomAllowed);
+
+        // look up each atom in the deepest unit of another atom
+        for (int i = 0; i < atoms.length; i++) {
+            if (atomAllowed.get(i) == null) continue;
+            int depth = -1;
+
+            for (int j = 0; j < atoms.length; j++) {
+                if (units[j] == null || atoms[j] == atoms[i]) continue;
+                int unitDepth = units[j].numAncestors();
+                if (unitDepth <= depth) continue;
+
+                SortedSet<Place> inUnit = index.getAllowed(atoms[i], units[j]);
+                if (inUnit == null) continue;
+                scoped.set(i, inUnit);
+                depth = unitDepth;
             }
+        }
+
+        return scoped;
+    }
 
-            // possible if all matches of atom have stop-feature
-            if (numAncestors2matches.isEmpty()) continue;
+    /**
+     * Return the most relevant places from the ranked candidates of atoms.
+     * @param candidates For each atom, its candidates in order.
+     * @param keepAncestors Do you want to keep ancestors or not?
+     * @return The most relevant matching places or null if no atom has candidates.
+     */
+    public static SortedSet<Place> bestPlaces(List<List<Candidate>> candidates, boolean keepAncestors) {
+        SortedSet<Place> bestMatches = new TreeSet<Place>();
 
-            // add best match of atom
-            bestMatches.add(numAncestors2matches.get(numAncestors2matches.size() - 1).iterator().next());
+        // add best match of each atom
+        for (List<Candidate> atomCandidates : candidates) {
+            if (! atomCandidates.isEmpty()) bestMatches.add(atomCandidates.get(0).getPlace());
         }
 
         // return null if there are no valid matches
@@ -321,4 +642,180 @@ public class Reconciler {
 
         return bestMatchesNoAncestors;
     }
+
+    /**
+     * Calculate the confidence of a row: the lowest confidence of the best candidates of its atoms.
+     * @param candidates For each atom, its candidates in order, or null if the row is ignored.
+     * @return The confidence, or NaN if no atom has candidates.
+     */
+    public static double confidence(List<List<Candidate>> candidates) {
+        double confidence = Double.NaN;
+        if (candidates == null) return confidence;
+
+        for (List<Candidate> atomCandidates : candidates) {
+            if (atomCandidates.isEmpty()) continue;
+            double atomConfidence = atomCandidates.get(0).getConfidence();
+            if (Double.isNaN(confidence) || atomConfidence < confidence) confidence = atomConfidence;
+        }
+
+        return confidence;
+    }
+
+    /**
+     * Make a string of the ranked candidates of atoms.
+     * @param candidates For each atom, its candidates in order, or null if the row is ignored.
+     * @return The candidates of each atom separated by commas, with the atoms separated by semicolons.
+     */
+    private static String candidatesString(List<List<Candidate>> candidates) {
+        if (candidates == null) return "";
+        StringBuilder result = new StringBuilder();
+
+        for (int i = 0; i < candidates.size(); i++) {
+            if (i > 0) result.append(ATOM_SEPARATOR);
+
+            for (int j = 0; j < candidates.get(i).size(); j++) {
+                if (j > 0) result.append(LIST_SEPARATOR);
+                result.append(candidates.get(i).get(j).toString());
+            }
+        }
+
+        return result.toString();
+    }
+
+    /**
+     * The result columns of a row and whether the row needs review.
+     */
+    private static class RowResult {
+        private final String columns;
+        private final boolean review;
+
+        private RowResult(String columns, boolean review) {
+            this.columns = columns;
+            this.review = review;
+        }
+    }
+
+    /**
+     * Reconciles the access points of rows with the options given on the command line.
+     */
+    private static class RowReconciler {
+        private final PlaceIndex index;
+        private final int inputColumn;
+        private final int originalColumn;
+        private final int typeColumn;
+        private final int numCandidates;
+        private final boolean scoped;
+        private final double threshold;
+
+        /**
+         * @param index The lookup index to use.
+         * @param inputColumn The index of the input column, or -1 to atomize the original column.
+         * @param originalColumn The index of the original column.
+         * @param typeColumn The index of the type column.
+         * @param numCandidates The number of candidates per atom to output, or zero for none.
+         * @param scoped Whether to restrict matches to the administrative units of other atoms.
+         * @param threshold Rows with lower confidence need review, or NaN if there is no review.
+         */
+        private RowReconciler(PlaceIndex index, int inputColumn, int originalColumn, int typeColumn,
+                              int numCandidates, boolean scoped, double threshold) {
+            this.index = index;
+            this.inputColumn = inputColumn;
+            this.originalColumn = originalColumn;
+            this.typeColumn = typeColumn;
+            this.numCandidates = numCandidates;
+            this.scoped = scoped;
+            this.threshold = threshold;
+        }
+
+        /**
+         * Make the key of a row: the fields that the result depends on, in the column order of the input.
+         * @param fields The fields of the row.
+         * @return The key, with fields separated by tabs.
+         */
+        private String key(String[] fields) {
+            StringBuilder key = new StringBuilder();
+            int last = Math.max(Math.max(inputColumn, originalColumn), typeColumn);
+
+            for (int i = 0; i <= last; i++) {
+                if (i > 0) key.append(COLUMN_SEPARATOR);
+                if (i == inputColumn || i == originalColumn || i == typeColumn) key.append(field(fields, i));
+            }
+
+            return key.toString();
+        }
+
+        /**
+         * Reconcile the access point of a row.
+         * @param fields The fields of the row.
+         * @return The result columns of the row.
+         */
+        private RowResult reconcile(String[] fields) {
+            String[] atoms;
+            long nanos = System.nanoTime();
+
+            // atomize original access point in the same pass or take atoms from input column
+            if (inputColumn < 0) {
+                List<String> atomList = Atomizer.atomize(field(fields, originalColumn));
+                atoms = atomList.toArray(new String[atomList.size()]);
+                nanos = ATOMIZE_TIME.recordSince(nanos);
+            } else {
+                atoms = LIST_SPLITTER.split(field(fields, inputColumn));
+            }
+
+            // ignore if access-point type is not allowed
+            if (! ALLOWED_TYPES.contains(field(fields, typeColumn))) atoms = null;
+
+            // ignore if original access point looks like person
+            if (PERSON_FILTER.matches(field(fields, originalColumn))) atoms = null;
+
+            // clean atoms
+            if (atoms != null) {
+
+                for (int i = 0; i < atoms.length; i++) {
+                    if (STOPWORDS.contains(PlaceIndex.normalizeName(atoms[i]))) atoms[i] = null;
+                    else if (ACRONYM_FILTER.matches(atoms[i])) atoms[i] = null;
+                    else atoms[i] = JUNK_FILTER.strip(atoms[i]);
+                }
+
+                ATOMS_PER_ROW.record(atoms.length);
+            }
+
+            nanos = FILTER_TIME.recordSince(nanos);
+
+            // rank candidates and reconcile atoms in the same pass
+            // candidates are scored only for the output of candidates and confidence, which the review needs too
+            List<List<Candidate>> candidates = atoms == null ? null :
+                    rankCandidates(index, atoms, Math.max(1, numCandidates), scoped, numCandidates > 0);
+            SortedSet<Place> places = candidates == null ? null : bestPlaces(candidates, false);
+            if (candidates != null) RECONCILE_TIME.recordSince(nanos);
+            StringBuilder result = new StringBuilder();
+            boolean review = false;
+
+            // collect result
+            if (places != null) {
+                Iterator<Place> iterator = places.iterator();
+                result.append(iterator.next().toString());
+
+                while (iterator.hasNext()) {
+                    result.append(LIST_SEPARATOR + iterator.next().toString());
+                }
+            }
+
+            // add candidates and confidence
+            if (numCandidates > 0) {
+                double confidence = confidence(candidates);
+                result.append(COLUMN_SEPARATOR + candidatesString(candidates) + COLUMN_SEPARATOR);
+                if (! Double.isNaN(confidence)) result.append(String.format(Locale.ROOT, "%.3f", confidence));
+                // rows of allowed type that no atom resolves are the first to review
+                review = ! Double.isNaN(threshold) && candidates != null &&
+                        (Double.isNaN(confidence) || confidence < threshold);
+            }
+
+            return new RowResult(result.toString(), review);
+        }
+
+        private static String field(String[] fields, int column) {
+            return column < fields.length ? fields[column] : "";
+        }
+    }
 }
@@ -1,6 +1,7 @@
 package com.ontotext.ehri.georecon;
 
 import com.ontotext.ehri.georecon.place.PlaceIndex;
+import com.ontotext.ehri.georecon.place.SegmentedIndex;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -69,18 +70,21 @@ public class Tools {
     }
 
     /**
-     * Deserialize a place index from file.
+     * Deserialize a place index from file. The names of an index serialized before it was compacted are moved to a
+     * name dictionary. A segmented index is opened instead, and its segments are loaded on first access.
      * @param file The file.
      * @return The place index, or null if deserialization failed.
      * @throws IOException
      */
     public static PlaceIndex deserializeIndex(File file) throws IOException {
+        if (SegmentedIndex.isSegmented(file)) return new SegmentedIndex(file);
         FileInputStream fileInput = new FileInputStream(file);
         ObjectInputStream objectInput = new ObjectInputStream(fileInput);
         PlaceIndex placeIndex = null;
 
         try {
             placeIndex = (PlaceIndex) objectInput.readObject();
+            placeIndex.compact();
         } catch (IOException e) {
             e.printStackTrace();
         } finally {
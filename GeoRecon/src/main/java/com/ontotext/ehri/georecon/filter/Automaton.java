@@ -0,0 +1,294 @@
+package com.ontotext.ehri.georecon.filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An automaton that matches several filter patterns at once. The patterns are compiled into a nondeterministic
+ * automaton, which is turned into a deterministic one lazily: each deterministic state is made the first time it is
+ * reached and its transitions are cached, so a string is scanned once without backtracking. Each pattern has a bit
+ * and a state accepts the bits of the patterns that match the text scanned so far.
+ *
+ * Cached transitions are read without locking. Transitions on the Basic Multilingual Plane are kept in blocks of 256
+ * characters, which are atomic arrays, so a state is safely published with the transition to it; transitions on
+ * supplementary characters are kept in an immutable map, which is replaced on write. Only new transitions take the
+ * lock.
+ */
+public class Automaton {
+
+    // number of characters in a block of transitions and number of blocks on the Basic Multilingual Plane
+    private static final int BLOCK_BITS = 8;
+    private static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+    private static final int NUM_BLOCKS = (Character.MAX_VALUE + 1) >> BLOCK_BITS;
+
+    // states of the nondeterministic automaton
+    private final List<State> states = new ArrayList<State>();
+
+    // deterministic states made so far
+    private final Map<DState, DState> dstates = new HashMap<DState, DState>();
+    private volatile DState start;
+
+    /**
+     * Construct an automaton with only the start state.
+     */
+    public Automaton() {
+        addState();
+    }
+
+    /**
+     * Add a pattern to the automaton.
+     * @param pattern The pattern.
+     * @param bit The bit of the pattern (0 to 63).
+     * @param reversed If true, the automaton matches the reversed pattern, so it can scan strings backward.
+     */
+    public synchronized void addPattern(FilterPattern pattern, int bit, boolean reversed) {
+        if (bit < 0 || bit >= Long.SIZE) throw new IllegalArgumentException("invalid pattern bit: " + bit);
+        int accept = addState();
+        states.get(accept).accepts = 1L << bit;
+        pattern.build(this, 0, accept, reversed);
+
+        // forget deterministic states of the previous patterns
+        dstates.clear();
+        start = null;
+    }
+
+    int addState() {
+        states.add(new State());
+        return states.size() - 1;
+    }
+
+    void addEpsilon(int from, int to) {
+        states.get(from).epsilons.add(to);
+    }
+
+    void addTransition(int from, CharClass label, int to) {
+        State state = states.get(from);
+        state.labels.add(label);
+        state.targets.add(to);
+    }
+
+    /**
+     * Scan a string and return the bits of the patterns that match all of it.
+     * @param text The string.
+     * @return The bits of the matching patterns.
+     */
+    public long matches(String text) {
+        DState state = start();
+
+        for (int i = 0; i < text.length() && ! state.dead; ) {
+            int c = text.codePointAt(i);
+            state = next(state, c);
+            i += Character.charCount(c);
+        }
+
+        return state.accepts;
+    }
+
+    /**
+     * Scan a string forward and return the end of its longest prefix matched by one of the given patterns.
+     * @param text The string.
+     * @param bits The bits of the patterns.
+     * @return The end of the longest matching prefix, or -1 if no prefix matches.
+     */
+    public int longestPrefix(String text, long bits) {
+        DState state = start();
+        int end = (state.accepts & bits) != 0 ? 0 : -1;
+
+        for (int i = 0; i < text.length() && ! state.dead; ) {
+            int c = text.codePointAt(i);
+            state = next(state, c);
+            i += Character.charCount(c);
+            if ((state.accepts & bits) != 0) end = i;
+        }
+
+        return end;
+    }
+
+    /**
+     * Scan a string backward with an automaton of reversed patterns and return the start of its longest suffix matched
+     * by one of the given patterns.
+     * @param text The string.
+     * @param bits The bits of the patterns.
+     * @param limit The suffix must not start before this index.
+     * @return The start of the longest matching suffix, or -1 if no suffix matches.
+     */
+    public int longestSuffix(String text, long bits, int limit) {
+        DState state = start();
+        int begin = (state.accepts & bits) != 0 ? text.length() : -1;
+
+        for (int i = text.length(); i > limit && ! state.dead; ) {
+            int c = text.codePointBefore(i);
+            state = next(state, c);
+            i -= Character.charCount(c);
+            if ((state.accepts & bits) != 0 && i >= limit) begin = i;
+        }
+
+        return begin;
+    }
+
+    private DState start() {
+        DState result = start;
+        if (result != null) return result;
+
+        synchronized (this) {
+            if (start == null) start = intern(closure(new int[] { 0 }));
+            return start;
+        }
+    }
+
+    private DState next(DState state, int c) {
+        DState result = state.transition(c);
+        if (result != null) return result;
+
+        synchronized (this) {
+            result = state.transition(c);
+
+            if (result == null) {
+                result = intern(step(state, c));
+                state.setTransition(c, result);
+            }
+
+            return result;
+        }
+    }
+
+    private int[] step(DState state, int c) {
+        int[] targets = new int[states.size()];
+        int size = 0;
+
+        // follow the transitions of all states whose label contains the character
+        for (int from : state.states) {
+            State nstate = states.get(from);
+
+            for (int i = 0; i < nstate.labels.size(); i++) {
+                if (nstate.labels.get(i).contains(c)) targets[size++] = nstate.targets.get(i);
+            }
+        }
+
+        return closure(Arrays.copyOf(targets, size));
+    }
+
+    private int[] closure(int[] seeds) {
+        boolean[] reached = new boolean[states.size()];
+        int[] stack = new int[states.size()];
+        int size = 0;
+
+        for (int seed : seeds) {
+            if (reached[seed]) continue;
+            reached[seed] = true;
+            stack[size++] = seed;
+        }
+
+        // follow epsilon transitions
+        while (size > 0) {
+            int from = stack[--size];
+
+            for (int to : states.get(from).epsilons) {
+                if (reached[to]) continue;
+                reached[to] = true;
+                stack[size++] = to;
+            }
+        }
+
+        // collect reached states in order
+        int count = 0;
+        for (boolean r : reached) if (r) count++;
+        int[] result = new int[count];
+        count = 0;
+
+        for (int i = 0; i < reached.length; i++) {
+            if (reached[i]) result[count++] = i;
+        }
+
+        return result;
+    }
+
+    private DState intern(int[] set) {
+        long accepts = 0;
+        for (int state : set) accepts |= states.get(state).accepts;
+        DState key = new DState(set, accepts);
+        DState result = dstates.get(key);
+        if (result != null) return result;
+        dstates.put(key, key);
+        return key;
+    }
+
+    /**
+     * A state of the nondeterministic automaton.
+     */
+    private static class State {
+        private final List<Integer> epsilons = new ArrayList<Integer>();
+        private final List<CharClass> labels = new ArrayList<CharClass>();
+        private final List<Integer> targets = new ArrayList<Integer>();
+        private long accepts = 0;
+    }
+
+    /**
+     * A state of the deterministic automaton: a set of states of the nondeterministic one, with its cached transitions.
+     * The transitions are read without locking and written under the lock of the automaton.
+     */
+    private static class DState {
+        private final int[] states;
+        private final long accepts;
+        private final boolean dead;
+        private final AtomicReferenceArray<AtomicReferenceArray<DState>> blocks =
+                new AtomicReferenceArray<AtomicReferenceArray<DState>>(NUM_BLOCKS);
+        private volatile Map<Integer, DState> supplementary = Collections.emptyMap();
+
+        private DState(int[] states, long accepts) {
+            this.states = states;
+            this.accepts = accepts;
+            this.dead = states.length == 0;
+        }
+
+        /**
+         * Get a cached transition.
+         * @param c The character (code point).
+         * @return The next state, or null if the transition is not cached.
+         */
+        private DState transition(int c) {
+            if (c > Character.MAX_VALUE) return supplementary.get(c);
+            AtomicReferenceArray<DState> block = blocks.get(c >> BLOCK_BITS);
+            return block == null ? null : block.get(c & (BLOCK_SIZE - 1));
+        }
+
+        /**
+         * Cache a transition. Only one thread may write at a time.
+         * @param c The character (code point).
+         * @param next The next state.
+         */
+        private void setTransition(int c, DState next) {
+
+            if (c > Character.MAX_VALUE) {
+                Map<Integer, DState> copy = new HashMap<Integer, DState>(supplementary);
+                copy.put(c, next);
+                supplementary = copy;
+                return;
+            }
+
+            AtomicReferenceArray<DState> block = blocks.get(c >> BLOCK_BITS);
+
+            if (block == null) {
+                block = new AtomicReferenceArray<DState>(BLOCK_SIZE);
+                blocks.set(c >> BLOCK_BITS, block);
+            }
+
+            block.set(c & (BLOCK_SIZE - 1), next);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof DState && Arrays.equals(states, ((DState) o).states);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(states);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.ontotext.ehri.georecon.filter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A set of characters in a filter pattern: a union of ranges, Unicode general categories and other sets, possibly
+ * negated. Predefined sets match what java.util.regex matches without flags.
+ */
+public class CharClass {
+
+    // letters like \p{L}
+    private static final int LETTER_CATEGORIES = (1 << Character.UPPERCASE_LETTER) | (1 << Character.LOWERCASE_LETTER) |
+            (1 << Character.TITLECASE_LETTER) | (1 << Character.MODIFIER_LETTER) | (1 << Character.OTHER_LETTER);
+
+    // line terminators not matched by .
+    private static final CharClass LINE_TERMINATORS = new CharClass(false)
+            .addChar('\n').addChar('\r').addChar('\u0085').addChar(0x2028).addChar(0x2029);
+
+    public static final CharClass ANY = new CharClass(true).addClass(LINE_TERMINATORS);
+    public static final CharClass DIGIT = new CharClass(false).addRange('0', '9');
+    public static final CharClass SPACE = new CharClass(false)
+            .addChar(' ').addChar('\t').addChar('\n').addChar('\u000B').addChar('\f').addChar('\r');
+    public static final CharClass WORD = new CharClass(false)
+            .addRange('a', 'z').addRange('A', 'Z').addRange('0', '9').addChar('_');
+
+    private boolean negated;
+    private List<int[]> ranges = new ArrayList<int[]>();
+    private int categories = 0;
+    private List<CharClass> classes = new ArrayList<CharClass>();
+
+    /**
+     * Construct an empty set.
+     * @param negated If true, the set contains the characters not added to it.
+     */
+    public CharClass(boolean negated) {
+        this.negated = negated;
+    }
+
+    public CharClass addChar(int c) {
+        return addRange(c, c);
+    }
+
+    public CharClass addRange(int first, int last) {
+        ranges.add(new int[] { first, last });
+        return this;
+    }
+
+    /**
+     * Add a Unicode general category.
+     * @param category A category constant of java.lang.Character, e.g. Character.UPPERCASE_LETTER.
+     * @return This set.
+     */
+    public CharClass addCategory(int category) {
+        categories |= 1 << category;
+        return this;
+    }
+
+    public CharClass addClass(CharClass other) {
+        classes.add(other);
+        return this;
+    }
+
+    /**
+     * Return the set of a property name as in \p{...}.
+     * @param name The property name: L, Lu, Ll, Lt, Lm, Lo, N, Nd or P, optionally prefixed with "Is".
+     * @return The set, or null if the name is not supported.
+     */
+    public static CharClass property(String name) {
+        if (name.startsWith("Is")) name = name.substring(2);
+        CharClass result = new CharClass(false);
+
+        if (name.equals("L")) result.categories = LETTER_CATEGORIES;
+        else if (name.equals("Lu")) result.addCategory(Character.UPPERCASE_LETTER);
+        else if (name.equals("Ll")) result.addCategory(Character.LOWERCASE_LETTER);
+        else if (name.equals("Lt")) result.addCategory(Character.TITLECASE_LETTER);
+        else if (name.equals("Lm")) result.addCategory(Character.MODIFIER_LETTER);
+        else if (name.equals("Lo")) result.addCategory(Character.OTHER_LETTER);
+        else if (name.equals("Nd")) result.addCategory(Character.DECIMAL_DIGIT_NUMBER);
+        else if (name.equals("N")) result.addCategory(Character.DECIMAL_DIGIT_NUMBER)
+                .addCategory(Character.LETTER_NUMBER).addCategory(Character.OTHER_NUMBER);
+        else if (name.equals("P")) result.addCategory(Character.CONNECTOR_PUNCTUATION)
+                .addCategory(Character.DASH_PUNCTUATION).addCategory(Character.START_PUNCTUATION)
+                .addCategory(Character.END_PUNCTUATION).addCategory(Character.INITIAL_QUOTE_PUNCTUATION)
+                .addCategory(Character.FINAL_QUOTE_PUNCTUATION).addCategory(Character.OTHER_PUNCTUATION);
+        else return null;
+
+        return result;
+    }
+
+    /**
+     * Return the complement of a set.
+     * @param other The set.
+     * @return The characters not in the set.
+     */
+    public static CharClass not(CharClass other) {
+        return new CharClass(true).addClass(other);
+    }
+
+    /**
+     * Check if the set contains a character.
+     * @param c The code point of the character.
+     * @return True if the set contains the character.
+     */
+    public boolean contains(int c) {
+        return negated != containsAdded(c);
+    }
+
+    private boolean containsAdded(int c) {
+        for (int[] range : ranges) {
+            if (c >= range[0] && c <= range[1]) return true;
+        }
+
+        if (categories != 0 && (categories & (1 << Character.getType(c))) != 0) return true;
+
+        for (CharClass other : classes) {
+            if (other.contains(c)) return true;
+        }
+
+        return false;
+    }
+}
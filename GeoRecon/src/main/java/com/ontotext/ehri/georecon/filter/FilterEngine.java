@@ -0,0 +1,162 @@
+package com.ontotext.ehri.georecon.filter;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Named filters compiled from a rule file. Each line of the file is empty, a comment starting with # or one of:
+ *
+ *   list NAME = WORD | WORD | ...        a list of words that patterns can refer to as {NAME}
+ *   match FILTER = PATTERN               the filter matches strings matched by one of its match patterns...
+ *   except FILTER = PATTERN              ...unless they are also matched by one of its except patterns
+ *   strip-prefix FILTER = PATTERN        the filter strips the longest prefix matched by one of these patterns...
+ *   strip-suffix FILTER = PATTERN        ...and the longest suffix matched by one of these patterns
+ *
+ * Patterns match whole strings and use the syntax of FilterPattern. All match and except patterns of a filter are
+ * compiled into one automaton, so a string is classified in one pass.
+ */
+public class FilterEngine {
+    private static final Pattern RULE = Pattern.compile("^(list|match|except|strip-prefix|strip-suffix)\\s+(\\S+)\\s*=\\s*(.*)$");
+    private static final Pattern WORD_SPLITTER = Pattern.compile("\\s*\\|\\s*");
+
+    private final Map<String, Filter> filters = new HashMap<String, Filter>();
+
+    /**
+     * Load filters from a rule file in UTF-8.
+     * @param file The rule file.
+     * @return The filters.
+     * @throws IOException If the file cannot be read.
+     * @throws IllegalArgumentException If a rule is invalid.
+     */
+    public static FilterEngine load(File file) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) lines.add(line);
+        } finally {
+            reader.close();
+        }
+
+        return parse(lines);
+    }
+
+    /**
+     * Parse filters from the lines of a rule file.
+     * @param lines The lines.
+     * @return The filters.
+     * @throws IllegalArgumentException If a rule is invalid.
+     */
+    public static FilterEngine parse(List<String> lines) {
+        FilterEngine engine = new FilterEngine();
+        Map<String, List<String>> lists = new HashMap<String, List<String>>();
+
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            Matcher matcher = RULE.matcher(line);
+            if (! matcher.matches()) throw new IllegalArgumentException("invalid rule on line " + (i + 1) + ": " + line);
+            String type = matcher.group(1);
+            String name = matcher.group(2);
+            String value = matcher.group(3);
+
+            // collect list of words
+            if (type.equals("list")) {
+                lists.put(name, Arrays.asList(WORD_SPLITTER.split(value)));
+                continue;
+            }
+
+            // add pattern to filter
+            Filter filter = engine.filters.get(name);
+
+            if (filter == null) {
+                filter = new Filter();
+                engine.filters.put(name, filter);
+            }
+
+            try {
+                filter.add(type, FilterPattern.parse(value, lists));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("invalid rule on line " + (i + 1) + ": " + e.getMessage(), e);
+            }
+        }
+
+        return engine;
+    }
+
+    /**
+     * Get a filter by name.
+     * @param name The name of the filter.
+     * @return The filter, which matches and strips nothing if no rule has this name.
+     */
+    public Filter filter(String name) {
+        Filter filter = filters.get(name);
+        return filter == null ? new Filter() : filter;
+    }
+
+    /**
+     * A filter compiled from the rules with the same name.
+     */
+    public static class Filter {
+        private final Automaton forward = new Automaton();
+        private final Automaton backward = new Automaton();
+        private int numPatterns = 0;
+        private long matchBits = 0;
+        private long exceptBits = 0;
+        private long prefixBits = 0;
+        private long suffixBits = 0;
+
+        private void add(String type, FilterPattern pattern) {
+            if (numPatterns == Long.SIZE) throw new IllegalArgumentException("too many rules in filter");
+            int bit = numPatterns++;
+
+            if (type.equals("strip-suffix")) {
+                backward.addPattern(pattern, bit, true);
+                suffixBits |= 1L << bit;
+                return;
+            }
+
+            forward.addPattern(pattern, bit, false);
+            if (type.equals("match")) matchBits |= 1L << bit;
+            else if (type.equals("except")) exceptBits |= 1L << bit;
+            else prefixBits |= 1L << bit;
+        }
+
+        /**
+         * Check if the filter matches a string.
+         * @param text The string.
+         * @return True if a match pattern and no except pattern matches the whole string.
+         */
+        public boolean matches(String text) {
+            if (matchBits == 0) return false;
+            long bits = forward.matches(text);
+            return (bits & matchBits) != 0 && (bits & exceptBits) == 0;
+        }
+
+        /**
+         * Strip the longest prefix and the longest suffix matched by the strip patterns from a string. The suffix
+         * must not overlap the prefix.
+         * @param text The string.
+         * @return The stripped string.
+         */
+        public String strip(String text) {
+            int begin = prefixBits == 0 ? -1 : forward.longestPrefix(text, prefixBits);
+            if (begin < 0) begin = 0;
+            int end = suffixBits == 0 ? -1 : backward.longestSuffix(text, suffixBits, begin);
+            if (end < 0) end = text.length();
+            return begin == 0 && end == text.length() ? text : text.substring(begin, end);
+        }
+    }
+}
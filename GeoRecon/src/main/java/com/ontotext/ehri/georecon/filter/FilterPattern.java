@@ -0,0 +1,316 @@
+package com.ontotext.ehri.georecon.filter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A parsed filter pattern. The syntax is a subset of java.util.regex without backtracking constructs: literals,
+ * character classes ([...], [^...], ., \d, \s, \w and their negations, \p{...} and \P{...}), groups ((...) or
+ * (?:...)), alternation (|), the quantifiers ?, * and +, and references to word lists ({name}), which stand for the
+ * alternation of the words in the list.
+ */
+public abstract class FilterPattern {
+
+    /**
+     * Parse a pattern.
+     * @param pattern The pattern.
+     * @param lists Map from list name to the words in the list.
+     * @return The parsed pattern.
+     * @throws IllegalArgumentException If the pattern is invalid.
+     */
+    public static FilterPattern parse(String pattern, Map<String, List<String>> lists) {
+        Parser parser = new Parser(pattern, lists);
+        FilterPattern result = parser.alternation();
+        if (parser.position < pattern.length()) throw parser.error("unexpected \")\"");
+        return result;
+    }
+
+    /**
+     * Add the transitions of this pattern between two states of an automaton.
+     * @param automaton The automaton.
+     * @param from The state before the pattern.
+     * @param to The state after the pattern.
+     * @param reversed If true, add the transitions of the reversed pattern.
+     */
+    abstract void build(Automaton automaton, int from, int to, boolean reversed);
+
+    /**
+     * A single character.
+     */
+    static class Char extends FilterPattern {
+        private final CharClass charClass;
+
+        Char(CharClass charClass) {
+            this.charClass = charClass;
+        }
+
+        @Override
+        void build(Automaton automaton, int from, int to, boolean reversed) {
+            automaton.addTransition(from, charClass, to);
+        }
+    }
+
+    /**
+     * A sequence of patterns.
+     */
+    static class Sequence extends FilterPattern {
+        private final List<FilterPattern> items;
+
+        Sequence(List<FilterPattern> items) {
+            this.items = items;
+        }
+
+        @Override
+        void build(Automaton automaton, int from, int to, boolean reversed) {
+            List<FilterPattern> ordered = items;
+
+            if (reversed) {
+                ordered = new ArrayList<FilterPattern>(items);
+                Collections.reverse(ordered);
+            }
+
+            int current = from;
+            for (int i = 0; i < ordered.size(); i++) {
+                int next = i == ordered.size() - 1 ? to : automaton.addState();
+                ordered.get(i).build(automaton, current, next, reversed);
+                current = next;
+            }
+
+            if (ordered.isEmpty()) automaton.addEpsilon(from, to);
+        }
+    }
+
+    /**
+     * Alternative patterns.
+     */
+    static class Choice extends FilterPattern {
+        private final List<FilterPattern> alternatives;
+
+        Choice(List<FilterPattern> alternatives) {
+            this.alternatives = alternatives;
+        }
+
+        @Override
+        void build(Automaton automaton, int from, int to, boolean reversed) {
+            for (FilterPattern alternative : alternatives) alternative.build(automaton, from, to, reversed);
+        }
+    }
+
+    /**
+     * A pattern with a quantifier.
+     */
+    static class Repetition extends FilterPattern {
+        private final FilterPattern item;
+        private final boolean optional;
+        private final boolean repeated;
+
+        Repetition(FilterPattern item, boolean optional, boolean repeated) {
+            this.item = item;
+            this.optional = optional;
+            this.repeated = repeated;
+        }
+
+        @Override
+        void build(Automaton automaton, int from, int to, boolean reversed) {
+            if (! repeated) {
+                item.build(automaton, from, to, reversed);
+                automaton.addEpsilon(from, to);
+                return;
+            }
+
+            // loop through inner states so that the loop cannot be entered from elsewhere
+            int loopStart = automaton.addState();
+            int loopEnd = automaton.addState();
+            automaton.addEpsilon(from, loopStart);
+            item.build(automaton, loopStart, loopEnd, reversed);
+            automaton.addEpsilon(loopEnd, loopStart);
+            automaton.addEpsilon(loopEnd, to);
+            if (optional) automaton.addEpsilon(loopStart, to);
+        }
+    }
+
+    /**
+     * Recursive-descent parser of patterns.
+     */
+    private static class Parser {
+        private final String pattern;
+        private final Map<String, List<String>> lists;
+        private int position = 0;
+
+        private Parser(String pattern, Map<String, List<String>> lists) {
+            this.pattern = pattern;
+            this.lists = lists;
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + position + " in pattern: " + pattern);
+        }
+
+        private boolean atEnd() {
+            return position >= pattern.length();
+        }
+
+        private int peek() {
+            return pattern.codePointAt(position);
+        }
+
+        private int next() {
+            int c = pattern.codePointAt(position);
+            position += Character.charCount(c);
+            return c;
+        }
+
+        private FilterPattern alternation() {
+            List<FilterPattern> alternatives = new ArrayList<FilterPattern>();
+            alternatives.add(sequence());
+
+            while (! atEnd() && peek() == '|') {
+                position++;
+                alternatives.add(sequence());
+            }
+
+            return alternatives.size() == 1 ? alternatives.get(0) : new Choice(alternatives);
+        }
+
+        private FilterPattern sequence() {
+            List<FilterPattern> items = new ArrayList<FilterPattern>();
+
+            while (! atEnd() && peek() != '|' && peek() != ')') {
+                FilterPattern item = atom();
+
+                // apply quantifiers
+                while (! atEnd() && (peek() == '?' || peek() == '*' || peek() == '+')) {
+                    int quantifier = next();
+                    item = new Repetition(item, quantifier != '+', quantifier != '?');
+                }
+
+                items.add(item);
+            }
+
+            return items.size() == 1 ? items.get(0) : new Sequence(items);
+        }
+
+        private FilterPattern atom() {
+            int c = next();
+
+            switch (c) {
+                case '(':
+                    if (pattern.startsWith("?:", position)) position += 2;
+                    else if (! atEnd() && peek() == '?') throw error("lookaround is not supported");
+                    FilterPattern group = alternation();
+                    if (atEnd() || next() != ')') throw error("missing \")\"");
+                    return group;
+
+                case '[':
+                    return new Char(charClass());
+
+                case '.':
+                    return new Char(CharClass.ANY);
+
+                case '{':
+                    return list();
+
+                case '\\':
+                    return new Char(escape());
+
+                case '?':
+                case '*':
+                case '+':
+                    throw error("nothing to repeat");
+
+                default:
+                    return new Char(new CharClass(false).addChar(c));
+            }
+        }
+
+        private FilterPattern list() {
+            int end = pattern.indexOf('}', position);
+            if (end < 0) throw error("missing \"}\"");
+            String name = pattern.substring(position, end);
+            position = end + 1;
+
+            List<String> words = lists.get(name);
+            if (words == null) throw error("no list with name \"" + name + "\"");
+
+            // alternation of the words as literals
+            List<FilterPattern> alternatives = new ArrayList<FilterPattern>();
+            for (String word : words) {
+                List<FilterPattern> chars = new ArrayList<FilterPattern>();
+
+                for (int i = 0; i < word.length(); ) {
+                    int c = word.codePointAt(i);
+                    chars.add(new Char(new CharClass(false).addChar(c)));
+                    i += Character.charCount(c);
+                }
+
+                alternatives.add(new Sequence(chars));
+            }
+
+            return new Choice(alternatives);
+        }
+
+        private CharClass charClass() {
+            boolean negated = ! atEnd() && peek() == '^';
+            if (negated) position++;
+            CharClass result = new CharClass(negated);
+            boolean first = true;
+
+            while (true) {
+                if (atEnd()) throw error("missing \"]\"");
+                int c = next();
+                if (c == ']' && ! first) return result;
+                first = false;
+
+                // predefined class or escaped character
+                if (c == '\\') {
+                    CharClass escaped = escape();
+                    result.addClass(escaped);
+                    continue;
+                }
+
+                // range of characters
+                if (pattern.startsWith("-", position) && position + 1 < pattern.length() && pattern.charAt(position + 1) != ']') {
+                    position++;
+                    int last = next();
+                    if (last == '\\') last = next();
+                    result.addRange(c, last);
+                } else {
+                    result.addChar(c);
+                }
+            }
+        }
+
+        private CharClass escape() {
+            if (atEnd()) throw error("incomplete escape");
+            int c = next();
+
+            switch (c) {
+                case 'd': return CharClass.DIGIT;
+                case 'D': return CharClass.not(CharClass.DIGIT);
+                case 's': return CharClass.SPACE;
+                case 'S': return CharClass.not(CharClass.SPACE);
+                case 'w': return CharClass.WORD;
+                case 'W': return CharClass.not(CharClass.WORD);
+                case 't': return new CharClass(false).addChar('\t');
+                case 'n': return new CharClass(false).addChar('\n');
+                case 'r': return new CharClass(false).addChar('\r');
+
+                case 'p':
+                case 'P':
+                    if (atEnd() || next() != '{') throw error("missing \"{\"");
+                    int end = pattern.indexOf('}', position);
+                    if (end < 0) throw error("missing \"}\"");
+                    CharClass property = CharClass.property(pattern.substring(position, end));
+                    if (property == null) throw error("unsupported property");
+                    position = end + 1;
+                    return c == 'p' ? property : CharClass.not(property);
+
+                default:
+                    if (Character.isLetterOrDigit(c)) throw error("unsupported escape");
+                    return new CharClass(false).addChar(c);
+            }
+        }
+    }
+}
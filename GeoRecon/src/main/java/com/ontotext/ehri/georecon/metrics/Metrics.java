@@ -0,0 +1,305 @@
+package com.ontotext.ehri.georecon.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registry of named counters and histograms shared by the programs. Once started, the metrics are written to the log
+ * as JSON periodically and at exit. The behaviour is set with system properties:
+ *
+ *   georecon.metrics.period    seconds between periodic dumps (default 60, 0 for none)
+ *   georecon.metrics.json      file to write the metrics to at exit (default: only the log)
+ *   georecon.metrics.jmx       true to register the metrics as com.ontotext.ehri.georecon:type=Metrics
+ */
+public class Metrics {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Metrics.class);
+
+    // system properties
+    public static final String PERIOD_PROPERTY = "georecon.metrics.period";
+    public static final String JSON_PROPERTY = "georecon.metrics.json";
+    public static final String JMX_PROPERTY = "georecon.metrics.jmx";
+
+    // default seconds between periodic dumps
+    private static final long DEFAULT_PERIOD = 60;
+
+    // name of the registered management bean
+    private static final String JMX_NAME = "com.ontotext.ehri.georecon:type=Metrics";
+
+    // percentiles in the dumps
+    private static final double[] PERCENTILES = { 0.5, 0.9, 0.99, 0.999 };
+    private static final String[] PERCENTILE_NAMES = { "p50", "p90", "p99", "p999" };
+
+    // metrics by name, sorted for the dumps
+    private static final Map<String, Counter> COUNTERS = new ConcurrentSkipListMap<String, Counter>();
+    private static final Map<String, Histogram> HISTOGRAMS = new ConcurrentSkipListMap<String, Histogram>();
+
+    private static volatile String program = "";
+    private static volatile long startTime = System.currentTimeMillis();
+
+    /**
+     * Get a counter and create it if it does not exist.
+     * @param name The name of the counter.
+     * @return The counter.
+     */
+    public static Counter counter(String name) {
+        Counter counter = COUNTERS.get(name);
+        if (counter != null) return counter;
+
+        synchronized (COUNTERS) {
+            counter = COUNTERS.get(name);
+
+            if (counter == null) {
+                counter = new Counter();
+                COUNTERS.put(name, counter);
+            }
+
+            return counter;
+        }
+    }
+
+    /**
+     * Get a histogram and create it if it does not exist.
+     * @param name The name of the histogram.
+     * @return The histogram.
+     */
+    public static Histogram histogram(String name) {
+        Histogram histogram = HISTOGRAMS.get(name);
+        if (histogram != null) return histogram;
+
+        synchronized (HISTOGRAMS) {
+            histogram = HISTOGRAMS.get(name);
+
+            if (histogram == null) {
+                histogram = new Histogram();
+                HISTOGRAMS.put(name, histogram);
+            }
+
+            return histogram;
+        }
+    }
+
+    /**
+     * Start dumping the metrics of a program periodically and at exit, and register them for JMX if requested.
+     * @param programName The name of the program.
+     */
+    public static void start(String programName) {
+        program = programName;
+        startTime = System.currentTimeMillis();
+        long period = Long.getLong(PERIOD_PROPERTY, DEFAULT_PERIOD);
+        final String jsonPath = System.getProperty(JSON_PROPERTY);
+
+        // dump periodically in a daemon thread
+        if (period > 0) {
+            ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "metrics");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+            executor.scheduleAtFixedRate(new Runnable() {
+                private Map<String, Long> previous = new HashMap<String, Long>();
+                private long previousTime = System.currentTimeMillis();
+
+                @Override
+                public void run() {
+                    long now = System.currentTimeMillis();
+                    LOGGER.info("metrics: " + toJson(previous, now - previousTime));
+                    previous = counts();
+                    previousTime = now;
+                }
+            }, period, period, TimeUnit.SECONDS);
+        }
+
+        // dump at exit
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                String json = toJson();
+                LOGGER.info("final metrics: " + json);
+                if (jsonPath != null) writeJson(new File(jsonPath), json);
+            }
+        }, "metrics-exit"));
+
+        // register management bean
+        if (Boolean.getBoolean(JMX_PROPERTY)) {
+
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsBean(),
+                        new ObjectName(JMX_NAME));
+            } catch (Exception e) {
+                LOGGER.error("exception while registering metrics for JMX", e);
+            }
+        }
+    }
+
+    /**
+     * Get all metrics, the heap and the garbage collectors as JSON.
+     * @return The metrics in JSON format.
+     */
+    public static String toJson() {
+        return toJson(null, 0);
+    }
+
+    /**
+     * Reset all metrics to zero.
+     */
+    public static void reset() {
+        for (Counter counter : COUNTERS.values()) counter.reset();
+        for (Histogram histogram : HISTOGRAMS.values()) histogram.reset();
+        startTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Get all metrics as JSON, with the rate of the counters over the last interval if given.
+     * @param previous The counts at the start of the interval, or null.
+     * @param interval The length of the interval in milliseconds.
+     * @return The metrics in JSON format.
+     */
+    private static String toJson(Map<String, Long> previous, long interval) {
+        long uptime = Math.max(1, System.currentTimeMillis() - startTime);
+        StringBuilder json = new StringBuilder();
+        json.append("{\"program\":").append(quote(program));
+        json.append(",\"uptime_ms\":").append(uptime);
+
+        // counters with their rates
+        json.append(",\"counters\":{");
+        String separator = "";
+
+        for (Map.Entry<String, Counter> entry : COUNTERS.entrySet()) {
+            long count = entry.getValue().get();
+            json.append(separator).append(quote(entry.getKey())).append(":{\"count\":").append(count);
+            json.append(",\"rate_per_s\":").append(format(count * 1000.0 / uptime));
+
+            if (previous != null && interval > 0) {
+                Long before = previous.get(entry.getKey());
+                long delta = count - (before == null ? 0 : before);
+                json.append(",\"interval_rate_per_s\":").append(format(delta * 1000.0 / interval));
+            }
+
+            json.append("}");
+            separator = ",";
+        }
+
+        // histograms with their percentiles
+        json.append("},\"histograms\":{");
+        separator = "";
+
+        for (Map.Entry<String, Histogram> entry : HISTOGRAMS.entrySet()) {
+            Histogram histogram = entry.getValue();
+            json.append(separator).append(quote(entry.getKey())).append(":{\"count\":").append(histogram.getCount());
+            json.append(",\"mean\":").append(format(histogram.getMean()));
+            json.append(",\"max\":").append(histogram.getMax());
+
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                json.append(",\"").append(PERCENTILE_NAMES[i]).append("\":").append(histogram.percentile(PERCENTILES[i]));
+            }
+
+            json.append("}");
+            separator = ",";
+        }
+
+        // heap and garbage collectors
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        json.append("},\"heap\":{\"used\":").append(heap.getUsed());
+        json.append(",\"committed\":").append(heap.getCommitted());
+        json.append(",\"max\":").append(heap.getMax());
+        json.append("},\"gc\":{");
+        separator = "";
+
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            json.append(separator).append(quote(collector.getName()));
+            json.append(":{\"count\":").append(collector.getCollectionCount());
+            json.append(",\"time_ms\":").append(collector.getCollectionTime()).append("}");
+            separator = ",";
+        }
+
+        json.append("}}");
+        return json.toString();
+    }
+
+    private static Map<String, Long> counts() {
+        Map<String, Long> counts = new HashMap<String, Long>();
+        for (Map.Entry<String, Counter> entry : COUNTERS.entrySet()) counts.put(entry.getKey(), entry.getValue().get());
+        return counts;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.1f", value);
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') quoted.append('\\').append(c);
+            else if (c < 0x20) quoted.append(String.format("\\u%04x", (int) c));
+            else quoted.append(c);
+        }
+
+        return quoted.append('"').toString();
+    }
+
+    private static void writeJson(File file, String json) {
+
+        try {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+
+            try {
+                writer.write(json);
+                writer.write("\n");
+            } finally {
+                writer.close();
+            }
+
+        } catch (IOException e) {
+            LOGGER.error("exception while writing metrics to file: " + file.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * The management bean of the metrics.
+     */
+    private static class MetricsBean implements MetricsMXBean {
+
+        @Override
+        public String getJson() {
+            return toJson();
+        }
+
+        @Override
+        public long getCounter(String name) {
+            Counter counter = COUNTERS.get(name);
+            return counter == null ? 0 : counter.get();
+        }
+
+        @Override
+        public long getPercentile(String name, double fraction) {
+            Histogram histogram = HISTOGRAMS.get(name);
+            return histogram == null ? 0 : histogram.percentile(fraction);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.ontotext.ehri.georecon.metrics;
+
+/**
+ * Management interface of the metrics, registered as com.ontotext.ehri.georecon:type=Metrics.
+ */
+public interface MetricsMXBean {
+
+    /**
+     * Get all metrics as JSON.
+     * @return The metrics in JSON format.
+     */
+    String getJson();
+
+    /**
+     * Get the value of a counter.
+     * @param name The name of the counter.
+     * @return The value of the counter, or zero if there is no counter with this name.
+     */
+    long getCounter(String name);
+
+    /**
+     * Estimate a percentile of a histogram.
+     * @param name The name of the histogram.
+     * @param fraction The percentile as a fraction, e.g. 0.99.
+     * @return The percentile, or zero if there is no histogram with this name.
+     */
+    long getPercentile(String name, double fraction);
+}
@@ -0,0 +1,252 @@
+package com.ontotext.ehri.georecon.place;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Immutable dictionary of names with a minimal perfect hash function. Each name has a slot between zero and the
+ * number of names. The names are stored as UTF-8 bytes in a direct buffer outside of the heap, in slot order, and
+ * lookups verify the name in its slot, so unknown names are rejected. On the heap there are only the offsets of the
+ * names and the displacements of the hash function.
+ *
+ * The hash function uses hash and displace: names are hashed into buckets of about three names, and each bucket gets
+ * the first seed that moves all its names to free slots. Buckets are placed from the largest, and buckets with one
+ * name store their slot directly.
+ */
+public class NameDictionary implements Serializable {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // average number of names per bucket
+    private static final int BUCKET_SIZE = 3;
+
+    // the number of seeds to try before giving up on a bucket
+    private static final int MAX_SEED = 1 << 24;
+
+    private transient int size;
+    private transient int[] offsets;
+    private transient int[] displacements;
+    private transient ByteBuffer keys;
+
+    /**
+     * Build a dictionary of names.
+     * @param names The names (duplicates are ignored).
+     */
+    public NameDictionary(Collection<String> names) {
+        List<byte[]> keyList = new ArrayList<byte[]>();
+        for (String name : new TreeSet<String>(names)) keyList.add(name.getBytes(UTF8));
+        size = keyList.size();
+        displacements = new int[Math.max(1, size / BUCKET_SIZE)];
+
+        // hash names once and group them by bucket
+        long[] hashes = new long[size];
+        int[] bucketSizes = new int[displacements.length];
+
+        for (int i = 0; i < size; i++) {
+            hashes[i] = hash(keyList.get(i), 0, keyList.get(i).length);
+            bucketSizes[bucket(hashes[i])]++;
+        }
+
+        int[][] buckets = new int[displacements.length][];
+        for (int b = 0; b < buckets.length; b++) buckets[b] = new int[bucketSizes[b]];
+        Arrays.fill(bucketSizes, 0);
+
+        for (int i = 0; i < size; i++) {
+            int b = bucket(hashes[i]);
+            buckets[b][bucketSizes[b]++] = i;
+        }
+
+        // place larger buckets first
+        Integer[] order = new Integer[buckets.length];
+        for (int b = 0; b < order.length; b++) order[b] = b;
+        final int[][] finalBuckets = buckets;
+
+        Arrays.sort(order, new Comparator<Integer>() {
+
+            @Override
+            public int compare(Integer b1, Integer b2) {
+                return Integer.compare(finalBuckets[b2].length, finalBuckets[b1].length);
+            }
+        });
+
+        int[] slotKeys = new int[size];
+        Arrays.fill(slotKeys, -1);
+        int nextFree = 0;
+
+        for (int b : order) {
+            int[] bucket = buckets[b];
+            if (bucket.length == 0) break;
+
+            // store the slot of a single name directly
+            if (bucket.length == 1) {
+                while (slotKeys[nextFree] >= 0) nextFree++;
+                slotKeys[nextFree] = bucket[0];
+                displacements[b] = -nextFree - 1;
+                continue;
+            }
+
+            displacements[b] = findSeed(bucket, hashes, slotKeys);
+            for (int key : bucket) slotKeys[slot(hashes[key], displacements[b])] = key;
+        }
+
+        // copy names to the buffer in slot order
+        long length = 0;
+        for (byte[] key : keyList) length += key.length;
+        if (length > Integer.MAX_VALUE) throw new IllegalArgumentException("names too long for dictionary: " + length);
+        keys = ByteBuffer.allocateDirect((int) length);
+        offsets = new int[size + 1];
+
+        for (int slot = 0; slot < size; slot++) {
+            byte[] key = keyList.get(slotKeys[slot]);
+            offsets[slot] = keys.position();
+            keys.put(key);
+        }
+
+        offsets[size] = keys.position();
+    }
+
+    /**
+     * Get the slot of a name.
+     * @param name The name.
+     * @return The slot of the name, or -1 if the name is not in the dictionary.
+     */
+    public int get(String name) {
+        if (size == 0) return -1;
+        byte[] key = name.getBytes(UTF8);
+        long hash = hash(key, 0, key.length);
+        int displacement = displacements[bucket(hash)];
+        int slot = displacement < 0 ? -displacement - 1 : slot(hash, displacement);
+
+        // verify the name in the slot
+        int offset = offsets[slot];
+        if (offsets[slot + 1] - offset != key.length) return -1;
+
+        for (int i = 0; i < key.length; i++) {
+            if (keys.get(offset + i) != key[i]) return -1;
+        }
+
+        return slot;
+    }
+
+    /**
+     * Get the name in a slot.
+     * @param slot The slot.
+     * @return The name.
+     */
+    public String name(int slot) {
+        byte[] key = new byte[offsets[slot + 1] - offsets[slot]];
+        for (int i = 0; i < key.length; i++) key[i] = keys.get(offsets[slot] + i);
+        return new String(key, UTF8);
+    }
+
+    /**
+     * Get the number of names.
+     * @return The number of names.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Find the first seed that moves all names of a bucket to distinct free slots.
+     * @param bucket The names of the bucket.
+     * @param hashes The hashes of all names.
+     * @param slotKeys The name in each slot or -1 if the slot is free.
+     * @return The seed.
+     */
+    private int findSeed(int[] bucket, long[] hashes, int[] slotKeys) {
+        int[] slots = new int[bucket.length];
+
+        for (int seed = 0; seed < MAX_SEED; seed++) {
+            boolean free = true;
+
+            for (int i = 0; i < bucket.length && free; i++) {
+                slots[i] = slot(hashes[bucket[i]], seed);
+                if (slotKeys[slots[i]] >= 0) free = false;
+                for (int j = 0; j < i && free; j++) if (slots[j] == slots[i]) free = false;
+            }
+
+            if (free) return seed;
+        }
+
+        throw new IllegalStateException("no seed found for bucket of size " + bucket.length);
+    }
+
+    private int bucket(long hash) {
+        return (int) ((hash >>> 1) % displacements.length);
+    }
+
+    private int slot(long hash, int seed) {
+        return (int) ((mix(hash + seed * 0x9E3779B97F4A7C15L) >>> 1) % size);
+    }
+
+    /**
+     * Hash bytes with 64-bit FNV-1a followed by a finalizer.
+     */
+    private static long hash(byte[] bytes, int offset, int length) {
+        long hash = 0xCBF29CE484222325L;
+
+        for (int i = offset; i < offset + length; i++) {
+            hash ^= bytes[i] & 0xFF;
+            hash *= 0x100000001B3L;
+        }
+
+        return mix(hash);
+    }
+
+    /**
+     * The finalizer of MurmurHash3.
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(size);
+        out.writeObject(offsets);
+        out.writeObject(displacements);
+
+        // copy names from the buffer in chunks
+        byte[] chunk = new byte[1 << 16];
+        ByteBuffer view = keys.duplicate();
+        view.clear();
+
+        while (view.hasRemaining()) {
+            int length = Math.min(chunk.length, view.remaining());
+            view.get(chunk, 0, length);
+            out.write(chunk, 0, length);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        size = in.readInt();
+        offsets = (int[]) in.readObject();
+        displacements = (int[]) in.readObject();
+        keys = ByteBuffer.allocateDirect(offsets[size]);
+
+        // copy names to the buffer in chunks
+        byte[] chunk = new byte[1 << 16];
+
+        while (keys.hasRemaining()) {
+            int length = Math.min(chunk.length, keys.remaining());
+            in.readFully(chunk, 0, length);
+            keys.put(chunk, 0, length);
+        }
+    }
+}
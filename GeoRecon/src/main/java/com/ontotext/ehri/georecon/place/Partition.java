@@ -0,0 +1,86 @@
+package com.ontotext.ehri.georecon.place;
+
+import java.util.BitSet;
+import java.util.SortedSet;
+
+/**
+ * The places without stop-features of each range of a posting array, so that lookups of allowed places do not check
+ * the features of the places again. Only the ranges that have places with stop-features are copied; the other ranges
+ * are allowed whole and share the posting array.
+ */
+final class Partition {
+    private final Place[] postings;
+    private final int[] postingOffsets;
+    private final BitSet stop;
+
+    // the ranges with places that have stop-features, and the allowed places of these ranges with the offset of the
+    // allowed places of each range (ranges allowed whole have no places here)
+    private final BitSet mixed;
+    private final Place[] places;
+    private final int[] offsets;
+
+    /**
+     * Partition the ranges of a posting array.
+     * @param postings The places of all ranges.
+     * @param postingOffsets The offset of each range in the array, followed by the length of the array.
+     * @param stop The codes of the stop-features.
+     * @param index The index that encoded the features of the places.
+     */
+    private Partition(Place[] postings, int[] postingOffsets, BitSet stop, PlaceIndex index) {
+        this.postings = postings;
+        this.postingOffsets = postingOffsets;
+        this.stop = stop;
+        int numRanges = postingOffsets.length - 1;
+        mixed = new BitSet(numRanges);
+        offsets = new int[numRanges + 1];
+        int size = 0;
+
+        // find the ranges with stop places and count their allowed places
+        for (int i = 0; i < numRanges; i++) {
+            int allowed = 0;
+
+            for (int j = postingOffsets[i]; j < postingOffsets[i + 1]; j++) {
+                if (! index.isStopFeature(stop, postings[j])) allowed++;
+            }
+
+            if (allowed < postingOffsets[i + 1] - postingOffsets[i]) mixed.set(i);
+            else allowed = 0;
+            size += allowed;
+            offsets[i + 1] = size;
+        }
+
+        places = new Place[size];
+        int offset = 0;
+
+        for (int i = mixed.nextSetBit(0); i >= 0; i = mixed.nextSetBit(i + 1)) {
+            for (int j = postingOffsets[i]; j < postingOffsets[i + 1]; j++) {
+                if (! index.isStopFeature(stop, postings[j])) places[offset++] = postings[j];
+            }
+        }
+    }
+
+    /**
+     * Get the partition of a posting array for the current stop-features, reusing a partition if it was made for the
+     * same array and stop-features.
+     * @param current The partition made before, or null.
+     * @param postings The places of all ranges.
+     * @param postingOffsets The offset of each range in the array, followed by the length of the array.
+     * @param stop The codes of the stop-features.
+     * @param index The index that encoded the features of the places.
+     * @return The partition.
+     */
+    static Partition of(Partition current, Place[] postings, int[] postingOffsets, BitSet stop, PlaceIndex index) {
+        if (current != null && current.postings == postings && current.stop == stop) return current;
+        return new Partition(postings, postingOffsets, stop, index);
+    }
+
+    /**
+     * Get the allowed places of a range.
+     * @param i The range.
+     * @return The places without stop-features, or null if all places of the range have one.
+     */
+    SortedSet<Place> allowed(int i) {
+        if (! mixed.get(i)) return new PostingList(postings, postingOffsets[i], postingOffsets[i + 1]);
+        return offsets[i] == offsets[i + 1] ? null : new PostingList(places, offsets[i], offsets[i + 1]);
+    }
+}
@@ -34,6 +34,15 @@ public class Place implements Comparable<Place>, Serializable {
     private String feature;
     private Place parent;
 
+    // small integer for the feature, assigned by the index (-1 if not assigned)
+    private int featureCode = -1;
+
+    // range of the place and its descendants in a depth-first numbering of the place tree, assigned by the index, and
+    // the numbering that the range belongs to (null if not assigned)
+    private int subtreeStart = -1;
+    private int subtreeEnd = -1;
+    private Object numbering;
+
     public Place(int geoID, double latitude, double longitude, long population, String feature, Place parent) {
         this.geoID = geoID;
         this.latitude = latitude;
@@ -67,12 +76,44 @@ public class Place implements Comparable<Place>, Serializable {
         return parent;
     }
 
+    public int getFeatureCode() {
+        return featureCode;
+    }
+
+    void setFeatureCode(int featureCode) {
+        this.featureCode = featureCode;
+    }
+
+    public int getSubtreeStart() {
+        return subtreeStart;
+    }
+
+    public int getSubtreeEnd() {
+        return subtreeEnd;
+    }
+
+    void setSubtree(Object numbering, int subtreeStart, int subtreeEnd) {
+        this.subtreeStart = subtreeStart;
+        this.subtreeEnd = subtreeEnd;
+        this.numbering = numbering;
+    }
+
+    boolean isNumberedBy(Object numbering) {
+        return numbering != null && this.numbering == numbering;
+    }
+
     /**
      * Test if this place is a descendant of some other place. A place cannot be a descendant of itself.
      * @param other The other place.
      * @return True if this place is descendant of the other place; false otherwise.
      */
     public boolean isDescendantOf(Place other) {
+
+        // compare subtree ranges if both places are numbered by the same index
+        if (numbering != null && numbering == other.numbering) {
+            return subtreeStart > other.subtreeStart && subtreeStart <= other.subtreeEnd;
+        }
+
         Place pointer = this;
 
         while ((pointer = pointer.parent) != null) {
@@ -235,6 +276,14 @@ public class Place implements Comparable<Place>, Serializable {
         return Tools.distance(this.latitude, this.longitude, latitude, longitude, "K");
     }
 
+    /**
+     * Calculate the distance in kilometers between this place and the reference point used to rank places.
+     * @return The distance in kilometers.
+     */
+    public double referenceDistance() {
+        return distanceTo(REF_POINT_LAT, REF_POINT_LON);
+    }
+
     /**
      * Calculate the distance in kilometers between this place and some other place.
      * @param other The other place.
@@ -258,8 +307,8 @@ public class Place implements Comparable<Place>, Serializable {
         else if (population < o.population) return 1;
 
         // prefer places closer to the reference point
-        double myDist = distanceTo(REF_POINT_LAT, REF_POINT_LON);
-        double oDist = o.distanceTo(REF_POINT_LAT, REF_POINT_LON);
+        double myDist = referenceDistance();
+        double oDist = o.referenceDistance();
         if (myDist < oDist) return -1;
         else if (myDist > oDist) return 1;
 
@@ -2,10 +2,22 @@ package com.ontotext.ehri.georecon.place;
 
 import java.io.Serializable;
 import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 /**
@@ -19,27 +31,96 @@ public class PlaceIndex implements Serializable {
     private static final Pattern PUNCTUATION_SEQ = Pattern.compile("\\p{Punct}+");
     private static final Pattern SPACE_SEQ = Pattern.compile("\\s+");
 
-    // map from names to places
+    // the number of names whose places are kept ordered by subtree range
+    private static final int MAX_RANGE_ORDERS = 1 << 14;
+
+    // map from names to places while the index is built (null when compact)
     private Map<String, SortedSet<Place>> index;
 
+    // dictionary of names and the places of all names in slot order, with the offset of the places of each slot in
+    // the array (null while the index is built)
+    private NameDictionary names;
+    private Place[] postingPlaces;
+    private int[] postingOffsets;
+
+    // feature codes: the position of each feature in the list
+    private List<String> features;
+    private Map<String, Integer> featureCodes;
+
+    // variant rule codes: the position of each rule in the list
+    private List<String> variantRules;
+    private Map<String, Integer> variantRuleCodes;
+
+    // the places that have a name only as a variant, with the code of the rule that derived it, by name while the
+    // index is built and by slot of the name dictionary when compact
+    private Map<String, Map<Place, Integer>> variants;
+    private Map<Integer, Map<Place, Integer>> slotVariants;
+
+    // feature codes to exclude from getAllowed (null if none are excluded) and the places of each slot without them
+    private transient volatile BitSet stopFeatureCodes;
+    private transient volatile Partition partition;
+
+    // the numbering of the places in subtree ranges (null if they are not numbered) and map from names to their places
+    // ordered by range
+    private volatile Numbering numbering;
+    private transient volatile Map<String, RangeOrder> rangeIndex;
+
     /**
      * Construct an empty place index.
      */
     public PlaceIndex() {
         index = new HashMap<String, SortedSet<Place>>();
+        features = new ArrayList<String>();
+        featureCodes = new HashMap<String, Integer>();
+        variantRules = new ArrayList<String>();
+        variantRuleCodes = new HashMap<String, Integer>();
+        variants = new HashMap<String, Map<Place, Integer>>();
     }
 
     /**
-     * Add a place to the index.
+     * Add a place to the index. The feature of the place is encoded with the feature codes of this index, so a place
+     * should only be added to one index.
      * @param place The place to add.
      * @param name The name of the place.
      */
     public void add(Place place, String name) {
+        add(place, name, null);
+    }
+
+    /**
+     * Add a place to the index under a variant of one of its names. A name that the place also has as an original
+     * name is not recorded as a variant.
+     * @param place The place to add.
+     * @param name The variant of the name of the place.
+     * @param rule The name of the rule that derived the variant, or null if the name is an original name.
+     */
+    public void add(Place place, String name, String rule) {
         name = normalizeName(name);
 
+        // encode the feature of the place with the codes of this index
+        place.setFeatureCode(featureCode(place.getFeature()));
+        numbering = null;
+        if (index == null) expand();
+
         // retrieve set of places for this name
         SortedSet<Place> places = index.get(name);
         if (places == null) places = new TreeSet<Place>();
+        Map<Place, Integer> codes = variants.get(name);
+        boolean original = places.contains(place) && (codes == null || ! codes.containsKey(place));
+
+        // record the rule of a variant unless the place has the name already
+        if (rule == null && codes != null) {
+            codes.remove(place);
+            if (codes.isEmpty()) variants.remove(name);
+        } else if (rule != null && ! original) {
+
+            if (codes == null) {
+                codes = new HashMap<Place, Integer>();
+                variants.put(name, codes);
+            }
+
+            codes.put(place, variantRuleCode(rule));
+        }
 
         // add place to set of places for this name
         places.add(place);
@@ -53,7 +134,528 @@ public class PlaceIndex implements Serializable {
      */
     public SortedSet<Place> get(String name) {
         name = normalizeName(name);
-        return index.get(name);
+        return postings(name);
+    }
+
+    /**
+     * Move the names of the index to a name dictionary outside of the heap and the places of all names to one array.
+     * This is done when the index is built; adding places afterwards moves the names back to a map.
+     */
+    public synchronized void compact() {
+        if (index == null) return;
+        names = new NameDictionary(index.keySet());
+        int[] slots = new int[index.size()];
+        postingOffsets = new int[names.size() + 1];
+        int i = 0;
+
+        // count the places of each slot
+        for (Map.Entry<String, SortedSet<Place>> entry : index.entrySet()) {
+            slots[i] = names.get(entry.getKey());
+            postingOffsets[slots[i++] + 1] = entry.getValue().size();
+        }
+
+        for (int slot = 0; slot < names.size(); slot++) postingOffsets[slot + 1] += postingOffsets[slot];
+        postingPlaces = new Place[postingOffsets[names.size()]];
+        i = 0;
+
+        // copy the places in the order of their sets and drop each set once copied, so the sets and the array are
+        // not all in memory at once
+        for (Iterator<SortedSet<Place>> iterator = index.values().iterator(); iterator.hasNext(); ) {
+            int offset = postingOffsets[slots[i++]];
+            for (Place place : iterator.next()) postingPlaces[offset++] = place;
+            iterator.remove();
+        }
+
+        slotVariants = new HashMap<Integer, Map<Place, Integer>>();
+        for (Map.Entry<String, Map<Place, Integer>> entry : variants.entrySet()) {
+            slotVariants.put(names.get(entry.getKey()), entry.getValue());
+        }
+
+        index = null;
+        variants = null;
+    }
+
+    /**
+     * Move the names of the index from the name dictionary back to a map, so that places can be added.
+     */
+    private void expand() {
+        index = new HashMap<String, SortedSet<Place>>();
+        for (int slot = 0; slot < names.size(); slot++) index.put(names.name(slot), new TreeSet<Place>(postings(slot)));
+        variants = new HashMap<String, Map<Place, Integer>>();
+        for (Map.Entry<Integer, Map<Place, Integer>> entry : slotVariants.entrySet()) {
+            variants.put(names.name(entry.getKey()), entry.getValue());
+        }
+
+        names = null;
+        postingPlaces = null;
+        postingOffsets = null;
+        slotVariants = null;
+        partition = null;
+    }
+
+    /**
+     * Get the set of places with a normalized name.
+     * @param name The normalized name.
+     * @return The set of places, or null if there are no places with this name.
+     */
+    SortedSet<Place> postings(String name) {
+        Map<String, SortedSet<Place>> map = index;
+        if (map != null) return map.get(name);
+        int slot = names.get(name);
+        return slot < 0 ? null : postings(slot);
+    }
+
+    /**
+     * Get the name dictionary of a compact index.
+     * @return The name dictionary, or null if the index is not compact.
+     */
+    NameDictionary nameDictionary() {
+        return names;
+    }
+
+    /**
+     * Get the set of places with the name in a slot of the name dictionary.
+     * @param slot The slot.
+     * @return The set of places, a view of the range of the slot.
+     */
+    SortedSet<Place> postings(int slot) {
+        return new PostingList(postingPlaces, postingOffsets[slot], postingOffsets[slot + 1]);
+    }
+
+    /**
+     * Get the set of places with a normalized name, without places that have one of the stop-features. A compact
+     * index partitions the places of each slot once for the stop-features, so lookups do not check the places again.
+     * @param name The normalized name.
+     * @return The set of places without stop-features, or null if there are no such places.
+     */
+    SortedSet<Place> allowedPostings(String name) {
+        BitSet stop = stopFeatureCodes;
+        if (stop == null) return postings(name);
+        Map<String, SortedSet<Place>> map = index;
+        if (map != null) return allowed(map.get(name));
+        int slot = names.get(name);
+        if (slot < 0) return null;
+        Partition current = Partition.of(partition, postingPlaces, postingOffsets, stop, this);
+        partition = current;
+        return current.allowed(slot);
+    }
+
+    /**
+     * Get the feature codes to exclude from getAllowed.
+     * @return The codes of the stop-features, or null if none are excluded.
+     */
+    BitSet stopFeatureCodes() {
+        return stopFeatureCodes;
+    }
+
+    /**
+     * Get the places that have a normalized name only as a variant.
+     * @param name The normalized name.
+     * @return Map from the places to the codes of the rules that derived the name, or null if there are none.
+     */
+    Map<Place, Integer> variantCodes(String name) {
+        if (index != null) return variants.get(name);
+        int slot = names.get(name);
+        return slot < 0 ? null : slotVariants.get(slot);
+    }
+
+    /**
+     * Get the places that have the name in a slot of the name dictionary only as a variant.
+     * @param slot The slot.
+     * @return Map from the places to the codes of the rules that derived the name, or null if there are none.
+     */
+    Map<Place, Integer> variantCodes(int slot) {
+        return slotVariants.get(slot);
+    }
+
+    /**
+     * Forget the range orders made so far, so that the sets of places they were made from can be collected.
+     */
+    synchronized void clearCaches() {
+        rangeIndex = null;
+    }
+
+    /**
+     * Get the names whose places are kept ordered by range. Removing a name from the set forgets its order.
+     * @return The normalized names.
+     */
+    Set<String> rangeOrderNames() {
+        Map<String, RangeOrder> ranges = rangeIndex;
+        return ranges == null ? Collections.<String>emptySet() : ranges.keySet();
+    }
+
+    /**
+     * Get the sets of places of all names.
+     * @return The sets of places; the places of all names in one collection when the index is compact.
+     */
+    private Collection<? extends Collection<Place>> allPostings() {
+        return index != null ? index.values() : Collections.singletonList(Arrays.asList(postingPlaces));
+    }
+
+    /**
+     * Get the set of places with the given name, without places that have one of the stop-features.
+     * @param name The name of the places.
+     * @return The set of places with this name and without stop-features, or null if there are no such places.
+     */
+    public SortedSet<Place> getAllowed(String name) {
+        return allowedPostings(normalizeName(name));
+    }
+
+    /**
+     * Drop the places that have one of the stop-features from a set of places, such as the places of a name inside a
+     * subtree. The places are checked on each call; getAllowed looks up the places of a name without checking them.
+     * @param places The set of places, or null.
+     * @return The same set if no place has a stop-feature, a new set of the other places, or null if there are none.
+     */
+    public SortedSet<Place> allowed(SortedSet<Place> places) {
+        BitSet stop = stopFeatureCodes;
+        if (places == null || stop == null) return places;
+
+        // keep the same set if all places are allowed
+        for (Place place : places) {
+            if (! isStopFeature(stop, place)) continue;
+            Place[] allowedPlaces = new Place[places.size() - 1];
+            int size = 0;
+            for (Place other : places) if (! isStopFeature(stop, other)) allowedPlaces[size++] = other;
+            return size == 0 ? null : new PostingList(Arrays.copyOf(allowedPlaces, size));
+        }
+
+        return places;
+    }
+
+    /**
+     * Get the set of places with the given name inside the subtree of a place.
+     * @param name The name of the places.
+     * @param within The place whose subtree to search (including the place itself).
+     * @return The set of places with this name inside the subtree, or null if there are no such places.
+     */
+    public SortedSet<Place> get(String name, Place within) {
+        name = normalizeName(name);
+        return slice(name, postings(name), within);
+    }
+
+    /**
+     * Get the set of places with the given name and without stop-features inside the subtree of a place.
+     * @param name The name of the places.
+     * @param within The place whose subtree to search (including the place itself).
+     * @return The set of places with this name and without stop-features inside the subtree, or null if there are no
+     * such places.
+     */
+    public SortedSet<Place> getAllowed(String name, Place within) {
+        return allowed(get(name, within));
+    }
+
+    /**
+     * Number the places of the index in depth-first order, so that the descendants of each place have the numbers
+     * in its subtree range. This is done when the index is built and again after places are added. The ranges are
+     * tagged with the numbering, so ranges that another index assigned to the same places later are not trusted.
+     */
+    public synchronized void numberPlaces() {
+        Map<Place, List<Place>> children = new IdentityHashMap<Place, List<Place>>();
+        Set<Place> seen = Collections.newSetFromMap(new IdentityHashMap<Place, Boolean>());
+        List<Place> roots = new ArrayList<Place>();
+
+        // collect the tree of indexed places and their ancestors
+        for (Collection<Place> places : allPostings()) {
+            for (Place place : places) {
+
+                for (Place pointer = place; pointer != null && seen.add(pointer); pointer = pointer.getParent()) {
+                    Place parent = pointer.getParent();
+
+                    if (parent == null) {
+                        roots.add(pointer);
+                        continue;
+                    }
+
+                    List<Place> siblings = children.get(parent);
+
+                    if (siblings == null) {
+                        siblings = new ArrayList<Place>();
+                        children.put(parent, siblings);
+                    }
+
+                    siblings.add(pointer);
+                }
+            }
+        }
+
+        // number each tree and publish the numbering once all ranges are assigned
+        Numbering current = new Numbering();
+        int next = 0;
+        for (Place root : roots) next = number(root, children, current, next);
+        rangeIndex = null;
+        numbering = current;
+    }
+
+    /**
+     * Start a numbering for places whose subtree ranges were assigned outside of this index, such as places read from
+     * a file that was written with their ranges.
+     * @return The numbering to assign the ranges with.
+     */
+    synchronized Object adoptNumbering() {
+        Numbering current = new Numbering();
+        rangeIndex = null;
+        numbering = current;
+        return current;
+    }
+
+    /**
+     * Get the numbering of the places, and number them first if they are not numbered.
+     * @return The numbering.
+     */
+    private Numbering currentNumbering() {
+        Numbering current = numbering;
+        if (current != null) return current;
+
+        synchronized (this) {
+            if (numbering == null) numberPlaces();
+            return numbering;
+        }
+    }
+
+    /**
+     * Number a place and its descendants in depth-first order.
+     * @param place The place.
+     * @param children Map from places to their children.
+     * @param numbering The numbering.
+     * @param next The next free number.
+     * @return The next free number after the subtree.
+     */
+    private static int number(Place place, Map<Place, List<Place>> children, Numbering numbering, int next) {
+        int start = next++;
+        List<Place> placeChildren = children.get(place);
+
+        if (placeChildren != null) {
+            for (Place child : placeChildren) next = number(child, children, numbering, next);
+        }
+
+        place.setSubtree(numbering, start, next - 1);
+        return next;
+    }
+
+    /**
+     * Return the places of a set inside the subtree of a place. The set is ordered by subtree range on first use, so
+     * the places inside the subtree are found by binary search.
+     * @param name The normalized name that the set was looked up with.
+     * @param places The set of places.
+     * @param within The place whose subtree to search.
+     * @return The places inside the subtree, or null if there are none.
+     */
+    private SortedSet<Place> slice(String name, SortedSet<Place> places, Place within) {
+        if (places == null) return null;
+        Numbering current = currentNumbering();
+        RangeOrder order = within.isNumberedBy(current) ? orderedByRange(name, places, current) : null;
+        SortedSet<Place> result = new TreeSet<Place>();
+
+        // places outside of this numbering are checked through their ancestors
+        if (order == null) {
+
+            for (Place place : places) {
+                if (place.equals(within) || place.isDescendantOf(within)) result.add(place);
+            }
+
+            return result.isEmpty() ? null : result;
+        }
+
+        int[] starts = order.starts;
+        int low = 0;
+        int high = starts.length;
+
+        // find the first place that starts inside the subtree
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (starts[middle] < within.getSubtreeStart()) low = middle + 1;
+            else high = middle;
+        }
+
+        // collect places till the end of the subtree
+        for (int i = low; i < starts.length && starts[i] <= within.getSubtreeEnd(); i++) {
+            result.add(order.places[i]);
+        }
+
+        return result.isEmpty() ? null : result;
+    }
+
+    /**
+     * Get the places of a set ordered by the start of their subtree range, with the starts copied at the time of
+     * ordering. The order is kept by name, since compact indexes make a new view of the places of a name on each
+     * lookup. At most MAX_RANGE_ORDERS names are kept: the map is dropped whole when it is full, since orders are
+     * cheap to make again.
+     * @param name The normalized name that the set was looked up with.
+     * @param places The set of places.
+     * @param current The numbering of this index.
+     * @return The places ordered by range, or null if some place has a range of another numbering.
+     */
+    private RangeOrder orderedByRange(String name, SortedSet<Place> places, Numbering current) {
+        Map<String, RangeOrder> ranges = rangeIndex;
+
+        if (ranges == null) {
+            synchronized (this) {
+                if (rangeIndex == null) rangeIndex = new ConcurrentHashMap<String, RangeOrder>();
+                ranges = rangeIndex;
+            }
+        }
+
+        RangeOrder order = ranges.get(name);
+        if (order != null && order.numbering == current && order.places.length == places.size()) return order;
+        Place[] ordered = places.toArray(new Place[places.size()]);
+
+        for (Place place : ordered) {
+            if (! place.isNumberedBy(current)) return null;
+        }
+
+        Arrays.sort(ordered, new Comparator<Place>() {
+
+            @Override
+            public int compare(Place p1, Place p2) {
+                return Integer.compare(p1.getSubtreeStart(), p2.getSubtreeStart());
+            }
+        });
+
+        int[] starts = new int[ordered.length];
+        for (int i = 0; i < ordered.length; i++) starts[i] = ordered[i].getSubtreeStart();
+        order = new RangeOrder(current, ordered, starts);
+        if (ranges.size() >= MAX_RANGE_ORDERS) ranges.clear();
+        ranges.put(name, order);
+        return order;
+    }
+
+    /**
+     * Set the features of places to exclude from getAllowed. The features are encoded as a bitset of feature codes and
+     * the places of each name are partitioned on first lookup, so this is done once, after the places are added.
+     * @param features The features to exclude.
+     */
+    public synchronized void setStopFeatures(Set<String> features) {
+        stopFeatureCodes = featureBits(features);
+        partition = null;
+    }
+
+    /**
+     * Encode a set of features as a bitset of feature codes. Features that no place in the index has are ignored.
+     * @param features The features.
+     * @return The bitset with the codes of the features.
+     */
+    public BitSet featureBits(Set<String> features) {
+        BitSet bits = new BitSet(this.features.size());
+
+        for (String feature : features) {
+            Integer code = featureCodes.get(feature);
+            if (code != null) bits.set(code);
+        }
+
+        return bits;
+    }
+
+    /**
+     * Get the feature that a code stands for.
+     * @param code The feature code.
+     * @return The feature.
+     */
+    public String feature(int code) {
+        return features.get(code);
+    }
+
+    /**
+     * Get the places that have a name only as a variant, so that matches of derived names can be discounted.
+     * @param name The name.
+     * @return Map from the places to the names of the rules that derived the name; empty if there are none.
+     */
+    public Map<Place, String> getVariantRules(String name) {
+        if (variantRules.isEmpty()) return Collections.emptyMap();
+        Map<Place, Integer> codes = variantCodes(normalizeName(name));
+        if (codes == null || codes.isEmpty()) return Collections.emptyMap();
+        Map<Place, String> rules = new HashMap<Place, String>();
+        for (Map.Entry<Place, Integer> entry : codes.entrySet()) rules.put(entry.getKey(), variantRule(entry.getValue()));
+        return rules;
+    }
+
+    /**
+     * Get the places that have a name only as a variant, without the names of the rules that derived it.
+     * @param name The name.
+     * @return The places; empty if there are none.
+     */
+    public Set<Place> getVariantPlaces(String name) {
+        if (variantRules.isEmpty()) return Collections.emptySet();
+        Map<Place, Integer> codes = variantCodes(normalizeName(name));
+        return codes == null ? Collections.<Place>emptySet() : Collections.unmodifiableSet(codes.keySet());
+    }
+
+    /**
+     * Get the variant rule that a code stands for.
+     * @param code The variant rule code.
+     * @return The name of the rule.
+     */
+    public String variantRule(int code) {
+        return variantRules.get(code);
+    }
+
+    /**
+     * Get the number of variant rule codes.
+     * @return The number of variant rule codes.
+     */
+    int numVariantRules() {
+        return variantRules.size();
+    }
+
+    /**
+     * Get the code of a variant rule and assign a new code if the rule has none.
+     * @param rule The name of the rule.
+     * @return The variant rule code.
+     */
+    int variantRuleCode(String rule) {
+        Integer code = variantRuleCodes.get(rule);
+
+        if (code == null) {
+            code = variantRules.size();
+            variantRules.add(rule);
+            variantRuleCodes.put(rule, code);
+        }
+
+        return code;
+    }
+
+    /**
+     * Get the number of feature codes.
+     * @return The number of feature codes.
+     */
+    int numFeatures() {
+        return features.size();
+    }
+
+    /**
+     * Get the code of a feature and assign a new code if the feature has none.
+     * @param feature The feature.
+     * @return The feature code.
+     */
+    int featureCode(String feature) {
+        Integer code = featureCodes.get(feature);
+
+        if (code == null) {
+            code = features.size();
+            features.add(feature);
+            featureCodes.put(feature, code);
+        }
+
+        return code;
+    }
+
+    /**
+     * Test if a place has one of the stop-features. The feature code of the place is trusted only if it stands for the
+     * feature of the place in this index, since another index may have encoded the place since.
+     * @param stop The codes of the stop-features.
+     * @param place The place.
+     * @return True if the feature of the place is a stop-feature; false otherwise.
+     */
+    boolean isStopFeature(BitSet stop, Place place) {
+        int code = place.getFeatureCode();
+
+        if (code < 0 || code >= features.size() || ! Objects.equals(features.get(code), place.getFeature())) {
+            Integer known = featureCodes.get(place.getFeature());
+            if (known == null) return false;
+            code = known;
+        }
+
+        return stop.get(code);
     }
 
     /**
@@ -67,6 +669,28 @@ public class PlaceIndex implements Serializable {
         return matches.iterator().next();
     }
 
+    /**
+     * Token of one numbering of places. Places keep the token with their range, so a range is trusted only by the
+     * index that assigned it.
+     */
+    private static final class Numbering implements Serializable {
+    }
+
+    /**
+     * The places of a name ordered by the start of their subtree range in a numbering.
+     */
+    private static final class RangeOrder {
+        private final Numbering numbering;
+        private final Place[] places;
+        private final int[] starts;
+
+        private RangeOrder(Numbering numbering, Place[] places, int[] starts) {
+            this.numbering = numbering;
+            this.places = places;
+            this.starts = starts;
+        }
+    }
+
     /**
      * Normalize a place name for easier string matching.
      * @param name The name of the place.
@@ -0,0 +1,127 @@
+package com.ontotext.ehri.georecon.place;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+
+/**
+ * Read-only set of the places in a range of an array, which is sorted by the natural order of places. Compact indexes
+ * keep the places of all names in one array, so the places of a name are a view of its range rather than a tree.
+ */
+final class PostingList extends AbstractSet<Place> implements SortedSet<Place> {
+    private final Place[] places;
+    private final int from;
+    private final int to;
+
+    /**
+     * Make a view of a range of places.
+     * @param places The places, sorted in the range.
+     * @param from The start of the range (inclusive).
+     * @param to The end of the range (exclusive).
+     */
+    PostingList(Place[] places, int from, int to) {
+        this.places = places;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Make a set of places.
+     * @param places The places, sorted and without duplicates.
+     */
+    PostingList(Place[] places) {
+        this(places, 0, places.length);
+    }
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Place && Arrays.binarySearch(places, from, to, o) >= 0;
+    }
+
+    @Override
+    public Iterator<Place> iterator() {
+        return new Iterator<Place>() {
+            private int next = from;
+
+            @Override
+            public boolean hasNext() {
+                return next < to;
+            }
+
+            @Override
+            public Place next() {
+                if (next >= to) throw new NoSuchElementException();
+                return places[next++];
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("posting lists are read-only");
+            }
+        };
+    }
+
+    @Override
+    public Object[] toArray() {
+        return Arrays.copyOfRange(places, from, to, Object[].class);
+    }
+
+    @Override
+    public Comparator<? super Place> comparator() {
+        return null;
+    }
+
+    @Override
+    public SortedSet<Place> subSet(Place fromElement, Place toElement) {
+        if (fromElement.compareTo(toElement) > 0) throw new IllegalArgumentException("fromElement > toElement");
+        return new PostingList(places, lowerBound(fromElement), lowerBound(toElement));
+    }
+
+    @Override
+    public SortedSet<Place> headSet(Place toElement) {
+        return new PostingList(places, from, lowerBound(toElement));
+    }
+
+    @Override
+    public SortedSet<Place> tailSet(Place fromElement) {
+        return new PostingList(places, lowerBound(fromElement), to);
+    }
+
+    @Override
+    public Place first() {
+        if (from == to) throw new NoSuchElementException();
+        return places[from];
+    }
+
+    @Override
+    public Place last() {
+        if (from == to) throw new NoSuchElementException();
+        return places[to - 1];
+    }
+
+    /**
+     * Find the position of the first place in the range that is not before a place.
+     * @param place The place.
+     * @return The position.
+     */
+    private int lowerBound(Place place) {
+        int low = from;
+        int high = to;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (places[middle].compareTo(place) < 0) low = middle + 1;
+            else high = middle;
+        }
+
+        return low;
+    }
+}
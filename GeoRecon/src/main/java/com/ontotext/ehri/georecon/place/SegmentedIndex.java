@@ -0,0 +1,788 @@
+package com.ontotext.ehri.georecon.place;
+
+import com.ontotext.ehri.georecon.metrics.Counter;
+import com.ontotext.ehri.georecon.metrics.Histogram;
+import com.ontotext.ehri.georecon.metrics.Metrics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Read-only place index stored in segments, one per country, which are loaded from file on first access. The header
+ * of the file is always loaded: it has the feature codes, the name dictionary with the segments of each name, and the
+ * places down to the countries with their names. The segments are kept in a bounded cache, and lookups can be
+ * restricted to the segments of chosen countries, so memory and startup scale with the region that is used.
+ *
+ * The file starts with a magic number, followed by the segments and the header, and ends with the offset of the
+ * header and the magic number again. The places are numbered when the file is written, so scoped lookups work across segments.
+ */
+public class SegmentedIndex extends PlaceIndex implements Closeable {
+
+    // the first and the last four bytes of a segmented index file ("GRSI")
+    public static final int MAGIC = 0x47525349;
+    private static final int VERSION = 2;
+
+    // system property with the number of segments to keep in memory
+    public static final String CACHE_SIZE_PROPERTY = "georecon.index.segments";
+    private static final int DEFAULT_CACHE_SIZE = 32;
+
+    // depth of the places at the top of segments in the place tree (the root is at depth zero, countries at two)
+    private static final int SEGMENT_DEPTH = 2;
+
+    // the segment of the header
+    private static final int HEADER_SEGMENT = 0;
+
+    // reference to the parent of places without parent
+    private static final int NO_PARENT = Integer.MIN_VALUE;
+
+    // metrics of segment loads (times in nanoseconds)
+    private static final Counter SEGMENT_LOADS = Metrics.counter("index.segment_loads");
+    private static final Histogram SEGMENT_LOAD_TIME = Metrics.histogram("index.segment_load_nanos");
+
+    private transient RandomAccessFile file;
+    private transient FileChannel channel;
+
+    // the names and the segments with places of each name, in the slot order of the names
+    private transient NameDictionary names;
+    private transient int[] nameSegmentOffsets;
+    private transient int[] nameSegments;
+
+    // the numbering that the subtree ranges of the places were written with
+    private transient Object numbering;
+
+    // the places down to the countries and the segment of the header with their names
+    private transient Place[] topPlaces;
+    private transient Segment header;
+
+    // the place at the top of each segment and the location of the segment in the file
+    private transient int[] segmentGeoIDs;
+    private transient long[] segmentOffsets;
+    private transient int[] segmentLengths;
+    private transient Map<Integer, Integer> segmentIDs;
+
+    // loaded segments: the segments of chosen countries and a cache of the rest
+    private transient Map<Integer, Segment> chosen;
+    private transient BitSet chosenIDs;
+    private transient Map<Integer, Segment> cache;
+
+    // sets of places of names that are in several segments, with and without the places that have stop-features
+    private transient Map<Integer, SortedSet<Place>> merged;
+    private transient Map<Integer, SortedSet<Place>> mergedAllowed;
+
+    /**
+     * Open a segmented index. Only the header is loaded.
+     * @param indexFile The file of the index.
+     * @throws IOException
+     */
+    public SegmentedIndex(File indexFile) throws IOException {
+        this(indexFile, Integer.getInteger(CACHE_SIZE_PROPERTY, DEFAULT_CACHE_SIZE));
+    }
+
+    /**
+     * Open a segmented index. Only the header is loaded.
+     * @param indexFile The file of the index.
+     * @param cacheSize The number of segments to keep in memory, besides those of chosen countries.
+     * @throws IOException
+     */
+    public SegmentedIndex(File indexFile, final int cacheSize) throws IOException {
+        file = new RandomAccessFile(indexFile, "r");
+        channel = file.getChannel();
+
+        try {
+            ByteBuffer trailer = read(channel.size() - 12, 12);
+            long headerOffset = trailer.getLong();
+            if (trailer.getInt() != MAGIC) throw new IOException("not a segmented index: " + indexFile);
+            ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(
+                    Channels.newInputStream(channel.position(headerOffset))));
+
+            // read the header
+            if (in.readInt() != VERSION) throw new IOException("unknown version of segmented index: " + indexFile);
+            for (String feature : (String[]) in.readObject()) featureCode(feature);
+            for (String rule : (String[]) in.readObject()) variantRuleCode(rule);
+            names = (NameDictionary) in.readObject();
+            nameSegmentOffsets = (int[]) in.readObject();
+            nameSegments = (int[]) in.readObject();
+            segmentGeoIDs = (int[]) in.readObject();
+            segmentOffsets = (long[]) in.readObject();
+            segmentLengths = (int[]) in.readObject();
+            numbering = adoptNumbering();
+            topPlaces = readTopPlaces(ByteBuffer.wrap((byte[]) in.readObject()));
+            header = readSegment(ByteBuffer.wrap((byte[]) in.readObject()), topPlaces);
+        } catch (ClassNotFoundException e) {
+            close();
+            throw new IOException("corrupt segmented index: " + indexFile, e);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+
+        segmentIDs = new HashMap<Integer, Integer>();
+        for (int id = 0; id < segmentGeoIDs.length; id++) segmentIDs.put(segmentGeoIDs[id], id);
+        merged = new ConcurrentHashMap<Integer, SortedSet<Place>>();
+        mergedAllowed = new ConcurrentHashMap<Integer, SortedSet<Place>>();
+
+        // least recently used segments are dropped first
+        cache = new LinkedHashMap<Integer, Segment>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Segment> eldest) {
+                if (size() <= cacheSize) return false;
+                forget(eldest.getKey());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Test if a file is a segmented index.
+     * @param indexFile The file.
+     * @return True if the file starts with the magic number of segmented indexes; false otherwise.
+     * @throws IOException
+     */
+    public static boolean isSegmented(File indexFile) throws IOException {
+        DataInputStream in = new DataInputStream(new FileInputStream(indexFile));
+
+        try {
+            return indexFile.length() >= 4 && in.readInt() == MAGIC;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Write a place index as a segmented index. The index is compacted and numbered first.
+     * @param index The place index.
+     * @param indexFile The file to write to.
+     * @throws IOException
+     */
+    public static void write(PlaceIndex index, File indexFile) throws IOException {
+        index.compact();
+        index.numberPlaces();
+        NameDictionary names = index.nameDictionary();
+        if (names == null) names = new NameDictionary(new ArrayList<String>());
+
+        // assign places to segments: the places down to the countries go to the header
+        List<Place> topPlaces = new ArrayList<Place>();
+        Map<Place, Integer> refs = new HashMap<Place, Integer>();
+        Map<Place, Integer> placeSegments = new HashMap<Place, Integer>();
+        List<Integer> segmentGeoIDs = new ArrayList<Integer>();
+        segmentGeoIDs.add(Place.ROOT.getGeoID());
+        Map<Integer, Integer> segmentIDs = new HashMap<Integer, Integer>();
+        List<List<Place>> segmentPlaces = new ArrayList<List<Place>>();
+        segmentPlaces.add(topPlaces);
+
+        for (int slot = 0; slot < names.size(); slot++) {
+            for (Place place : index.postings(slot)) {
+                if (placeSegments.containsKey(place)) continue;
+                Deque<Place> lineage = place.lineage();
+                Place top = null;
+                int depth = 0;
+
+                // add the place and its ancestors, parents first
+                for (Iterator<Place> iterator = lineage.iterator(); iterator.hasNext(); depth++) {
+                    Place ancestor = iterator.next();
+                    if (depth == SEGMENT_DEPTH) top = ancestor;
+                    if (placeSegments.containsKey(ancestor)) continue;
+                    int id = HEADER_SEGMENT;
+
+                    if (depth > SEGMENT_DEPTH) {
+                        Integer topID = segmentIDs.get(top.getGeoID());
+
+                        if (topID == null) {
+                            topID = segmentPlaces.size();
+                            segmentIDs.put(top.getGeoID(), topID);
+                            segmentGeoIDs.add(top.getGeoID());
+                            segmentPlaces.add(new ArrayList<Place>());
+                        }
+
+                        id = topID;
+                    }
+
+                    List<Place> places = segmentPlaces.get(id);
+                    refs.put(ancestor, id == HEADER_SEGMENT ? -places.size() - 1 : places.size());
+                    placeSegments.put(ancestor, id);
+                    places.add(ancestor);
+                }
+            }
+        }
+
+        // group the places of each name by segment
+        int numSegments = segmentPlaces.size();
+        List<Map<Integer, List<Place>>> segmentPostings = new ArrayList<Map<Integer, List<Place>>>();
+        for (int id = 0; id < numSegments; id++) segmentPostings.add(new LinkedHashMap<Integer, List<Place>>());
+        int[] nameSegmentOffsets = new int[names.size() + 1];
+        List<Integer> nameSegments = new ArrayList<Integer>();
+
+        for (int slot = 0; slot < names.size(); slot++) {
+            TreeSet<Integer> ids = new TreeSet<Integer>();
+
+            for (Place place : index.postings(slot)) {
+                int id = placeSegments.get(place);
+                List<Place> places = segmentPostings.get(id).get(slot);
+
+                if (places == null) {
+                    places = new ArrayList<Place>();
+                    segmentPostings.get(id).put(slot, places);
+                }
+
+                places.add(place);
+                ids.add(id);
+            }
+
+            nameSegments.addAll(ids);
+            nameSegmentOffsets[slot + 1] = nameSegments.size();
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+
+        try {
+            out.writeInt(MAGIC);
+            long offset = 4;
+            long[] segmentOffsets = new long[numSegments];
+            int[] segmentLengths = new int[numSegments];
+
+            // write the segments of countries
+            for (int id = HEADER_SEGMENT + 1; id < numSegments; id++) {
+                byte[] bytes = segmentBytes(index, segmentPlaces.get(id), segmentPostings.get(id), refs);
+                out.write(bytes);
+                segmentOffsets[id] = offset;
+                segmentLengths[id] = bytes.length;
+                offset += bytes.length;
+            }
+
+            // write the header, which has the places down to the countries in its segment
+            byte[] topBytes = segmentBytes(index, topPlaces, new LinkedHashMap<Integer, List<Place>>(), refs);
+            byte[] headerBytes = segmentBytes(index, new ArrayList<Place>(), segmentPostings.get(HEADER_SEGMENT), refs);
+            String[] features = new String[index.numFeatures()];
+            for (int code = 0; code < features.length; code++) features[code] = index.feature(code);
+            String[] rules = new String[index.numVariantRules()];
+            for (int code = 0; code < rules.length; code++) rules[code] = index.variantRule(code);
+            ObjectOutputStream objectOut = new ObjectOutputStream(out);
+            objectOut.writeInt(VERSION);
+            objectOut.writeObject(features);
+            objectOut.writeObject(rules);
+            objectOut.writeObject(names);
+            objectOut.writeObject(nameSegmentOffsets);
+            objectOut.writeObject(toArray(nameSegments));
+            objectOut.writeObject(toArray(segmentGeoIDs));
+            objectOut.writeObject(segmentOffsets);
+            objectOut.writeObject(segmentLengths);
+            objectOut.writeObject(topBytes);
+            objectOut.writeObject(headerBytes);
+            objectOut.flush();
+
+            // write the trailer
+            out.writeLong(offset);
+            out.writeInt(MAGIC);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Restrict lookups to the segments of chosen countries and load these segments, which are kept in memory. The
+     * places down to the countries are always included.
+     * @param countries The GeoNames IDs or names of the countries.
+     * @throws IOException
+     */
+    public synchronized void restrict(Collection<String> countries) throws IOException {
+        Map<Integer, Segment> segments = new HashMap<Integer, Segment>();
+        BitSet ids = new BitSet(segmentGeoIDs.length);
+
+        for (String country : countries) {
+            List<Place> places = findCountries(country);
+            if (places.isEmpty()) throw new IllegalArgumentException("no country with ID or name: " + country);
+
+            // countries without places below them have no segment
+            for (Place place : places) {
+                Integer id = segmentIDs.get(place.getGeoID());
+                if (id == null || ids.get(id)) continue;
+                segments.put(id, load(id));
+                ids.set(id);
+            }
+        }
+
+        chosen = segments;
+        chosenIDs = ids;
+        cache.clear();
+        forget();
+    }
+
+    /**
+     * Get the number of segments, without the header.
+     * @return The number of segments.
+     */
+    public int numSegments() {
+        return segmentGeoIDs.length - 1;
+    }
+
+    /**
+     * Get the number of segments in memory, without the header.
+     * @return The number of loaded segments.
+     */
+    public synchronized int numLoadedSegments() {
+        return cache.size() + (chosen == null ? 0 : chosen.size());
+    }
+
+    @Override
+    SortedSet<Place> postings(String name) {
+        int slot = names.get(name);
+        return slot < 0 ? null : postings(slot, null);
+    }
+
+    @Override
+    SortedSet<Place> allowedPostings(String name) {
+        BitSet stop = stopFeatureCodes();
+        if (stop == null) return postings(name);
+        int slot = names.get(name);
+        return slot < 0 ? null : postings(slot, stop);
+    }
+
+    /**
+     * Does the same and forgets the sets of places made without the previous stop-features.
+     */
+    @Override
+    public synchronized void setStopFeatures(Set<String> features) {
+        super.setStopFeatures(features);
+        mergedAllowed.clear();
+    }
+
+    /**
+     * Get the places of a name from its segments, optionally without the places that have stop-features.
+     * @param slot The slot of the name.
+     * @param stop The codes of the stop-features to drop, or null to keep all places.
+     * @return The set of places, or null if there are no such places.
+     */
+    private SortedSet<Place> postings(int slot, BitSet stop) {
+        Map<Integer, SortedSet<Place>> mergedSets = stop == null ? merged : mergedAllowed;
+        SortedSet<Place> places = mergedSets.get(slot);
+        if (places != null) return places;
+        List<SortedSet<Place>> segmentPlaces = new ArrayList<SortedSet<Place>>();
+        int size = 0;
+
+        // collect the places of the name from its segments
+        for (int i = nameSegmentOffsets[slot]; i < nameSegmentOffsets[slot + 1]; i++) {
+            int id = nameSegments[i];
+            if (! isVisible(id)) continue;
+            Segment segment = segment(id);
+            SortedSet<Place> postings = stop == null ? segment.postings(slot) : segment.allowedPostings(slot, stop, this);
+            if (postings == null) continue;
+            segmentPlaces.add(postings);
+            size += postings.size();
+        }
+
+        if (segmentPlaces.isEmpty()) return null;
+        if (segmentPlaces.size() == 1) return segmentPlaces.get(0);
+
+        // merge the places of several segments into one array and keep it, so that its partitions and range orders
+        // are kept too (a place is in one segment only, so there are no duplicates)
+        Place[] array = new Place[size];
+        int offset = 0;
+
+        for (SortedSet<Place> postings : segmentPlaces) {
+            for (Place place : postings) array[offset++] = place;
+        }
+
+        Arrays.sort(array);
+        places = new PostingList(array);
+        mergedSets.put(slot, places);
+        return places;
+    }
+
+    @Override
+    Map<Place, Integer> variantCodes(String name) {
+        int slot = names.get(name);
+        if (slot < 0) return null;
+        Map<Place, Integer> codes = null;
+
+        // collect the variants of the name from its segments
+        for (int i = nameSegmentOffsets[slot]; i < nameSegmentOffsets[slot + 1]; i++) {
+            int id = nameSegments[i];
+            if (! isVisible(id)) continue;
+            Map<Place, Integer> segmentCodes = segment(id).variantCodes(slot);
+            if (segmentCodes == null) continue;
+            if (codes == null) codes = new HashMap<Place, Integer>();
+            codes.putAll(segmentCodes);
+        }
+
+        return codes;
+    }
+
+    /**
+     * Not supported: the index is read-only.
+     */
+    @Override
+    public void add(Place place, String name, String rule) {
+        throw new UnsupportedOperationException("segmented index is read-only");
+    }
+
+    /**
+     * Does nothing: the names are in a name dictionary already.
+     */
+    @Override
+    public void compact() {
+    }
+
+    /**
+     * Does nothing: the places were numbered when the index was written.
+     */
+    @Override
+    public void numberPlaces() {
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (file != null) file.close();
+    }
+
+    /**
+     * Test if lookups see a segment: the header and the chosen segments, or all segments if none were chosen.
+     * @param id The ID of the segment.
+     * @return True if the segment is visible; false otherwise.
+     */
+    private boolean isVisible(int id) {
+        BitSet ids = chosenIDs;
+        return ids == null || id == HEADER_SEGMENT || ids.get(id);
+    }
+
+    /**
+     * Get a segment and load it if it is not in memory.
+     * @param id The ID of the segment.
+     * @return The segment.
+     */
+    private synchronized Segment segment(int id) {
+        if (id == HEADER_SEGMENT) return header;
+        Segment segment = chosen == null ? null : chosen.get(id);
+        if (segment != null) return segment;
+        segment = cache.get(id);
+        if (segment != null) return segment;
+
+        try {
+            segment = load(id);
+        } catch (IOException e) {
+            throw new UncheckedIOException("exception while loading segment of place: " + segmentGeoIDs[id], e);
+        }
+
+        cache.put(id, segment);
+        return segment;
+    }
+
+    /**
+     * Load a segment from file.
+     * @param id The ID of the segment.
+     * @return The segment.
+     * @throws IOException
+     */
+    private Segment load(int id) throws IOException {
+        long nanos = System.nanoTime();
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, segmentOffsets[id], segmentLengths[id]);
+        Segment segment = readSegment(buffer, topPlaces);
+        SEGMENT_LOADS.increment();
+        SEGMENT_LOAD_TIME.recordSince(nanos);
+        return segment;
+    }
+
+    /**
+     * Forget the sets of places made from segments, so that dropped segments can be collected.
+     */
+    private void forget() {
+        merged.clear();
+        mergedAllowed.clear();
+        clearCaches();
+    }
+
+    /**
+     * Forget the sets of places made from one segment, so that the segment can be collected once it is dropped. The
+     * sets of names without places in the segment are kept.
+     * @param id The ID of the segment.
+     */
+    private void forget(int id) {
+        for (Map<Integer, SortedSet<Place>> mergedSets : Arrays.asList(merged, mergedAllowed)) {
+            for (Iterator<Integer> iterator = mergedSets.keySet().iterator(); iterator.hasNext(); ) {
+                if (hasPlacesIn(iterator.next(), id)) iterator.remove();
+            }
+        }
+
+        for (Iterator<String> iterator = rangeOrderNames().iterator(); iterator.hasNext(); ) {
+            int slot = names.get(iterator.next());
+            if (slot < 0 || hasPlacesIn(slot, id)) iterator.remove();
+        }
+    }
+
+    /**
+     * Test if a name has places in a segment.
+     * @param slot The slot of the name.
+     * @param id The ID of the segment.
+     * @return True if the name has places in the segment; false otherwise.
+     */
+    private boolean hasPlacesIn(int slot, int id) {
+        return Arrays.binarySearch(nameSegments, nameSegmentOffsets[slot], nameSegmentOffsets[slot + 1], id) >= 0;
+    }
+
+    /**
+     * Find the countries with a GeoNames ID or a name.
+     * @param country The GeoNames ID or the name.
+     * @return The countries.
+     */
+    private List<Place> findCountries(String country) {
+        List<Place> countries = new ArrayList<Place>();
+        int geoID = -1;
+
+        try {
+            geoID = Integer.parseInt(country.trim());
+        } catch (NumberFormatException e) {
+            int slot = names.get(normalizeName(country));
+            SortedSet<Place> places = slot < 0 ? null : header.postings(slot);
+
+            if (places != null) {
+                for (Place place : places) if (place.numAncestors() == SEGMENT_DEPTH) countries.add(place);
+            }
+
+            return countries;
+        }
+
+        for (Place place : topPlaces) {
+            if (place.getGeoID() == geoID && place.numAncestors() == SEGMENT_DEPTH) countries.add(place);
+        }
+
+        return countries;
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) throw new IOException("unexpected end of file");
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Encode the places of a segment and the places of each name in the segment, with the code of the variant rule
+     * that derived the name for the place or -1 for an original name. A place is referred to by its position in the
+     * segment, or by its position in the header as a negative number.
+     * @param index The place index with the feature codes.
+     * @param places The places of the segment, parents first.
+     * @param postings The places of each name slot in the segment.
+     * @param refs The reference of each place.
+     * @return The encoded segment.
+     * @throws IOException
+     */
+    private static byte[] segmentBytes(PlaceIndex index, List<Place> places, Map<Integer, List<Place>> postings,
+                                       Map<Place, Integer> refs) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(places.size());
+
+        for (Place place : places) {
+            Place parent = place.getParent();
+            out.writeInt(place.getGeoID());
+            out.writeDouble(place.getLatitude());
+            out.writeDouble(place.getLongitude());
+            out.writeLong(place.getPopulation());
+            out.writeInt(index.featureCode(place.getFeature()));
+            out.writeInt(parent == null ? NO_PARENT : refs.get(parent));
+            out.writeInt(place.getSubtreeStart());
+            out.writeInt(place.getSubtreeEnd());
+        }
+
+        out.writeInt(postings.size());
+
+        for (Map.Entry<Integer, List<Place>> entry : postings.entrySet()) {
+            Map<Place, Integer> codes = index.variantCodes(entry.getKey());
+            out.writeInt(entry.getKey());
+            out.writeInt(entry.getValue().size());
+
+            for (Place place : entry.getValue()) {
+                Integer code = codes == null ? null : codes.get(place);
+                out.writeInt(refs.get(place));
+                out.writeInt(code == null ? -1 : code);
+            }
+        }
+
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decode the places down to the countries. They refer to their parents by negative positions.
+     * @param buffer The encoded places.
+     * @return The places.
+     */
+    private Place[] readTopPlaces(ByteBuffer buffer) {
+        Place[] places = new Place[buffer.getInt()];
+
+        for (int i = 0; i < places.length; i++) {
+            places[i] = readPlace(buffer, places, places);
+        }
+
+        return places;
+    }
+
+    /**
+     * Decode a segment.
+     * @param buffer The encoded segment.
+     * @param topPlaces The places down to the countries.
+     * @return The segment.
+     */
+    private Segment readSegment(ByteBuffer buffer, Place[] topPlaces) {
+        Place[] places = new Place[buffer.getInt()];
+        for (int i = 0; i < places.length; i++) places[i] = readPlace(buffer, places, topPlaces);
+        int numNames = buffer.getInt();
+
+        // count the places of all names first, so that they fit in one array
+        int start = buffer.position();
+        int numPostings = 0;
+
+        for (int i = 0; i < numNames; i++) {
+            buffer.getInt();
+            int count = buffer.getInt();
+            buffer.position(buffer.position() + count * 8);
+            numPostings += count;
+        }
+
+        buffer.position(start);
+        Segment segment = new Segment(numNames, numPostings);
+        int offset = 0;
+
+        for (int i = 0; i < numNames; i++) {
+            segment.slots[i] = buffer.getInt();
+            int count = buffer.getInt();
+            segment.offsets[i] = offset;
+
+            for (int j = 0; j < count; j++) {
+                Place place = place(buffer.getInt(), places, topPlaces);
+                int code = buffer.getInt();
+                segment.places[offset++] = place;
+
+                if (code >= 0) {
+                    if (segment.variants[i] == null) segment.variants[i] = new HashMap<Place, Integer>();
+                    segment.variants[i].put(place, code);
+                }
+            }
+
+            // the places were written in order, but the order does not depend on it
+            Arrays.sort(segment.places, segment.offsets[i], offset);
+        }
+
+        segment.offsets[numNames] = offset;
+        return segment;
+    }
+
+    private Place readPlace(ByteBuffer buffer, Place[] places, Place[] topPlaces) {
+        int geoID = buffer.getInt();
+        double latitude = buffer.getDouble();
+        double longitude = buffer.getDouble();
+        long population = buffer.getLong();
+        int featureCode = buffer.getInt();
+        int parentRef = buffer.getInt();
+        Place parent = parentRef == NO_PARENT ? null : place(parentRef, places, topPlaces);
+        Place place = new Place(geoID, latitude, longitude, population, feature(featureCode), parent);
+        place.setFeatureCode(featureCode);
+        place.setSubtree(numbering, buffer.getInt(), buffer.getInt());
+        return place;
+    }
+
+    private static Place place(int ref, Place[] places, Place[] topPlaces) {
+        return ref < 0 ? topPlaces[-ref - 1] : places[ref];
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) array[i] = list.get(i);
+        return array;
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        throw new NotSerializableException("segmented index cannot be serialized, write it with SegmentedIndex.write");
+    }
+
+    /**
+     * The places of each name in a segment and the variant rules of the places that have the name as a variant, by
+     * name slot. The places of all names are in one array, with the offset of the places of each name, and are
+     * partitioned for the stop-features on first lookup of allowed places.
+     */
+    private static class Segment {
+        private final int[] slots;
+        private final int[] offsets;
+        private final Place[] places;
+        private final Map<Place, Integer>[] variants;
+        private volatile Partition partition;
+
+        @SuppressWarnings("unchecked")
+        private Segment(int numNames, int numPostings) {
+            slots = new int[numNames];
+            offsets = new int[numNames + 1];
+            places = new Place[numPostings];
+            variants = new Map[numNames];
+        }
+
+        /**
+         * Get the places of a name in this segment.
+         * @param slot The slot of the name.
+         * @return The places, or null if the segment has no places with this name.
+         */
+        private SortedSet<Place> postings(int slot) {
+            int i = Arrays.binarySearch(slots, slot);
+            return i < 0 ? null : new PostingList(places, offsets[i], offsets[i + 1]);
+        }
+
+        /**
+         * Get the places of a name in this segment without the places that have stop-features.
+         * @param slot The slot of the name.
+         * @param stop The codes of the stop-features.
+         * @param index The index that encoded the features of the places.
+         * @return The places, or null if the segment has no such places with this name.
+         */
+        private SortedSet<Place> allowedPostings(int slot, BitSet stop, PlaceIndex index) {
+            int i = Arrays.binarySearch(slots, slot);
+            if (i < 0) return null;
+            Partition current = Partition.of(partition, places, offsets, stop, index);
+            partition = current;
+            return current.allowed(i);
+        }
+
+        /**
+         * Get the places that have a name in this segment only as a variant.
+         * @param slot The slot of the name.
+         * @return Map from the places to the codes of the rules that derived the name, or null if there are none.
+         */
+        private Map<Place, Integer> variantCodes(int slot) {
+            int i = Arrays.binarySearch(slots, slot);
+            return i < 0 ? null : variants[i];
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.ontotext.ehri.georecon.variant;
+
+import com.ontotext.ehri.georecon.place.Place;
+
+import java.text.Normalizer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Variant rule that replaces sequences of characters, longest first. A sequence that starts with ^ matches only at the
+ * start of a word. Names are composed (NFC) and lowercased before they are transliterated, so the sequences should be
+ * in lowercase and composed form. The rule can be limited to the places in some countries.
+ */
+public class Transliterator implements VariantRule {
+
+    // marks a sequence that matches only at the start of a word
+    public static final String WORD_START = "^";
+
+    private final String name;
+    private final Map<String, String> mappings = new HashMap<String, String>();
+    private final Set<Integer> countries = new HashSet<Integer>();
+    private int maxLength = 0;
+
+    /**
+     * Construct a transliterator without mappings.
+     * @param name The name of the rule.
+     */
+    public Transliterator(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Replace a sequence of characters.
+     * @param from The sequence, which may start with ^.
+     * @param to The replacement.
+     */
+    public void map(String from, String to) {
+        if (from.isEmpty() || from.equals(WORD_START)) throw new IllegalArgumentException("empty sequence");
+        mappings.put(from, to);
+        maxLength = Math.max(maxLength, from.startsWith(WORD_START) ? from.length() - 1 : from.length());
+    }
+
+    /**
+     * Limit the rule to the places in a country.
+     * @param geoID The GeoNames ID of the country.
+     */
+    public void limitTo(int geoID) {
+        countries.add(geoID);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String apply(Place place, String name) {
+
+        // check if the place is in one of the countries
+        if (! countries.isEmpty()) {
+            Place pointer = place;
+            while (pointer != null && ! countries.contains(pointer.getGeoID())) pointer = pointer.getParent();
+            if (pointer == null) return null;
+        }
+
+        // compare with the composed and lowercased name, so that names without sequences to replace have no variant
+        String folded = fold(name);
+        String result = replace(folded);
+        return result.equals(folded) ? null : result;
+    }
+
+    /**
+     * Transliterate a string.
+     * @param text The string.
+     * @return The composed and lowercased string with all sequences replaced.
+     */
+    public String transliterate(String text) {
+        return replace(fold(text));
+    }
+
+    /**
+     * Compose and lowercase a string, as the sequences are matched in this form.
+     * @param text The string.
+     * @return The composed and lowercased string.
+     */
+    private static String fold(String text) {
+        return Normalizer.normalize(text, Normalizer.Form.NFC).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Replace the sequences in a composed and lowercased string.
+     * @param text The string.
+     * @return The string with all sequences replaced.
+     */
+    private String replace(String text) {
+        StringBuilder result = new StringBuilder(text.length() + 8);
+        int i = 0;
+
+        while (i < text.length()) {
+            boolean wordStart = i == 0 || ! Character.isLetter(text.charAt(i - 1));
+            String replacement = null;
+            int length = Math.min(maxLength, text.length() - i);
+
+            // find the longest sequence at this position
+            while (length > 0) {
+                String sequence = text.substring(i, i + length);
+                if (wordStart) replacement = mappings.get(WORD_START + sequence);
+                if (replacement == null) replacement = mappings.get(sequence);
+                if (replacement != null) break;
+                length--;
+            }
+
+            if (replacement == null) {
+                result.append(text.charAt(i++));
+            } else {
+                result.append(replacement);
+                i += length;
+            }
+        }
+
+        return result.toString();
+    }
+}
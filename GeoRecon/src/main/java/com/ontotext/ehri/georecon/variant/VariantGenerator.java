@@ -0,0 +1,158 @@
+package com.ontotext.ehri.georecon.variant;
+
+import com.ontotext.ehri.georecon.place.Place;
+import com.ontotext.ehri.georecon.place.PlaceIndex;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Generates spelling variants of the names of places with a list of rules. Each rule is applied to the names of the
+ * place and to the variants of the rules before it, so rules can be chained, e.g. a transliteration followed by
+ * diacritic folding. Variants are deduplicated by their normalized form, and variants that normalize to an original
+ * name are dropped.
+ *
+ * Transliterators are loaded from a rule file. Each line of the file is empty, a comment starting with # or one of:
+ *
+ *   map RULE = FROM > TO | FROM > TO | ...      the rule replaces sequences of characters (see Transliterator)
+ *   countries RULE = ID | ID | ...              the rule only applies to places in countries with these GeoNames IDs
+ *
+ * Rules are applied in the order in which they first appear in the file.
+ */
+public class VariantGenerator {
+    private static final Pattern RULE = Pattern.compile("^(map|countries)\\s+(\\S+)\\s*=\\s*(.*)$");
+    private static final Pattern ITEM_SPLITTER = Pattern.compile("\\s*\\|\\s*");
+    private static final Pattern MAPPING_SPLITTER = Pattern.compile("\\s*>\\s*");
+
+    private final List<VariantRule> rules = new ArrayList<VariantRule>();
+
+    /**
+     * Load transliterators from a rule file in UTF-8.
+     * @param file The rule file.
+     * @return The generator with the transliterators.
+     * @throws IOException If the file cannot be read.
+     * @throws IllegalArgumentException If a rule is invalid.
+     */
+    public static VariantGenerator load(File file) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) lines.add(line);
+        } finally {
+            reader.close();
+        }
+
+        return parse(lines);
+    }
+
+    /**
+     * Parse transliterators from the lines of a rule file.
+     * @param lines The lines.
+     * @return The generator with the transliterators.
+     * @throws IllegalArgumentException If a rule is invalid.
+     */
+    public static VariantGenerator parse(List<String> lines) {
+        VariantGenerator generator = new VariantGenerator();
+        Map<String, Transliterator> transliterators = new HashMap<String, Transliterator>();
+
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            Matcher matcher = RULE.matcher(line);
+            if (! matcher.matches()) throw new IllegalArgumentException("invalid rule on line " + (i + 1) + ": " + line);
+            String type = matcher.group(1);
+            String name = matcher.group(2);
+            Transliterator transliterator = transliterators.get(name);
+
+            if (transliterator == null) {
+                transliterator = new Transliterator(name);
+                transliterators.put(name, transliterator);
+                generator.add(transliterator);
+            }
+
+            try {
+
+                for (String item : ITEM_SPLITTER.split(matcher.group(3))) {
+
+                    // add country or mapping
+                    if (type.equals("countries")) {
+                        transliterator.limitTo(Integer.parseInt(item));
+                        continue;
+                    }
+
+                    String[] mapping = MAPPING_SPLITTER.split(item, -1);
+                    if (mapping.length != 2) throw new IllegalArgumentException("invalid mapping: " + item);
+                    transliterator.map(mapping[0], mapping[1]);
+                }
+
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("invalid rule on line " + (i + 1) + ": " + e.getMessage(), e);
+            }
+        }
+
+        return generator;
+    }
+
+    /**
+     * Add a rule after the rules added so far.
+     * @param rule The rule.
+     */
+    public void add(VariantRule rule) {
+        rules.add(rule);
+    }
+
+    /**
+     * Get the rules.
+     * @return The rules in the order in which they are applied.
+     */
+    public List<VariantRule> getRules() {
+        return Collections.unmodifiableList(rules);
+    }
+
+    /**
+     * Generate the variants of the names of a place. This does not modify any shared state, so variants can be
+     * generated for several places in parallel.
+     * @param place The place.
+     * @param names The original names of the place.
+     * @return Map from the normalized variants to the names of the rules that derived them, in the order of the rules.
+     */
+    public Map<String, String> variants(Place place, Collection<String> names) {
+        Map<String, String> variants = new LinkedHashMap<String, String>();
+        Set<String> keys = new HashSet<String>();
+        for (String name : names) keys.add(PlaceIndex.normalizeName(name));
+        List<String> inputs = new ArrayList<String>(names);
+
+        for (VariantRule rule : rules) {
+            int numInputs = inputs.size();
+
+            // apply the rule to the names and the variants of the rules before it
+            for (int i = 0; i < numInputs; i++) {
+                String variant = rule.apply(place, inputs.get(i));
+                if (variant == null) continue;
+                String key = PlaceIndex.normalizeName(variant);
+                if (key.isEmpty() || keys.contains(key) || variants.containsKey(key)) continue;
+                variants.put(key, rule.getName());
+                inputs.add(variant);
+            }
+        }
+
+        return variants;
+    }
+}
@@ -0,0 +1,23 @@
+package com.ontotext.ehri.georecon.variant;
+
+import com.ontotext.ehri.georecon.place.Place;
+
+/**
+ * A rule that derives a spelling variant from the name of a place, e.g. a transliteration.
+ */
+public interface VariantRule {
+
+    /**
+     * Get the name of the rule, which the index records for the names it derives.
+     * @return The name of the rule.
+     */
+    String getName();
+
+    /**
+     * Derive a variant from a name of a place.
+     * @param place The place.
+     * @param name The name.
+     * @return The variant, or null if the rule does not apply to the place or the name.
+     */
+    String apply(Place place, String name);
+}
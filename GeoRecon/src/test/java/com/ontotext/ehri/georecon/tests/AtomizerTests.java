@@ -0,0 +1,47 @@
+package com.ontotext.ehri.georecon.tests;
+
+import com.ontotext.ehri.georecon.Atomizer;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class AtomizerTests {
+
+    /**
+     * The expected file was made from the input file by Scripts/atomize.pl with:
+     * perl atomize.pl input.tsv text expected.tsv atoms
+     */
+    @Test
+    public void testGoldenFile() throws IOException, URISyntaxException {
+        File inputFile = new File(AtomizerTests.class.getResource("/atomizer/input.tsv").toURI());
+        File expectedFile = new File(AtomizerTests.class.getResource("/atomizer/expected.tsv").toURI());
+        File outputFile = File.createTempFile("atomizer", ".tsv");
+
+        try {
+            Atomizer.atomizeFile(inputFile, "text", outputFile, "atoms");
+            assertArrayEquals(Files.readAllBytes(expectedFile.toPath()), Files.readAllBytes(outputFile.toPath()));
+        } finally {
+            outputFile.delete();
+        }
+    }
+
+    @Test
+    public void testNested() {
+        assertEquals(Arrays.asList("b", "e", "a c", "d"), Atomizer.atomize("(a (b) c) d [e]"));
+        assertEquals(Arrays.asList("Oswiecim", "Auschwitz"), Atomizer.atomize("4a (Auschwitz (Oswiecim))"));
+    }
+
+    @Test
+    public void testCompound() {
+        assertEquals(Arrays.asList("Germany", "Bavaria", "Munich"), Atomizer.atomize("Germany -- Bavaria -- Munich"));
+        assertEquals(Collections.<String>emptyList(), Atomizer.atomize(""));
+    }
+}
@@ -0,0 +1,123 @@
+package com.ontotext.ehri.georecon.tests;
+
+import com.ontotext.ehri.georecon.ExternalSorter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ExternalSorterTests {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<String> randomLines(int count, long seed) {
+        Random random = new Random(seed);
+        List<String> lines = new ArrayList<String>();
+
+        for (int i = 0; i < count; i++) {
+            StringBuilder line = new StringBuilder();
+            int length = random.nextInt(20);
+            for (int j = 0; j < length; j++) line.append((char) (random.nextBoolean() ? 'a' + random.nextInt(4) : 0x430 + random.nextInt(4)));
+            lines.add(line.toString());
+        }
+
+        return lines;
+    }
+
+    private static List<String> sort(ExternalSorter sorter, List<String> lines) throws IOException {
+        List<String> sorted = new ArrayList<String>();
+
+        try {
+            for (String line : lines) sorter.add(line);
+            for (Iterator<String> iterator = sorter.sorted(); iterator.hasNext(); ) sorted.add(iterator.next());
+        } finally {
+            sorter.close();
+        }
+
+        return sorted;
+    }
+
+    @Test
+    public void testSpilledRuns() throws IOException {
+        List<String> lines = randomLines(50000, 1);
+        ExternalSorter sorter = new ExternalSorter(64 * 1024);
+        for (String line : lines) sorter.add(line);
+        assertTrue(sorter.numRuns() > 1);
+
+        List<String> sorted = new ArrayList<String>();
+        for (Iterator<String> iterator = sorter.sorted(); iterator.hasNext(); ) sorted.add(iterator.next());
+        sorter.close();
+
+        Collections.sort(lines);
+        assertEquals(lines, sorted);
+    }
+
+    @Test
+    public void testInMemory() throws IOException {
+        List<String> lines = randomLines(1000, 2);
+        ExternalSorter sorter = new ExternalSorter(1 << 30);
+        lines.add("");
+        for (String line : lines) sorter.add(line);
+        assertEquals(0, sorter.numRuns());
+        assertEquals(lines.size(), sorter.size());
+
+        List<String> sorted = new ArrayList<String>();
+        for (Iterator<String> iterator = sorter.sorted(); iterator.hasNext(); ) sorted.add(iterator.next());
+        sorter.close();
+
+        Collections.sort(lines);
+        assertEquals(lines, sorted);
+    }
+
+    @Test
+    public void testComparator() throws IOException {
+        List<String> lines = randomLines(20000, 3);
+        Comparator<String> comparator = Collections.reverseOrder();
+        List<String> sorted = sort(new ExternalSorter(comparator, 16 * 1024, null), lines);
+
+        Collections.sort(lines, comparator);
+        assertEquals(lines, sorted);
+    }
+
+    @Test
+    public void testMultiPassMerge() throws IOException {
+        File tempDir = folder.newFolder();
+        List<String> lines = randomLines(20000, 4);
+        ExternalSorter sorter = new ExternalSorter(null, 16 * 1024, tempDir);
+        for (String line : lines) sorter.add(line);
+        assertEquals(2, sorter.maxFanIn());
+        assertTrue(sorter.numRuns() > 4);
+
+        // runs are merged in passes till no more than the maximum fan-in are left
+        List<String> sorted = new ArrayList<String>();
+        Iterator<String> iterator = sorter.sorted();
+        assertTrue(sorter.numRuns() <= sorter.maxFanIn());
+        assertEquals(sorter.numRuns(), tempDir.list().length);
+        while (iterator.hasNext()) sorted.add(iterator.next());
+        sorter.close();
+
+        Collections.sort(lines);
+        assertEquals(lines, sorted);
+        assertEquals(0, tempDir.list().length);
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        ExternalSorter sorter = new ExternalSorter(1024);
+        assertFalse(sorter.sorted().hasNext());
+        sorter.close();
+    }
+}
@@ -0,0 +1,116 @@
+package com.ontotext.ehri.georecon.tests;
+
+import com.ontotext.ehri.georecon.filter.FilterEngine;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FilterEngineTests {
+    private static final File FILTERS_FILE = new File("src/main/resources/filters.rules");
+
+    // the patterns that Reconciler used before the filter engine
+    private static final Pattern ACRO_PATTERN = Pattern.compile("(?!^DDR|USA|USSR$)^[\\d\\p{IsLu}]+$");
+    private static final Pattern PERS_PATTERN = Pattern.compile("(?!.*(Amsterdam|Brabant|Drenthe|Friesland|Gelderland|Groningen|Haarlem|Limburg))" +
+            "^((de|van de|van den|van der|vander|van|von|zur) )?" +
+            "\\p{IsLu}?\\p{IsLl}+, (?!(city|town|village|село|селище)$)" +
+            "(\\p{IsLu}?(\\p{IsLl}+(\\-\\p{IsLu}?\\p{IsLl}+)?|\\.|\\[\\?\\]))" +
+            "( (vom|von dem|von der|von|von und zu|zu|zur|op ten|van|van de|van den|van der|de))?" +
+            "( \\([^\\p{IsL}][^\\)]+\\)|\\s?\\p{IsLu}?\\[.+\\])?$");
+    private static final Pattern JUNK_PATTERN = Pattern.compile("(^Kreis | (Area|Region)$|)");
+
+    // fragments of random strings
+    private static final String[] FRAGMENTS = { "Kreis", "Area", "Region", "Amsterdam", "Limburg", "DDR", "USA", "USSR",
+            "van", "der", "de", "von", "und", "zu", "op ten", "town", "city", "село", "Müller", "Jan", "Anna-Maria", "ł",
+            "X", "1", "9", "A", "b", ",", ", ", " ", ".", "[", "]", "[?]", "(", ")", "(1942)", "-", "\t", "\n", "\u2028" };
+
+    @Test
+    public void testExamples() throws IOException {
+        FilterEngine engine = FilterEngine.load(FILTERS_FILE);
+        FilterEngine.Filter person = engine.filter("person");
+        FilterEngine.Filter acronym = engine.filter("acronym");
+        FilterEngine.Filter junk = engine.filter("junk");
+
+        assertTrue(person.matches("Smith, John"));
+        assertTrue(person.matches("van der Berg, Anna-Maria (1900-1942)"));
+        assertFalse(person.matches("Limburg, Jan"));
+        assertFalse(person.matches("Kyiv, city"));
+        assertTrue(acronym.matches("NSDAP"));
+        assertFalse(acronym.matches("USSR"));
+        assertFalse(acronym.matches("DDR2"));
+        assertEquals("Bautzen", junk.strip("Kreis Bautzen"));
+        assertEquals("Moscow", junk.strip("Moscow Region"));
+        assertEquals("Area", junk.strip("Kreis Area"));
+        assertFalse(engine.filter("unknown").matches("Smith, John"));
+    }
+
+    @Test
+    public void testSameAsRegex() throws IOException {
+        FilterEngine engine = FilterEngine.load(FILTERS_FILE);
+        FilterEngine.Filter person = engine.filter("person");
+        FilterEngine.Filter acronym = engine.filter("acronym");
+        FilterEngine.Filter junk = engine.filter("junk");
+        Random random = new Random(42);
+
+        for (int i = 0; i < 100000; i++) {
+            StringBuilder builder = new StringBuilder();
+            int length = random.nextInt(8);
+            for (int j = 0; j < length; j++) builder.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+            String text = builder.toString();
+
+            assertEquals(text, PERS_PATTERN.matcher(text).matches(), person.matches(text));
+            assertEquals(text, ACRO_PATTERN.matcher(text).matches(), acronym.matches(text));
+
+            // atoms do not end with line terminators, which $ would skip
+            if (! text.endsWith("\n") && ! text.endsWith("\u2028")) {
+                assertEquals(text, JUNK_PATTERN.matcher(text).replaceAll(""), junk.strip(text));
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentMatching() throws Exception {
+        final FilterEngine engine = FilterEngine.load(FILTERS_FILE);
+        final String[] texts = { "Müller, Jan", "Łódź, село", "Kreis Ölsnitz", "ΑΘΗΝΑ", "\uD835\uDC00bc, Anna", "ÉÇ" };
+        final boolean[] expected = new boolean[texts.length];
+        for (int i = 0; i < texts.length; i++) expected[i] = PERS_PATTERN.matcher(texts[i]).matches();
+
+        // threads build the transitions on non-ASCII characters while others read them
+        final FilterEngine.Filter person = engine.filter("person");
+        final AtomicBoolean failed = new AtomicBoolean();
+        Thread[] threads = new Thread[8];
+
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t;
+
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+
+                    for (int i = 0; i < 10000; i++) {
+                        int j = (i + offset) % texts.length;
+                        if (person.matches(texts[j]) != expected[j]) failed.set(true);
+                    }
+                }
+            };
+
+            threads[t].start();
+        }
+
+        for (Thread thread : threads) thread.join();
+        assertFalse(failed.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownList() {
+        FilterEngine.parse(Arrays.asList("match person = {names}"));
+    }
+}
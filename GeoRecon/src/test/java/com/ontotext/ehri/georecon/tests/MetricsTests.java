@@ -0,0 +1,43 @@
+package com.ontotext.ehri.georecon.tests;
+
+import com.ontotext.ehri.georecon.metrics.Histogram;
+import com.ontotext.ehri.georecon.metrics.Metrics;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsTests {
+
+    @Test
+    public void testPercentiles() {
+        Histogram histogram = new Histogram();
+        for (int value = 1; value <= 1000; value++) histogram.record(value);
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000, histogram.getMax());
+        assertEquals(500.5, histogram.getMean(), 1e-9);
+
+        // percentiles are upper bounds of buckets of 12.5% relative width
+        long median = histogram.percentile(0.5);
+        assertTrue(median >= 500 && median <= 500 * 1.125);
+        long p99 = histogram.percentile(0.99);
+        assertTrue(p99 >= 990 && p99 <= 1000);
+        assertEquals(1, histogram.percentile(0.0001));
+        assertEquals(0, new Histogram().percentile(0.5));
+    }
+
+    @Test
+    public void testJson() {
+        Metrics.counter("test.rows").add(3);
+        Metrics.histogram("test.nanos").record(42);
+        assertSame(Metrics.counter("test.rows"), Metrics.counter("test.rows"));
+
+        String json = Metrics.toJson();
+        assertTrue(json.startsWith("{") && json.endsWith("}"));
+        assertTrue(json.contains("\"test.rows\":{\"count\":3,"));
+        assertTrue(json.contains("\"test.nanos\":{\"count\":1,\"mean\":42.0,\"max\":42,\"p50\":42,"));
+        assertTrue(json.contains("\"heap\":{\"used\":"));
+    }
+}
@@ -0,0 +1,99 @@
+package com.ontotext.ehri.georecon.tests;
+
+import com.ontotext.ehri.georecon.place.NameDictionary;
+import com.ontotext.ehri.georecon.place.Place;
+import com.ontotext.ehri.georecon.place.PlaceIndex;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NameDictionaryTests {
+
+    private static List<String> randomNames(int count, long seed) {
+        Random random = new Random(seed);
+        List<String> names = new ArrayList<String>();
+
+        for (int i = 0; i < count; i++) {
+            StringBuilder name = new StringBuilder();
+            int length = 1 + random.nextInt(12);
+            for (int j = 0; j < length; j++) name.append((char) (random.nextBoolean() ? 'a' + random.nextInt(26) : 0x430 + random.nextInt(32)));
+            names.add(name.toString());
+        }
+
+        return names;
+    }
+
+    @Test
+    public void testPerfectHash() {
+        List<String> names = randomNames(100000, 1);
+        Set<String> unique = new HashSet<String>(names);
+        NameDictionary dictionary = new NameDictionary(names);
+        Set<Integer> slots = new HashSet<Integer>();
+        assertEquals(unique.size(), dictionary.size());
+
+        // every name has its own slot
+        for (String name : unique) {
+            int slot = dictionary.get(name);
+            assertTrue(slot >= 0 && slot < dictionary.size());
+            assertEquals(name, dictionary.name(slot));
+            slots.add(slot);
+        }
+
+        assertEquals(unique.size(), slots.size());
+
+        // unknown names are rejected
+        for (String name : randomNames(10000, 2)) {
+            if (! unique.contains(name)) assertEquals(-1, dictionary.get(name));
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        NameDictionary dictionary = new NameDictionary(Collections.<String>emptyList());
+        assertEquals(0, dictionary.size());
+        assertEquals(-1, dictionary.get("berlin"));
+    }
+
+    @Test
+    public void testCompactIndex() throws IOException, ClassNotFoundException {
+        Place germany = new Place(2921044, 51.5, 10.5, 82927922, "A.PCLI", Place.ROOT);
+        Place berlin = new Place(2950159, 52.52437, 13.41053, 3426354, "P.PPLC", germany);
+        PlaceIndex index = new PlaceIndex();
+        index.add(germany, "Germany");
+        index.add(germany, "Deutschland");
+        index.add(berlin, "Berlin");
+        index.compact();
+
+        // serialize and deserialize the compact index
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream output = new ObjectOutputStream(bytes);
+        output.writeObject(index);
+        output.close();
+        index = (PlaceIndex) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+        assertEquals(germany, index.getOne("deutschland"));
+        assertEquals(berlin, index.getOne("BERLIN"));
+        assertNull(index.get("Paris"));
+
+        // places can still be added
+        index.add(berlin, "Berlín");
+        assertEquals(berlin, index.getOne("Berlin"));
+        assertEquals(berlin, index.getOne("Berlín"));
+        index.compact();
+        assertEquals(germany, index.getOne("Germany"));
+    }
+}
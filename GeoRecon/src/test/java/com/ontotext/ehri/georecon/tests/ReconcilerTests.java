@@ -0,0 +1,197 @@
+package com.ontotext.ehri.georecon.tests;
+
+import com.ontotext.ehri.georecon.Candidate;
+import com.ontotext.ehri.georecon.Reconciler;
+import com.ontotext.ehri.georecon.Tools;
+import com.ontotext.ehri.georecon.place.Place;
+import com.ontotext.ehri.georecon.place.PlaceIndex;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ReconcilerTests {
+    private static final Place GERMANY = new Place(2921044, 51.5, 10.5, 82927922, "A.PCLI", Place.ROOT);
+    private static final Place USA = new Place(6252001, 39.76, -98.5, 310232863, "A.PCLI", Place.ROOT);
+    private static final Place BERLIN = new Place(2950159, 52.52437, 13.41053, 3426354, "P.PPLC", GERMANY);
+    private static final Place BERLIN_USA = new Place(4500771, 39.79, -74.93, 7588, "P.PPL", USA);
+    private static final Place BERLIN_HILL = new Place(5069013, 41.99, -100.2, 0, "T.HLL", USA);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static PlaceIndex index() {
+        return Reconciler.excludeStopFeatures(allPlacesIndex());
+    }
+
+    private static PlaceIndex allPlacesIndex() {
+        PlaceIndex index = new PlaceIndex();
+        index.add(GERMANY, "Germany");
+        index.add(USA, "USA");
+        index.add(BERLIN, "Berlin");
+        index.add(BERLIN_USA, "Berlin");
+        index.add(BERLIN_HILL, "Berlin");
+        return index;
+    }
+
+    @Test
+    public void testRanking() {
+        PlaceIndex index = index();
+        String[] atoms = { "Berlin", "USA" };
+        List<List<Candidate>> candidates = Reconciler.rankCandidates(index, atoms, 2);
+
+        // the American Berlin wins by ancestor evidence despite the smaller population
+        assertEquals(2, candidates.get(0).size());
+        assertEquals(BERLIN_USA, candidates.get(0).get(0).getPlace());
+        assertEquals(1, candidates.get(0).get(0).getNumAncestors());
+        assertEquals(BERLIN, candidates.get(0).get(1).getPlace());
+        assertTrue(candidates.get(0).get(0).getConfidence() > candidates.get(0).get(1).getConfidence());
+        assertEquals(Reconciler.reconcile(index, atoms, false), Reconciler.bestPlaces(candidates, false));
+    }
+
+    @Test
+    public void testConfidence() {
+        PlaceIndex index = index();
+        List<List<Candidate>> ambiguous = Reconciler.rankCandidates(index, new String[] { "Berlin" }, 3);
+        List<List<Candidate>> supported = Reconciler.rankCandidates(index, new String[] { "Berlin", "Germany" }, 3);
+
+        for (List<Candidate> atomCandidates : supported) {
+            for (Candidate candidate : atomCandidates) {
+                assertTrue(candidate.getConfidence() >= 0 && candidate.getConfidence() <= 1);
+            }
+        }
+
+        // the hill has a stop-feature
+        assertEquals(BERLIN, ambiguous.get(0).get(0).getPlace());
+        assertEquals(2, ambiguous.get(0).size());
+        assertTrue(supported.get(0).get(0).getConfidence() > ambiguous.get(0).get(0).getConfidence());
+    }
+
+    @Test
+    public void testStopFeatures() {
+        PlaceIndex index = allPlacesIndex();
+        assertEquals(3, index.get("Berlin").size());
+        assertEquals(3, index.getAllowed("Berlin").size());
+
+        // places with stop-features are left out once the stop-features are set
+        Reconciler.excludeStopFeatures(index);
+        assertEquals(2, index.getAllowed("Berlin").size());
+        assertEquals(index.getAllowed("Berlin"), index.allowed(index.get("Berlin")));
+        assertEquals(Collections.singleton(BERLIN_USA), index.getAllowed("Berlin", USA));
+        assertFalse(index.getAllowed("Berlin").contains(BERLIN_HILL));
+        assertSame(index.get("Germany"), index.getAllowed("Germany"));
+        assertTrue(index.featureBits(Collections.singleton("T.HLL")).get(BERLIN_HILL.getFeatureCode()));
+        assertEquals("T.HLL", index.feature(BERLIN_HILL.getFeatureCode()));
+
+        // a compact index looks up the places without stop-features of each name
+        index.compact();
+        assertEquals(new TreeSet<Place>(Arrays.asList(BERLIN, BERLIN_USA)), index.getAllowed("Berlin"));
+        assertEquals(Collections.singleton(GERMANY), index.getAllowed("Germany"));
+        assertNull(index.getAllowed("Atlantis"));
+    }
+
+    @Test
+    public void testScopedLookup() {
+        PlaceIndex index = index();
+        assertEquals(new TreeSet<Place>(Arrays.asList(BERLIN_USA, BERLIN_HILL)), index.get("Berlin", USA));
+        assertEquals(Collections.singleton(BERLIN), index.get("Berlin", GERMANY));
+        assertEquals(Collections.singleton(GERMANY), index.get("Germany", GERMANY));
+        assertNull(index.get("Germany", USA));
+        assertTrue(BERLIN.isDescendantOf(GERMANY));
+        assertFalse(GERMANY.isDescendantOf(GERMANY));
+        assertFalse(BERLIN_USA.isDescendantOf(GERMANY));
+    }
+
+    @Test
+    public void testSharedPlaces() {
+        PlaceIndex index = index();
+        assertEquals(Collections.singleton(BERLIN), index.get("Berlin", GERMANY));
+
+        // another index numbers the same places and encodes their features with other codes
+        PlaceIndex other = new PlaceIndex();
+        other.add(BERLIN_HILL, "Hill");
+        other.add(BERLIN, "Berlin");
+        other.add(USA, "USA");
+        other.numberPlaces();
+
+        // the first index still scopes and filters its places by its own numbering and codes
+        assertEquals(Collections.singleton(BERLIN), index.get("Berlin", GERMANY));
+        assertEquals(new TreeSet<Place>(Arrays.asList(BERLIN_USA, BERLIN_HILL)), index.get("Berlin", USA));
+        assertEquals(2, index.getAllowed("Berlin").size());
+        assertFalse(index.getAllowed("Berlin").contains(BERLIN_HILL));
+        assertTrue(BERLIN.isDescendantOf(GERMANY));
+        assertFalse(BERLIN_USA.isDescendantOf(GERMANY));
+    }
+
+    @Test
+    public void testScopedRanking() {
+        PlaceIndex index = index();
+        String[] atoms = { "USA", "Berlin" };
+        List<List<Candidate>> candidates = Reconciler.rankCandidates(index, atoms, 3, true);
+
+        // only the American Berlin is in the scope of the USA
+        assertEquals(1, candidates.get(1).size());
+        assertEquals(BERLIN_USA, candidates.get(1).get(0).getPlace());
+        assertEquals(Reconciler.reconcile(index, atoms, false), Reconciler.bestPlaces(candidates, false));
+    }
+
+    @Test
+    public void testUnscoredRanking() {
+        PlaceIndex index = index();
+        String[] atoms = { "Berlin", "USA" };
+        List<List<Candidate>> scored = Reconciler.rankCandidates(index, atoms, 3, false, true);
+        List<List<Candidate>> unscored = Reconciler.rankCandidates(index, atoms, 3, false, false);
+
+        // the ranking is the same, only without confidence
+        for (int i = 0; i < atoms.length; i++) {
+            assertEquals(scored.get(i).size(), unscored.get(i).size());
+
+            for (int j = 0; j < scored.get(i).size(); j++) {
+                assertEquals(scored.get(i).get(j).getPlace(), unscored.get(i).get(j).getPlace());
+                assertTrue(Double.isNaN(unscored.get(i).get(j).getConfidence()));
+            }
+        }
+    }
+
+    @Test
+    public void testReview() throws IOException {
+        File indexFile = folder.newFile();
+        File inputFile = folder.newFile();
+        File outputFile = folder.newFile();
+        File reviewFile = folder.newFile();
+        Tools.serializeIndex(allPlacesIndex(), indexFile);
+        Files.write(inputFile.toPath(), Arrays.asList("atoms\toriginal\ttype", "Berlin\tBerlin\tplaceAccess",
+                "Atlantis\tAtlantis\tplaceAccess", "Atlantis\tAtlantis\tgenreAccess"), StandardCharsets.UTF_8);
+        Reconciler.main(new String[] { "--review", reviewFile.getPath(), "0", indexFile.getPath(), inputFile.getPath(),
+                "atoms", "original", "type", outputFile.getPath(), "places" });
+
+        // no confidence is below zero, but the row of allowed type without any candidate needs review
+        List<String> review = Files.readAllLines(reviewFile.toPath(), StandardCharsets.UTF_8);
+        assertEquals(2, review.size());
+        assertTrue(review.get(1).endsWith("Atlantis\tAtlantis\tplaceAccess"));
+        assertEquals(4, Files.readAllLines(outputFile.toPath(), StandardCharsets.UTF_8).size());
+    }
+
+    @Test
+    public void testNoMatches() {
+        List<List<Candidate>> candidates = Reconciler.rankCandidates(index(), new String[] { "Atlantis", null }, 3);
+        assertEquals(2, candidates.size());
+        assertTrue(candidates.get(0).isEmpty());
+        assertNull(Reconciler.bestPlaces(candidates, false));
+        assertTrue(Double.isNaN(Reconciler.confidence(candidates)));
+    }
+}
@@ -0,0 +1,179 @@
+package com.ontotext.ehri.georecon.tests;
+
+import com.ontotext.ehri.georecon.Tools;
+import com.ontotext.ehri.georecon.place.Place;
+import com.ontotext.ehri.georecon.place.PlaceIndex;
+import com.ontotext.ehri.georecon.place.SegmentedIndex;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.SortedSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentedIndexTests {
+    private static final String[] NAMES = { "Europe", "Asia", "Germany", "Deutschland", "Bavaria", "Munich", "Berlin",
+            "Israel", "Jerusalem", "France", "Paris", "United States", "Paris Texas", "Nowhere" };
+
+    private File file;
+    private PlaceIndex index;
+
+    @Before
+    public void setUp() throws IOException {
+        Place europe = new Place(6255148, 48.69096, 9.14062, 0, "L.CONT", Place.ROOT);
+        Place asia = new Place(6255147, 29.84064, 89.29688, 0, "L.CONT", Place.ROOT);
+        Place america = new Place(6255149, 46.07323, -100.54688, 0, "L.CONT", Place.ROOT);
+        Place germany = new Place(2921044, 51.5, 10.5, 82927922, "A.PCLI", europe);
+        Place bavaria = new Place(2951839, 49.0, 11.5, 12520000, "A.ADM1", germany);
+        Place munich = new Place(2867714, 48.13743, 11.57549, 1260391, "P.PPLA", bavaria);
+        Place berlin = new Place(2950159, 52.52437, 13.41053, 3426354, "P.PPLC", germany);
+        Place israel = new Place(294640, 31.5, 34.75, 7353985, "A.PCLI", asia);
+        Place jerusalem = new Place(281184, 31.76904, 35.21633, 714000, "P.PPLC", israel);
+        Place france = new Place(3017382, 46.0, 2.0, 64768389, "A.PCLI", europe);
+        Place paris = new Place(2988507, 48.85341, 2.3488, 2138551, "P.PPLC", france);
+        Place usa = new Place(6252001, 39.76, -98.5, 310232863, "A.PCLI", america);
+        Place parisTexas = new Place(4717560, 33.66094, -95.55551, 25171, "P.PPL", usa);
+
+        index = new PlaceIndex();
+        index.add(europe, "Europe");
+        index.add(asia, "Asia");
+        index.add(germany, "Germany");
+        index.add(germany, "Deutschland");
+        index.add(bavaria, "Bavaria");
+        index.add(munich, "Munich");
+        index.add(berlin, "Berlin");
+        index.add(israel, "Israel");
+        index.add(jerusalem, "Jerusalem");
+        index.add(france, "France");
+        index.add(paris, "Paris");
+        index.add(usa, "United States");
+        index.add(parisTexas, "Paris");
+        index.add(parisTexas, "Paris Texas");
+        index.add(munich, "Muenchen", "german");
+
+        file = File.createTempFile("georecon-index", ".seg");
+        SegmentedIndex.write(index, file);
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testLookups() throws IOException {
+        SegmentedIndex segmented = (SegmentedIndex) Tools.deserializeIndex(file);
+        assertEquals(4, segmented.numSegments());
+        assertEquals(0, segmented.numLoadedSegments());
+
+        // the same places are found in the same order
+        for (String name : NAMES) {
+            SortedSet<Place> expected = index.get(name);
+            SortedSet<Place> actual = segmented.get(name);
+            if (expected == null) assertNull(actual);
+            else assertEquals(Arrays.asList(expected.toArray()), Arrays.asList(actual.toArray()));
+        }
+
+        // places keep their parents and subtree ranges
+        Place munich = segmented.getOne("munich");
+        assertEquals("A.ADM1", munich.getParent().getFeature());
+        assertTrue(munich.isDescendantOf(segmented.getOne("germany")));
+        assertEquals(segmented.getOne("munich"), segmented.get("munich", segmented.getOne("deutschland")).first());
+        assertEquals(1, segmented.get("paris", segmented.getOne("france")).size());
+        assertNull(segmented.get("paris", segmented.getOne("germany")));
+
+        // variant rules are kept
+        assertEquals(Collections.singletonMap(munich, "german"), segmented.getVariantRules("Muenchen"));
+        assertTrue(segmented.getVariantRules("Munich").isEmpty());
+        segmented.close();
+    }
+
+    @Test
+    public void testBoundedCache() throws IOException {
+        SegmentedIndex segmented = new SegmentedIndex(file, 1);
+
+        // looking up places in different countries drops segments
+        for (String name : NAMES) {
+            SortedSet<Place> expected = index.get(name);
+            SortedSet<Place> actual = segmented.getAllowed(name);
+            assertEquals(expected == null ? 0 : expected.size(), actual == null ? 0 : actual.size());
+            assertTrue(segmented.numLoadedSegments() <= 1);
+        }
+
+        segmented.close();
+    }
+
+    @Test
+    public void testStopFeatures() throws IOException {
+        SegmentedIndex segmented = new SegmentedIndex(file, 1);
+        Set<String> capitals = Collections.singleton("P.PPLC");
+        index.setStopFeatures(capitals);
+        segmented.setStopFeatures(capitals);
+
+        // places with stop-features are left out of names in one segment and in several
+        for (String name : NAMES) assertEquals(name, index.getAllowed(name), segmented.getAllowed(name));
+        assertEquals(1, segmented.getAllowed("Paris").size());
+        assertEquals(2, segmented.get("Paris").size());
+        assertNull(segmented.getAllowed("Berlin"));
+
+        // the places are partitioned again for other stop-features
+        segmented.setStopFeatures(Collections.<String>emptySet());
+        assertEquals(2, segmented.getAllowed("Paris").size());
+        segmented.close();
+    }
+
+    @Test
+    public void testEviction() throws IOException {
+        SegmentedIndex segmented = new SegmentedIndex(file, 3);
+        segmented.get("munich");
+        SortedSet<Place> paris = segmented.get("paris");
+        assertEquals(2, paris.size());
+
+        // dropping the segment of Germany keeps the places of Paris merged from France and the USA
+        segmented.get("jerusalem");
+        assertEquals(3, segmented.numLoadedSegments());
+        assertSame(paris, segmented.get("paris"));
+
+        // dropping the segment of France forgets them
+        segmented.get("berlin");
+        assertNotSame(paris, segmented.get("paris"));
+        assertEquals(paris, segmented.get("paris"));
+        segmented.close();
+    }
+
+    @Test
+    public void testRestrict() throws IOException {
+        SegmentedIndex segmented = new SegmentedIndex(file);
+        segmented.restrict(Arrays.asList("Germany", "294640"));
+        assertEquals(2, segmented.numLoadedSegments());
+
+        // places in other countries are not found, but the countries are
+        assertEquals(1, segmented.get("munich").size());
+        assertEquals(1, segmented.get("jerusalem").size());
+        assertNull(segmented.get("paris"));
+        assertEquals(1, segmented.get("france").size());
+        assertEquals(2, segmented.numLoadedSegments());
+        segmented.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownCountry() throws IOException {
+        SegmentedIndex segmented = new SegmentedIndex(file);
+
+        try {
+            segmented.restrict(Collections.singletonList("Atlantis"));
+        } finally {
+            segmented.close();
+        }
+    }
+}
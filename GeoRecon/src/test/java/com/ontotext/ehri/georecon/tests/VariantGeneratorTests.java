@@ -0,0 +1,119 @@
+package com.ontotext.ehri.georecon.tests;
+
+import com.ontotext.ehri.georecon.Candidate;
+import com.ontotext.ehri.georecon.Reconciler;
+import com.ontotext.ehri.georecon.place.Place;
+import com.ontotext.ehri.georecon.place.PlaceIndex;
+import com.ontotext.ehri.georecon.variant.VariantGenerator;
+import com.ontotext.ehri.georecon.variant.VariantRule;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class VariantGeneratorTests {
+    private static final File VARIANTS_FILE = new File("src/main/resources/variants.rules");
+
+    private static final Place EUROPE = new Place(6255148, 48.69096, 9.14062, 0, "L.CONT", Place.ROOT);
+    private static final Place ASIA = new Place(6255147, 29.84064, 89.29688, 0, "L.CONT", Place.ROOT);
+    private static final Place GERMANY = new Place(2921044, 51.5, 10.5, 82927922, "A.PCLI", EUROPE);
+    private static final Place UKRAINE = new Place(690791, 49.0, 32.0, 45415596, "A.PCLI", EUROPE);
+    private static final Place POLAND = new Place(798544, 52.0, 20.0, 38500000, "A.PCLI", EUROPE);
+    private static final Place LITHUANIA = new Place(597427, 56.0, 24.0, 2944459, "A.PCLI", EUROPE);
+    private static final Place TURKEY = new Place(298795, 39.0, 35.0, 77804122, "A.PCLI", ASIA);
+
+    @Test
+    public void testTransliterations() throws IOException {
+        VariantGenerator generator = VariantGenerator.load(VARIANTS_FILE);
+        Place zhytomyr = new Place(686967, 50.25465, 28.65867, 282192, "P.PPLA", UKRAINE);
+        Map<String, String> variants = generator.variants(zhytomyr, Arrays.asList("Zhytomyr", "Житомир"));
+
+        assertEquals("cyrillic-german", variants.get("schitomir"));
+        assertEquals("cyrillic-polish", variants.get("zitomir"));
+        assertEquals("cyrillic-english", variants.get("zhitomir"));
+        assertFalse(variants.containsKey("zhytomyr"));
+
+        // variants are deduplicated across schemes
+        Place poltava = new Place(696643, 49.59373, 34.54073, 318000, "P.PPLA", UKRAINE);
+        variants = generator.variants(poltava, Collections.singletonList("Полтава"));
+        assertEquals("cyrillic-german", variants.get("poltawa"));
+        assertEquals("cyrillic-polish", variants.get("połtawa"));
+        assertEquals("cyrillic-english", variants.get("poltava"));
+        assertEquals(3, variants.size());
+
+        // Yiddish names
+        Place vilnius = new Place(593116, 54.68916, 25.2798, 542366, "P.PPLC", LITHUANIA);
+        variants = generator.variants(vilnius, Collections.singletonList("װילנע"));
+        assertEquals("yiddish-yivo", variants.get("vilne"));
+        variants = generator.variants(vilnius, Collections.singletonList("ווילנע"));
+        assertEquals("yiddish-yivo", variants.get("vilne"));
+    }
+
+    @Test
+    public void testFoldingAndUmlauts() throws IOException {
+        VariantGenerator generator = VariantGenerator.load(VARIANTS_FILE);
+        Place lodz = new Place(3093133, 51.75, 19.46667, 768755, "P.PPLA", POLAND);
+        assertEquals(Collections.singletonMap("lodz", "polish-czech"),
+                generator.variants(lodz, Collections.singletonList("Łódź")));
+
+        // umlauts are expanded only for places in German-speaking countries
+        Place munich = new Place(2867714, 48.13743, 11.57549, 1260391, "P.PPLA", GERMANY);
+        Map<String, String> variants = generator.variants(munich, Arrays.asList("München", "Munich"));
+        assertEquals(Collections.singletonMap("muenchen", "german"), variants);
+        Place golcuk = new Place(746881, 40.71722, 29.81972, 0, "P.PPL", TURKEY);
+        assertTrue(generator.variants(golcuk, Collections.singletonList("Gölcük")).isEmpty());
+
+        // variants that normalize to an original name are dropped
+        assertTrue(generator.variants(munich, Arrays.asList("Straße", "Strasse")).isEmpty());
+
+        // names without sequences to replace have no variant, whatever their case
+        for (VariantRule rule : generator.getRules()) assertNull(rule.getName(), rule.apply(munich, "Berlin"));
+    }
+
+    @Test
+    public void testVariantRulesInIndex() {
+        Place munich = new Place(2867714, 48.13743, 11.57549, 1260391, "P.PPLA", GERMANY);
+        Place muenchen = new Place(2867713, 48.1, 11.5, 0, "P.PPL", GERMANY);
+        PlaceIndex index = new PlaceIndex();
+        index.add(munich, "München");
+        index.add(munich, "Muenchen", "german");
+        index.add(muenchen, "Muenchen");
+
+        // a name that is original for the place is not a variant
+        index.add(munich, "Munich");
+        index.add(munich, "Munich", "german");
+
+        assertEquals(2, index.get("muenchen").size());
+        assertEquals(Collections.singletonMap(munich, "german"), index.getVariantRules("Muenchen"));
+        assertTrue(index.getVariantRules("Munich").isEmpty());
+
+        // rules are kept when the index is compacted
+        index.compact();
+        assertEquals("german", index.getVariantRules("muenchen").get(munich));
+        assertNull(index.getVariantRules("muenchen").get(muenchen));
+        assertEquals(Collections.singleton(munich), index.getVariantPlaces("Muenchen"));
+
+        // rankings without scores prefer the original name over the variant without the names of the rules
+        String[] atoms = { "Muenchen" };
+        Candidate scored = Reconciler.rankCandidates(index, atoms, 2, false, true).get(0).get(0);
+        List<Candidate> unscored = Reconciler.rankCandidates(index, atoms, 2, false, false).get(0);
+        assertEquals(muenchen, scored.getPlace());
+        assertEquals(muenchen, unscored.get(0).getPlace());
+        assertTrue(unscored.get(1).isDerived());
+        assertNull(unscored.get(1).getVariantRule());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRule() {
+        VariantGenerator.parse(Collections.singletonList("map broken = а > a > b"));
+    }
+}
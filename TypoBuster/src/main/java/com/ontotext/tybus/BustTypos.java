@@ -0,0 +1,352 @@
+package com.ontotext.tybus;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Correct typos with given model. Model is loaded from file and used to build an index. The index is used to correct
+ * the typos in the input file and the result is written to the output file. By default, each token is assumed to be on
+ * a new line. In text mode, the input is running text which is tokenized and corrected on a pool of worker threads,
+ * keeping whitespace and punctuation as they are.
+ *
+ * If an n-gram model was learned together with the model, typos with several candidate corrections are corrected
+ * according to the tokens around them.
+ */
+public class BustTypos {
+
+    // option which switches to text mode
+    private static final String OPTION_TEXT = "--text";
+
+    // option which sets the number of worker threads in text mode
+    private static final String OPTION_THREADS = "--threads=";
+
+    // number of characters read into one chunk of text
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    // number of chunks in flight per worker thread
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /**
+     * Run the program.
+     * @param args Command-line arguments: [--text] [--threads=<number>] <model file> <input file> <output file>.
+     */
+    public static void main(String[] args) {
+        boolean textMode = false;
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        List<String> positional = new ArrayList<>();
+
+        // separate options from positional arguments
+        for (String arg : args) {
+
+            if (arg.equals(OPTION_TEXT)) {
+                textMode = true;
+            } else if (arg.startsWith(OPTION_THREADS)) {
+
+                try {
+                    numThreads = Integer.parseInt(arg.substring(OPTION_THREADS.length()));
+                } catch (NumberFormatException e) {
+                    System.err.println("ERROR: number of threads \"" + arg + "\" is not a number");
+                    System.exit(1);
+                }
+
+            } else {
+                positional.add(arg);
+            }
+        }
+
+        // check number of command-line arguments
+        if (positional.size() != 3 || numThreads < 1) {
+            System.out.println("USAGE: java " + BustTypos.class.getName() +
+                    " [" + OPTION_TEXT + "] [" + OPTION_THREADS + "<number>] <model file> <input file> <output file>");
+            System.exit(0);
+        }
+
+        // check if model file exists
+        File modelFile = new File(positional.get(0));
+        if (! modelFile.isFile()) {
+            System.err.println("ERROR: model file \"" + modelFile.getAbsolutePath() + "\" does not exist");
+            System.exit(1);
+        }
+
+        // check if input file exists
+        File inputFile = new File(positional.get(1));
+        if (! inputFile.isFile()) {
+            System.err.println("ERROR: input file \"" + inputFile.getAbsolutePath() + "\" does not exist");
+            System.exit(1);
+        }
+
+        File outputFile = new File(positional.get(2));
+
+        // deserialize model
+        System.out.println("Loading model...");
+        Model model = ModelFile.load(modelFile);
+
+        // build index from model
+        System.out.println("Building index from model...");
+        Index index = new Index(model);
+        System.out.println(index.statistics());
+
+        // deserialize n-gram model if available
+        File ngramFile = NGramModel.fileFor(modelFile);
+        NGramModel ngrams = null;
+        if (ngramFile.isFile()) {
+            System.out.println("Loading n-gram model...");
+            ngrams = (NGramModel) Tools.deserialize(ngramFile);
+        }
+
+        if (textMode) {
+
+            // correct typos in running text
+            try {
+                System.out.println("Busting typos in text with " + numThreads + " threads...");
+                bustText(index, ngrams, inputFile, outputFile, numThreads);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+
+            System.out.println("Done!");
+            return;
+        }
+
+        // correct typos in input file and write result to output file
+        try {
+            System.out.println("Busting typos...");
+            FileReader fileReader = new FileReader(inputFile);
+            BufferedReader bufferedReader = new BufferedReader(fileReader);
+            FileWriter fileWriter = new FileWriter(outputFile);
+            BufferedWriter bufferedWriter = new BufferedWriter(fileWriter);
+            String line = bufferedReader.readLine();
+            String previous = null;
+            String previous2 = null;
+
+            try {
+
+                // treat each line as a typo and the lines around it as its context
+                while (line != null) {
+                    String next = bufferedReader.readLine();
+                    line = line.trim();
+                    String context = next == null ? null : next.trim();
+                    line = index.correct(previous2, previous, line, context, ngrams);
+                    bufferedWriter.write(line + "\n");
+
+                    // empty line breaks the context
+                    previous2 = previous;
+                    previous = line.length() == 0 ? null : line;
+                    line = next;
+                }
+
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                bufferedWriter.close();
+                fileWriter.close();
+                bufferedReader.close();
+                fileReader.close();
+            }
+
+        } catch (FileNotFoundException e) {
+            e.printStackTrace();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        System.out.println("Done!");
+    }
+
+    /**
+     * Correct the typos in running text. The text is read in chunks which never split a token. The chunks are
+     * corrected on a pool of worker threads and written in the order they were read. Each chunk is corrected with the
+     * end of the previous chunk as left context and the first token of the next chunk as right context, so tokens at
+     * the boundaries are corrected as if the text were not split.
+     * @param index The index to correct typos with.
+     * @param ngrams The n-gram model to correct typos in context with, or null.
+     * @param inputFile The file with the text to correct.
+     * @param outputFile The file to write the corrected text to.
+     * @param numThreads The number of worker threads.
+     * @throws IOException
+     */
+    public static void bustText(Index index, NGramModel ngrams, File inputFile, File outputFile, int numThreads) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        Deque<Future<String>> pending = new ArrayDeque<>();
+        int maxPending = numThreads * CHUNKS_PER_THREAD;
+
+        try (Reader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(inputFile), StandardCharsets.UTF_8));
+             Writer writer = new BufferedWriter(
+                     new OutputStreamWriter(new FileOutputStream(outputFile), StandardCharsets.UTF_8))) {
+            char[] buffer = new char[CHUNK_SIZE];
+            String previousChunk = "";
+            int length = 0;
+            int numRead;
+
+            while ((numRead = reader.read(buffer, length, buffer.length - length)) != -1) {
+                length += numRead;
+                if (length < buffer.length) continue;
+
+                // split before the last complete token, which is the right context of the chunk, unless there is none
+                int boundary = Tokenizer.lastBoundary(buffer, length);
+                int split = boundary == 0 ? 0 : Tokenizer.lastTokenStart(buffer, boundary);
+                if (split == 0) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    continue;
+                }
+
+                String chunk = new String(buffer, 0, split);
+                String right = new String(buffer, split, boundary - split);
+                submitChunk(index, ngrams, executor, pending, previousChunk, chunk, right);
+                previousChunk = chunk;
+                System.arraycopy(buffer, split, buffer, 0, length - split);
+                length -= split;
+
+                // write finished chunks in order to bound the number of chunks in memory
+                while (pending.size() >= maxPending) writer.write(await(pending.poll()));
+            }
+
+            // submit the rest of the text
+            if (length > 0) submitChunk(index, ngrams, executor, pending, previousChunk, new String(buffer, 0, length), "");
+            while (! pending.isEmpty()) writer.write(await(pending.poll()));
+
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Submit a chunk for correction.
+     * @param index The index to correct typos with.
+     * @param ngrams The n-gram model to correct typos in context with, or null.
+     * @param executor The executor to submit the chunk to.
+     * @param pending The queue of pending chunks in order of submission.
+     * @param left The previous chunk.
+     * @param chunk The chunk.
+     * @param right The text after the chunk up to the end of its first token.
+     */
+    private static void submitChunk(final Index index, final NGramModel ngrams, ExecutorService executor,
+                                    Deque<Future<String>> pending, final String left, final String chunk,
+                                    final String right) {
+        pending.add(executor.submit(new Callable<String>() {
+
+            @Override
+            public String call() {
+                return correctText(index, ngrams, left, chunk, right);
+            }
+        }));
+    }
+
+    /**
+     * Wait for a chunk to be corrected.
+     * @param future The future result of the correction.
+     * @return The corrected chunk.
+     * @throws IOException If the correction failed or was interrupted.
+     */
+    private static String await(Future<String> future) throws IOException {
+
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while busting typos", e);
+        } catch (ExecutionException e) {
+            throw new IOException("exception while busting typos", e.getCause());
+        }
+    }
+
+    /**
+     * Correct the typos in a piece of running text, keeping everything between the tokens as it is.
+     * @param index The index to correct typos with.
+     * @param ngrams The n-gram model to correct typos in context with, or null.
+     * @param text The text to correct.
+     * @return The corrected text.
+     */
+    public static String correctText(Index index, NGramModel ngrams, String text) {
+        return correctText(index, ngrams, "", text, "");
+    }
+
+    /**
+     * Correct the typos in a piece of running text which is part of a longer text, keeping everything between the
+     * tokens as it is. The tokens of the text before it are corrected again to get the left context of its first
+     * tokens, starting from the last two tokens whose corrections do not depend on context, so that they are corrected
+     * exactly as in the text before it. The first token of the text after it is the right context of its last token.
+     * @param index The index to correct typos with.
+     * @param ngrams The n-gram model to correct typos in context with, or null.
+     * @param left The text before the text to correct, which must not end inside a token.
+     * @param text The text to correct, which must not end inside a token unless it ends the longer text.
+     * @param right The text after the text to correct.
+     * @return The corrected text.
+     */
+    public static String correctText(Index index, NGramModel ngrams, String left, String text, String right) {
+        left = left.substring(contextStart(index, ngrams, left));
+        String all = left + text + right;
+        int start = left.length();
+        int end = start + text.length();
+        StringBuilder result = new StringBuilder(text.length());
+        Tokenizer tokenizer = new Tokenizer(all);
+        List<int[]> spans = new ArrayList<>();
+
+        // find the tokens of the context and the text, and the first token after the text
+        while (tokenizer.next()) {
+            spans.add(new int[] {tokenizer.start(), tokenizer.end()});
+            if (tokenizer.start() >= end) break;
+        }
+
+        String previous = null;
+        String previous2 = null;
+        int offset = start;
+
+        // copy separators and correct tokens in context
+        for (int i = 0; i < spans.size(); i++) {
+            int[] span = spans.get(i);
+            if (span[0] >= end) break;
+            String token = all.substring(span[0], span[1]);
+            String next = null;
+            if (i + 1 < spans.size()) next = all.substring(spans.get(i + 1)[0], spans.get(i + 1)[1]);
+
+            String correction = index.correct(previous2, previous, token, next, ngrams);
+            previous2 = previous;
+            previous = correction;
+            if (span[0] < start) continue;
+
+            result.append(all, offset, span[0]);
+            result.append(correction);
+            offset = span[1];
+        }
+
+        result.append(all, offset, end);
+        return result.toString();
+    }
+
+    /**
+     * Find where the left context of a piece of text starts. The corrections of two adjacent tokens which do not depend
+     * on context are the same wherever the text is split, and so are the corrections of the tokens after them.
+     * @param index The index to correct typos with.
+     * @param ngrams The n-gram model to correct typos in context with, or null.
+     * @param left The text before the piece of text.
+     * @return The offset of the first of the last two adjacent tokens of the text before whose corrections do not
+     * depend on context, or zero if there are no such tokens.
+     */
+    private static int contextStart(Index index, NGramModel ngrams, String left) {
+        if (ngrams == null) return left.length();
+        boolean nextIndependent = false;
+        int offset = left.length();
+
+        // go through the tokens backwards
+        while (true) {
+            int tokenEnd = offset;
+            while (tokenEnd > 0 && ! Tokenizer.isTokenChar(left.charAt(tokenEnd - 1))) tokenEnd--;
+            if (tokenEnd == 0) return 0;
+            int tokenStart = tokenEnd;
+            while (tokenStart > 0 && Tokenizer.isTokenChar(left.charAt(tokenStart - 1))) tokenStart--;
+
+            boolean independent = ! index.dependsOnContext(left.substring(tokenStart, tokenEnd), ngrams);
+            if (independent && nextIndependent) return tokenStart;
+            nextIndependent = independent;
+            offset = tokenStart;
+        }
+    }
+}
@@ -1,10 +1,7 @@
 package com.ontotext.tybus;
 
 import java.io.Serializable;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
-import java.util.NavigableSet;
+import java.util.*;
 
 /**
  * An index maps typos to their corrections.
@@ -20,6 +17,15 @@ import java.util.NavigableSet;
  *  - the correction must have some minimum frequency,
  *  - the typo must have a lower frequency than its correction,
  *  - all differing characters are lowercase letters.
+ *
+ * A typo may have several candidate corrections. Without context, the typo is corrected to the last candidate found.
+ * With context, the candidates are scored by how often they occur next to the surrounding tokens in an n-gram model.
+ *
+ * A correction may itself be a typo of another correction. After the index is built, each typo is resolved once along
+ * its chain of corrections, so that correcting a typo any number of times is a lookup instead of a walk along the
+ * chain. Chains have no cycles: every correction occurs more often than its typos, since a typo occurs at most
+ * TYPO_FREQUENCY_RATIO times as often as its correction (rounded) and a correction at least MIN_CORRECTION_FREQUENCY
+ * times, so the frequency strictly increases along a chain.
  */
 public class Index implements Serializable {
 
@@ -38,7 +44,20 @@ public class Index implements Serializable {
     // typo-frequency to correction-frequency ratio
     private static final float TYPO_FREQUENCY_RATIO = 0.1f;
 
+    // weight of a trigram occurrence relative to a bigram occurrence when scoring candidates in context
+    private static final int TRIGRAM_WEIGHT = 4;
+
     private Map<String, String> typo2correction;
+    private Map<String, List<Token>> typo2candidates;
+
+    // map from typo to the end of its chain of corrections
+    private Map<String, String> typo2resolution;
+
+    // map from typo to the corrections along its chain, the i-th made by i + 1 corrections (only for chains longer than one)
+    private Map<String, String[]> typo2chain;
+
+    // number of typos per length of their chain of corrections
+    private int[] chainLength2count;
 
     /**
      * Build a new index from a model.
@@ -47,6 +66,7 @@ public class Index implements Serializable {
     public Index(Model model) {
         int maxLength = model.maxTokenLength();
         typo2correction = new HashMap<>();
+        typo2candidates = new HashMap<>();
 
         // iterate through tokens by length
         for (int length = MIN_LENGTH; length <= maxLength; length++) {
@@ -70,7 +90,7 @@ public class Index implements Serializable {
 
                     // check for alteration or transposition
                     String typo = typoToken.getContent();
-                    if (isAlterationOrTransposition(typo, correction)) typo2correction.put(typo, correction);
+                    if (isAlterationOrTransposition(typo, correction)) addCorrection(typo, correctionToken);
                 }
 
                 // find lower-length typos
@@ -81,7 +101,7 @@ public class Index implements Serializable {
 
                         // check for deletion
                         String typo = typoToken.getContent();
-                        if (isDeletion(typo, correction)) typo2correction.put(typo, correction);
+                        if (isDeletion(typo, correction)) addCorrection(typo, correctionToken);
                     }
                 }
 
@@ -93,11 +113,164 @@ public class Index implements Serializable {
 
                         // check for insertion
                         String typo = typoToken.getContent();
-                        if (isInsertion(typo, correction)) typo2correction.put(typo, correction);
+                        if (isInsertion(typo, correction)) addCorrection(typo, correctionToken);
                     }
                 }
             }
         }
+
+        resolveChains();
+    }
+
+    /**
+     * Add a candidate correction for a typo.
+     * @param typo The typo.
+     * @param correctionToken The token of the correction.
+     */
+    private void addCorrection(String typo, Token correctionToken) {
+        typo2correction.put(typo, correctionToken.getContent());
+        List<Token> candidates = typo2candidates.get(typo);
+
+        if (candidates == null) {
+            candidates = new ArrayList<>(1);
+            typo2candidates.put(typo, candidates);
+        }
+
+        candidates.add(correctionToken);
+    }
+
+    /**
+     * Resolve each typo along its chain of corrections. The chains have no cycles (see the class description), so
+     * following the corrections of a typo always ends at a token which is not a typo.
+     */
+    private void resolveChains() {
+        typo2resolution = new HashMap<>();
+        typo2chain = new HashMap<>();
+        List<Integer> chainLengthCounts = new ArrayList<>();
+        List<String> path = new ArrayList<>();
+
+        for (String typo : typo2correction.keySet()) {
+            if (typo2resolution.containsKey(typo)) continue;
+            path.clear();
+            String current = typo;
+
+            // follow the chain till its end or a resolved typo
+            while (! typo2resolution.containsKey(current) && typo2correction.containsKey(current)) {
+                path.add(current);
+                current = typo2correction.get(current);
+            }
+
+            // the path followed by the rest of the chain
+            String[] tail = chain(current);
+            String[] sequence = new String[path.size() + 1 + tail.length];
+            for (int i = 0; i < path.size(); i++) sequence[i] = path.get(i);
+            sequence[path.size()] = current;
+            System.arraycopy(tail, 0, sequence, path.size() + 1, tail.length);
+            String resolution = sequence[sequence.length - 1];
+
+            // resolve the typos on the path
+            for (int i = 0; i < path.size(); i++) {
+                int chainLength = sequence.length - 1 - i;
+                typo2resolution.put(path.get(i), resolution);
+                if (chainLength > 1) typo2chain.put(path.get(i), Arrays.copyOfRange(sequence, i + 1, sequence.length));
+
+                while (chainLengthCounts.size() <= chainLength) chainLengthCounts.add(0);
+                chainLengthCounts.set(chainLength, chainLengthCounts.get(chainLength) + 1);
+            }
+        }
+
+        chainLength2count = new int[chainLengthCounts.size()];
+        for (int i = 0; i < chainLength2count.length; i++) chainLength2count[i] = chainLengthCounts.get(i);
+    }
+
+    /**
+     * Get the corrections along the chain of a token.
+     * @param token A resolved typo or a token which is not a typo.
+     * @return The corrections till the end of the chain; empty if the token is not a typo.
+     */
+    private String[] chain(String token) {
+        String[] chain = typo2chain.get(token);
+        if (chain != null) return chain;
+        String resolution = typo2resolution.get(token);
+        if (resolution == null) return new String[0];
+        return new String[] {resolution};
+    }
+
+    /**
+     * Describe the chains of corrections found when building this index.
+     * @return The number of typos and the number of typos per chain length.
+     */
+    public String statistics() {
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append(typo2resolution.size() + " typos");
+
+        for (int chainLength = 1; chainLength < chainLength2count.length; chainLength++) {
+            stringBuilder.append("\n  chain length " + chainLength + ": " + chainLength2count[chainLength] + " typos");
+        }
+
+        return stringBuilder.toString();
+    }
+
+    /**
+     * Get the candidate corrections of a typo.
+     * @param typo The typo.
+     * @return The candidate corrections of the typo, or an empty list if it is not a known typo.
+     */
+    public List<Token> candidates(String typo) {
+        List<Token> candidates = typo2candidates.get(typo);
+        if (candidates == null) return Collections.emptyList();
+        return Collections.unmodifiableList(candidates);
+    }
+
+    /**
+     * Check if the correction of a token depends on the tokens around it.
+     * @param token The token.
+     * @param ngrams The n-gram model to score candidates with, or null.
+     * @return True if the token is a typo with several candidate corrections and there is an n-gram model. False
+     * otherwise.
+     */
+    public boolean dependsOnContext(String token, NGramModel ngrams) {
+        if (ngrams == null) return false;
+        List<Token> candidates = typo2candidates.get(token);
+        return candidates != null && candidates.size() > 1;
+    }
+
+    /**
+     * Correct a typo considering the tokens around it. Each candidate correction is scored by how often it follows the
+     * previous tokens and precedes the next token in the n-gram model. The next token is not corrected yet, so it is
+     * taken as corrected without context. If no candidate has been seen in this context, the typo is corrected as
+     * without context.
+     * @param previous2 The corrected token before the previous token, or null if there is none.
+     * @param previous The corrected previous token, or null if there is none.
+     * @param typo The typo to correct.
+     * @param next The next token as it is, or null if there is none.
+     * @param ngrams The n-gram model to score candidates with.
+     * @return The best correction of the typo if such exists. Otherwise the typo.
+     */
+    public String correct(String previous2, String previous, String typo, String next, NGramModel ngrams) {
+        if (! dependsOnContext(typo, ngrams)) return correct(typo);
+        List<Token> candidates = typo2candidates.get(typo);
+        if (next != null) next = correct(next);
+
+        Token bestCandidate = null;
+        long bestScore = 0;
+
+        // score candidates by the n-grams they form with the context
+        for (Token candidate : candidates) {
+            String content = candidate.getContent();
+            long score = TRIGRAM_WEIGHT * (long) ngrams.count(previous2, previous, content) +
+                    ngrams.count(previous, content) + ngrams.count(content, next);
+
+            // prefer the more frequent candidate on equal score
+            if (score > bestScore || (score == bestScore && bestCandidate != null &&
+                    candidate.getNumOccurrences() > bestCandidate.getNumOccurrences())) {
+                bestCandidate = candidate;
+                bestScore = score;
+            }
+        }
+
+        if (bestCandidate == null) return typo2correction.get(typo);
+        return bestCandidate.getContent();
     }
 
     /**
@@ -116,18 +289,13 @@ public class Index implements Serializable {
      * @return The correction of the typo if such exists. Otherwise the typo.
      */
     public String correct(String typo, int maxNumCorrections) {
-        String result = typo;
-
-        // perform corrections till limit or till no more corrections possible
-        for (int numCorrection = 0; numCorrection < maxNumCorrections; numCorrection++) {
-            String correction = typo2correction.get(result);
-            if (correction == null) return result;
-
-            // update result
-            result = correction;
-        }
+        String resolution = typo2resolution.get(typo);
+        if (resolution == null || maxNumCorrections <= 0) return typo;
 
-        return result;
+        // take the correction at the limit from the chain if the chain is longer
+        String[] chain = typo2chain.get(typo);
+        if (chain == null || maxNumCorrections >= chain.length) return resolution;
+        return chain[maxNumCorrections - 1];
     }
 
     /**
@@ -136,15 +304,9 @@ public class Index implements Serializable {
      * @return The correction of the typo if such exists. Otherwise the typo.
      */
     public String correctFully(String typo) {
-        String result = typo;
-        String correction;
-
-        // perform corrections till no more corrections possible
-        while ((correction = typo2correction.get(result)) != null) {
-            result = correction;
-        }
-
-        return result;
+        String resolution = typo2resolution.get(typo);
+        if (resolution == null) return typo;
+        return resolution;
     }
 
     /**
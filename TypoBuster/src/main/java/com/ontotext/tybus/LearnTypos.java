@@ -0,0 +1,114 @@
+package com.ontotext.tybus;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * Learn typos from a list of tokens. Each token is assumed to be on a new line. If the model file does not exist,
+ * a new model will be created. Otherwise, the existing model will be enriched with the new tokens and saved in the
+ * format it was loaded from.
+ *
+ * With the n-grams option, an n-gram model of the bigrams and trigrams formed by consecutive lines is learned too and
+ * stored next to the model file. An empty line breaks the sequence of tokens.
+ */
+public class LearnTypos {
+
+    // option which switches on learning of n-grams
+    private static final String OPTION_NGRAMS = "--ngrams";
+
+    /**
+     * Run the program.
+     * @param args Command-line arguments: [--ngrams] <token file> <model file>.
+     */
+    public static void main(String[] args) {
+        boolean learnNGrams = args.length > 0 && args[0].equals(OPTION_NGRAMS);
+        if (learnNGrams) args = Arrays.copyOfRange(args, 1, args.length);
+
+        // check number of command-line arguments
+        if (args.length != 2) {
+            System.out.println("USAGE: java " + LearnTypos.class.getName() +
+                    " [" + OPTION_NGRAMS + "] <token file> <model file>");
+            System.exit(0);
+        }
+
+        // check if token file exists
+        File tokenFile = new File(args[0]);
+        if (! tokenFile.isFile()) {
+            System.err.println("ERROR: token file \"" + tokenFile.getAbsolutePath() + "\" does not exist");
+            System.exit(1);
+        }
+
+        // check if model file exists
+        File modelFile = new File(args[1]);
+        boolean isCompact = ModelFile.isCompact(modelFile);
+        Model model;
+        if (! modelFile.isFile()) {
+            System.out.println("Creating new model...");
+            model = new Model();
+        } else {
+            System.out.println("Loading existing model...");
+            model = ModelFile.load(modelFile);
+        }
+
+        // check if n-gram model file exists
+        File ngramFile = NGramModel.fileFor(modelFile);
+        NGramModel ngrams = null;
+        if (learnNGrams && ! ngramFile.isFile()) {
+            System.out.println("Creating new n-gram model...");
+            ngrams = new NGramModel();
+        } else if (learnNGrams) {
+            System.out.println("Loading existing n-gram model...");
+            ngrams = (NGramModel) Tools.deserialize(ngramFile);
+        }
+
+        // add tokens to model
+        try {
+            System.out.println("Adding token to model...");
+            FileReader fileReader = new FileReader(tokenFile);
+            BufferedReader bufferedReader = new BufferedReader(fileReader);
+            String line;
+            String previous = null;
+            String previous2 = null;
+
+            try {
+
+                // treat each line as a token
+                while ((line = bufferedReader.readLine()) != null) {
+                    line = line.trim();
+                    model.addToken(line);
+                    if (ngrams == null) continue;
+
+                    // empty line breaks the sequence
+                    if (line.length() == 0) line = null;
+                    else ngrams.add(previous2, previous, line);
+                    previous2 = previous;
+                    previous = line;
+                }
+
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                bufferedReader.close();
+                fileReader.close();
+            }
+
+        } catch (FileNotFoundException e) {
+            e.printStackTrace();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        // serialize model
+        System.out.println("Saving model to file...");
+        if (isCompact) ModelFile.save(modelFile, model);
+        else Tools.serialize(modelFile, model);
+
+        // serialize n-gram model
+        if (ngrams != null) {
+            System.out.println("Saving n-gram model to file...");
+            Tools.serialize(ngramFile, ngrams);
+        }
+
+        System.out.println("Done!");
+    }
+}
@@ -0,0 +1,64 @@
+package com.ontotext.tybus;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Merge models learned separately (e.g. from different collections) into one model by summing the counts of their
+ * tokens. The merged model is written in the compact model format. Tokens which occur fewer times than the given
+ * minimum frequency are pruned from the merged model.
+ */
+public class MergeModels {
+
+    /**
+     * Run the program.
+     * @param args Command-line arguments: <min frequency> <output model file> <input model file>...
+     */
+    public static void main(String[] args) {
+
+        // check number of command-line arguments
+        if (args.length < 3) {
+            System.out.println("USAGE: java " + MergeModels.class.getName() +
+                    " <min frequency> <output model file> <input model file>...");
+            System.exit(0);
+        }
+
+        // parse minimum frequency
+        int minFrequency = 0;
+        try {
+            minFrequency = Integer.parseInt(args[0]);
+        } catch (NumberFormatException e) {
+            System.err.println("ERROR: minimum frequency \"" + args[0] + "\" is not a number");
+            System.exit(1);
+        }
+
+        File outputFile = new File(args[1]);
+        List<File> inputFiles = new ArrayList<>();
+
+        // check if input model files exist
+        for (int i = 2; i < args.length; i++) {
+            File inputFile = new File(args[i]);
+
+            if (! inputFile.isFile()) {
+                System.err.println("ERROR: model file \"" + inputFile.getAbsolutePath() + "\" does not exist");
+                System.exit(1);
+            }
+
+            inputFiles.add(inputFile);
+        }
+
+        // merge models
+        try {
+            System.out.println("Merging " + inputFiles.size() + " models...");
+            int numTokens = ModelFile.merge(inputFiles, outputFile, minFrequency);
+            System.out.println("Merged model has " + numTokens + " tokens.");
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+
+        System.out.println("Done!");
+    }
+}
@@ -0,0 +1,140 @@
+package com.ontotext.tybus;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * A model stores tokens extracted from texts.
+ */
+public class Model implements Serializable {
+    private List<NavigableSet<Token>> length2tokens;
+    private Map<String, Token> string2token;
+
+    /**
+     * Initialize an empty model.
+     */
+    public Model() {
+        length2tokens = new ArrayList<>();
+        string2token = new HashMap<>();
+    }
+
+    /**
+     * Add a token to the model.
+     * @param content The string content of the token.
+     */
+    public void addToken(String content) {
+        addToken(content, 1);
+    }
+
+    /**
+     * Add a token to the model several times at once.
+     * @param content The string content of the token.
+     * @param numOccurrences The number of occurrences to add.
+     */
+    public void addToken(String content, int numOccurrences) {
+        if (content == null || content.length() == 0 || numOccurrences <= 0) return;
+
+        int length = content.length();
+        Token token = string2token.get(content);
+
+        // token is new
+        if (token == null) {
+            token = new Token(content, numOccurrences);
+
+            // extend list if necessary
+            while (length2tokens.size() < length) {
+                length2tokens.add(new TreeSet<>());
+            }
+
+            // token is known
+        } else {
+            length2tokens.get(length - 1).remove(token);
+            token.addOccurrences(numOccurrences);
+        }
+
+        length2tokens.get(length - 1).add(token);
+        string2token.put(content, token);
+    }
+
+    /**
+     * Retrieve the sorted tokens with the given length.
+     * @param length The length of the tokens.
+     * @return The set of tokens with the given length, from least frequent to most frequent.
+     */
+    public NavigableSet<Token> getTokens(int length) {
+        return length2tokens.get(length - 1);
+    }
+
+    /**
+     * Get all tokens in this model in no particular order.
+     * @return The tokens in this model.
+     */
+    public Collection<Token> getTokens() {
+        return Collections.unmodifiableCollection(string2token.values());
+    }
+
+    /**
+     * Get the number of distinct tokens in this model.
+     * @return The number of distinct tokens in this model.
+     */
+    public int numTokens() {
+        return string2token.size();
+    }
+
+    /**
+     * Merge several models into a new model by summing the counts of their tokens.
+     * @param models The models to merge.
+     * @return The merged model.
+     */
+    public static Model merge(Model... models) {
+        return merge(1, models);
+    }
+
+    /**
+     * Merge several models into a new model by summing the counts of their tokens. Tokens whose summed count is below
+     * the frequency floor are left out of the merged model.
+     * @param minFrequency The minimum number of occurrences of a token in the merged model.
+     * @param models The models to merge.
+     * @return The merged model.
+     */
+    public static Model merge(int minFrequency, Model... models) {
+        Map<String, Integer> string2count = new HashMap<>();
+
+        // sum counts of tokens over all models
+        for (Model model : models) {
+            for (Token token : model.string2token.values()) {
+                Integer count = string2count.get(token.getContent());
+                if (count == null) count = 0;
+                string2count.put(token.getContent(), count + token.getNumOccurrences());
+            }
+        }
+
+        Model merged = new Model();
+
+        // add tokens which are frequent enough
+        for (Map.Entry<String, Integer> entry : string2count.entrySet()) {
+            if (entry.getValue() >= minFrequency) merged.addToken(entry.getKey(), entry.getValue());
+        }
+
+        return merged;
+    }
+
+    /**
+     * Get the length of the longest token in this model.
+     * @return The length of the longest token in this model.
+     */
+    public int maxTokenLength() {
+        return length2tokens.size();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder stringBuilder = new StringBuilder();
+
+        for (Token token : string2token.values()) {
+            stringBuilder.append(token.toString() + "\n");
+        }
+
+        return stringBuilder.toString();
+    }
+}
@@ -0,0 +1,237 @@
+package com.ontotext.tybus;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Read and write models in a compact on-disk format. A compact model file starts with a magic number followed by
+ * the tokens of the model sorted by content, each written as its content and its number of occurrences. Because the
+ * tokens are sorted, several compact model files can be merged by streaming through them side by side, without
+ * loading any of them into memory.
+ */
+public class ModelFile {
+
+    // marks the beginning of a compact model file
+    private static final int MAGIC = 0x54594255;
+
+    // size of the buffers used for reading and writing
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Check if a file is in the compact model format.
+     * @param file A file.
+     * @return True if the file is in the compact model format. False otherwise.
+     */
+    public static boolean isCompact(File file) {
+
+        try (DataInputStream input = new DataInputStream(new FileInputStream(file))) {
+            return input.readInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Load a model from a file in either the compact model format or the Java serialization format.
+     * @param file A file.
+     * @return The model, or null if loading failed.
+     */
+    public static Model load(File file) {
+        if (! isCompact(file)) return (Model) Tools.deserialize(file);
+        Model model = new Model();
+
+        try (TokenReader reader = new TokenReader(file)) {
+            Token token;
+
+            while ((token = reader.next()) != null) {
+                model.addToken(token.getContent(), token.getNumOccurrences());
+            }
+
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        return model;
+    }
+
+    /**
+     * Save a model to a file in the compact model format.
+     * @param file A file.
+     * @param model A model.
+     */
+    public static void save(File file, Model model) {
+        List<Token> tokens = new ArrayList<>(model.getTokens());
+        Collections.sort(tokens, new Comparator<Token>() {
+
+            @Override
+            public int compare(Token one, Token two) {
+                return one.getContent().compareTo(two.getContent());
+            }
+        });
+
+        try (TokenWriter writer = new TokenWriter(file)) {
+            for (Token token : tokens) writer.write(token);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Merge model files into a compact model file by summing the counts of their tokens. Compact input files are
+     * streamed. Input files in the Java serialization format are converted to temporary compact files one at a time,
+     * so at most one input model is held in memory.
+     * @param inputFiles The model files to merge.
+     * @param outputFile The compact model file to write.
+     * @param minFrequency The minimum number of occurrences of a token in the merged model.
+     * @return The number of tokens written to the output file.
+     * @throws IOException
+     */
+    public static int merge(List<File> inputFiles, File outputFile, int minFrequency) throws IOException {
+        List<File> compactFiles = new ArrayList<>();
+        List<File> tempFiles = new ArrayList<>();
+
+        // convert serialized models to compact files
+        for (File inputFile : inputFiles) {
+
+            if (isCompact(inputFile)) {
+                compactFiles.add(inputFile);
+            } else {
+                Model model = (Model) Tools.deserialize(inputFile);
+                if (model == null) throw new IOException("cannot load model file \"" + inputFile.getAbsolutePath() + "\"");
+                File tempFile = File.createTempFile("tybus", ".model");
+                save(tempFile, model);
+                compactFiles.add(tempFile);
+                tempFiles.add(tempFile);
+            }
+        }
+
+        List<TokenReader> readers = new ArrayList<>();
+        int numWritten = 0;
+
+        try (TokenWriter writer = new TokenWriter(outputFile)) {
+
+            // queue readers by their current token, smallest content first
+            int initialCapacity = Math.max(1, compactFiles.size());
+            PriorityQueue<TokenReader> queue = new PriorityQueue<>(initialCapacity, new Comparator<TokenReader>() {
+
+                @Override
+                public int compare(TokenReader one, TokenReader two) {
+                    return one.current.getContent().compareTo(two.current.getContent());
+                }
+            });
+
+            for (File compactFile : compactFiles) {
+                TokenReader reader = new TokenReader(compactFile);
+                readers.add(reader);
+                if (reader.next() != null) queue.add(reader);
+            }
+
+            // sum counts of equal tokens as they come out of the queue
+            while (! queue.isEmpty()) {
+                String content = queue.peek().current.getContent();
+                int count = 0;
+
+                while (! queue.isEmpty() && queue.peek().current.getContent().equals(content)) {
+                    TokenReader reader = queue.poll();
+                    count += reader.current.getNumOccurrences();
+                    if (reader.next() != null) queue.add(reader);
+                }
+
+                // prune infrequent tokens
+                if (count < minFrequency) continue;
+                writer.write(new Token(content, count));
+                numWritten++;
+            }
+
+        } finally {
+            for (TokenReader reader : readers) reader.close();
+            for (File tempFile : tempFiles) tempFile.delete();
+        }
+
+        return numWritten;
+    }
+
+    /**
+     * Sequential reader of the tokens in a compact model file.
+     */
+    public static class TokenReader implements Closeable {
+        private DataInputStream input;
+        private Token current;
+
+        /**
+         * Open a compact model file for reading.
+         * @param file A compact model file.
+         * @throws IOException
+         */
+        public TokenReader(File file) throws IOException {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+
+            if (input.readInt() != MAGIC) {
+                input.close();
+                throw new IOException("not a compact model file: \"" + file.getAbsolutePath() + "\"");
+            }
+        }
+
+        /**
+         * Read the next token.
+         * @return The next token, or null if there are no more tokens.
+         * @throws IOException
+         */
+        public Token next() throws IOException {
+
+            try {
+                String content = input.readUTF();
+                int numOccurrences = input.readInt();
+                current = new Token(content, numOccurrences);
+            } catch (EOFException e) {
+                current = null;
+            }
+
+            return current;
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+
+    /**
+     * Sequential writer of tokens to a compact model file. Tokens must be written in order of their content.
+     */
+    public static class TokenWriter implements Closeable {
+        private DataOutputStream output;
+        private String previous;
+
+        /**
+         * Open a compact model file for writing.
+         * @param file A file.
+         * @throws IOException
+         */
+        public TokenWriter(File file) throws IOException {
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+            output.writeInt(MAGIC);
+        }
+
+        /**
+         * Write a token.
+         * @param token A token whose content is greater than the content of the previously written token.
+         * @throws IOException
+         */
+        public void write(Token token) throws IOException {
+            if (previous != null && previous.compareTo(token.getContent()) >= 0) {
+                throw new IOException("tokens out of order: \"" + previous + "\" before \"" + token.getContent() + "\"");
+            }
+
+            output.writeUTF(token.getContent());
+            output.writeInt(token.getNumOccurrences());
+            previous = token.getContent();
+        }
+
+        @Override
+        public void close() throws IOException {
+            output.close();
+        }
+    }
+}
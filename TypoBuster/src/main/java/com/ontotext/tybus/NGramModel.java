@@ -0,0 +1,171 @@
+package com.ontotext.tybus;
+
+import java.io.File;
+import java.io.Serializable;
+
+/**
+ * An n-gram model stores how often bigrams and trigrams of tokens occur in texts. The counts are kept in a count-min
+ * sketch: a fixed-size table of counters where each n-gram is hashed into one counter per row and its count is
+ * estimated as the minimum of these counters. The memory used by the model does not depend on the number of distinct
+ * n-grams, and counts are overestimated but never underestimated.
+ */
+public class NGramModel implements Serializable {
+
+    // suffix added to the model file name to get the n-gram model file name
+    public static final String FILE_SUFFIX = ".ngrams";
+
+    // default number of rows in the sketch
+    public static final int DEFAULT_DEPTH = 4;
+
+    // default number of counters per row in the sketch (must be a power of two)
+    public static final int DEFAULT_WIDTH = 1 << 20;
+
+    // seeds which distinguish bigram hashes from trigram hashes
+    private static final long BIGRAM_SEED = 0x9E3779B97F4A7C15L;
+    private static final long TRIGRAM_SEED = 0xC2B2AE3D27D4EB4FL;
+
+    private int[][] counters;
+    private int mask;
+    private long numNGrams;
+
+    /**
+     * Initialize an empty n-gram model with default size.
+     */
+    public NGramModel() {
+        this(DEFAULT_DEPTH, DEFAULT_WIDTH);
+    }
+
+    /**
+     * Initialize an empty n-gram model.
+     * @param depth The number of rows in the sketch.
+     * @param width The number of counters per row in the sketch (must be a power of two).
+     */
+    public NGramModel(int depth, int width) {
+        if (depth < 1 || width < 1 || Integer.bitCount(width) != 1) {
+            throw new IllegalArgumentException("invalid sketch size: " + depth + " x " + width);
+        }
+
+        counters = new int[depth][width];
+        mask = width - 1;
+    }
+
+    /**
+     * Add the n-grams ending with a token to the model.
+     * @param previous2 The token before the previous token, or null if there is none.
+     * @param previous The previous token, or null if there is none.
+     * @param token The token.
+     */
+    public void add(String previous2, String previous, String token) {
+        if (token == null || previous == null) return;
+        increment(hash(BIGRAM_SEED, previous, token));
+        if (previous2 != null) increment(hash(TRIGRAM_SEED, previous2, previous, token));
+    }
+
+    /**
+     * Estimate how often a bigram occurs.
+     * @param first The first token.
+     * @param second The second token.
+     * @return The estimated number of occurrences of the bigram.
+     */
+    public int count(String first, String second) {
+        if (first == null || second == null) return 0;
+        return estimate(hash(BIGRAM_SEED, first, second));
+    }
+
+    /**
+     * Estimate how often a trigram occurs.
+     * @param first The first token.
+     * @param second The second token.
+     * @param third The third token.
+     * @return The estimated number of occurrences of the trigram.
+     */
+    public int count(String first, String second, String third) {
+        if (first == null || second == null || third == null) return 0;
+        return estimate(hash(TRIGRAM_SEED, first, second, third));
+    }
+
+    /**
+     * Get the number of n-grams added to this model.
+     * @return The number of n-grams added to this model.
+     */
+    public long numNGrams() {
+        return numNGrams;
+    }
+
+    /**
+     * Get the file where the n-gram model for a model is stored.
+     * @param modelFile The model file.
+     * @return The n-gram model file.
+     */
+    public static File fileFor(File modelFile) {
+        return new File(modelFile.getPath() + FILE_SUFFIX);
+    }
+
+    /**
+     * Increment the counters of an n-gram. Only the counters which are equal to the current estimate are incremented
+     * (conservative update), which reduces overestimation caused by collisions.
+     * @param hash The hash of the n-gram.
+     */
+    private void increment(long hash) {
+        int estimate = estimate(hash);
+        if (estimate == Integer.MAX_VALUE) return;
+        int first = (int) hash;
+        int second = (int) (hash >>> 32);
+
+        for (int row = 0; row < counters.length; row++) {
+            int column = (first + row * second) & mask;
+            if (counters[row][column] == estimate) counters[row][column]++;
+        }
+
+        numNGrams++;
+    }
+
+    /**
+     * Estimate the count of an n-gram as the minimum of its counters.
+     * @param hash The hash of the n-gram.
+     * @return The estimated count.
+     */
+    private int estimate(long hash) {
+        int first = (int) hash;
+        int second = (int) (hash >>> 32);
+        int estimate = Integer.MAX_VALUE;
+
+        for (int row = 0; row < counters.length; row++) {
+            int column = (first + row * second) & mask;
+            estimate = Math.min(estimate, counters[row][column]);
+        }
+
+        return estimate;
+    }
+
+    /**
+     * Hash a sequence of tokens to a 64-bit value.
+     * @param seed The seed which distinguishes the order of the n-gram.
+     * @param tokens The tokens.
+     * @return The hash.
+     */
+    private static long hash(long seed, String... tokens) {
+        long hash = seed;
+
+        for (String token : tokens) {
+            hash = mix(hash ^ token.hashCode());
+            hash = mix(hash + token.length());
+        }
+
+        return hash;
+    }
+
+    /**
+     * Scramble the bits of a 64-bit value (finalizer of MurmurHash3).
+     * @param value A value.
+     * @return The scrambled value.
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
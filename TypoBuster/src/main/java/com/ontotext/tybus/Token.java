@@ -14,8 +14,17 @@ public class Token implements Comparable<Token>, Serializable {
      * @param content The string content of the token.
      */
     public Token(String content) {
+        this(content, 1);
+    }
+
+    /**
+     * Create a new token from a piece of text which has already been counted.
+     * @param content The string content of the token.
+     * @param numOccurrences The number of occurrences of the token.
+     */
+    public Token(String content, int numOccurrences) {
         this.content = content;
-        numOccurrences = 1;
+        this.numOccurrences = numOccurrences;
     }
 
     public String getContent() {
@@ -33,6 +42,14 @@ public class Token implements Comparable<Token>, Serializable {
         numOccurrences++;
     }
 
+    /**
+     * Add several occurrences of this token.
+     * @param numOccurrences The number of occurrences to add.
+     */
+    public void addOccurrences(int numOccurrences) {
+        this.numOccurrences += numOccurrences;
+    }
+
     @Override
     public int compareTo(Token other) {
         if (this == other) return 0;
@@ -0,0 +1,98 @@
+package com.ontotext.tybus;
+
+/**
+ * A tokenizer splits running text into tokens and the separators between them. A token is a maximal sequence of
+ * letters and digits. Everything else (whitespace, punctuation, markup) is a separator and is kept as it is.
+ */
+public class Tokenizer {
+    private CharSequence text;
+    private int start;
+    private int end;
+
+    /**
+     * Start tokenizing a piece of text.
+     * @param text The text to tokenize.
+     */
+    public Tokenizer(CharSequence text) {
+        this.text = text;
+        start = 0;
+        end = 0;
+    }
+
+    /**
+     * Move to the next token.
+     * @return True if there is a next token. False otherwise.
+     */
+    public boolean next() {
+        start = end;
+
+        // skip separator
+        while (start < text.length() && ! isTokenChar(text.charAt(start))) start++;
+        if (start == text.length()) {
+            end = start;
+            return false;
+        }
+
+        // find end of token
+        end = start + 1;
+        while (end < text.length() && isTokenChar(text.charAt(end))) end++;
+        return true;
+    }
+
+    /**
+     * Get the start offset of the current token.
+     * @return The offset of the first character of the current token.
+     */
+    public int start() {
+        return start;
+    }
+
+    /**
+     * Get the end offset of the current token.
+     * @return The offset after the last character of the current token.
+     */
+    public int end() {
+        return end;
+    }
+
+    /**
+     * Get the content of the current token.
+     * @return The content of the current token.
+     */
+    public String token() {
+        return text.subSequence(start, end).toString();
+    }
+
+    /**
+     * Check if a character can be part of a token.
+     * @param c A character.
+     * @return True if the character is a letter or digit. False otherwise.
+     */
+    public static boolean isTokenChar(char c) {
+        return Character.isLetterOrDigit(c);
+    }
+
+    /**
+     * Find the offset after which a piece of text can be split without splitting a token.
+     * @param text The text.
+     * @param length The number of characters of the text to consider.
+     * @return The offset after the last separator character, or zero if there is no separator.
+     */
+    public static int lastBoundary(char[] text, int length) {
+        int offset = length;
+        while (offset > 0 && isTokenChar(text[offset - 1])) offset--;
+        return offset;
+    }
+
+    /**
+     * Find the start of the last token which ends before an offset.
+     * @param text The text.
+     * @param offset The offset.
+     * @return The offset of the first character of the token, or zero if there is no such token or it starts the text.
+     */
+    public static int lastTokenStart(char[] text, int offset) {
+        while (offset > 0 && ! isTokenChar(text[offset - 1])) offset--;
+        while (offset > 0 && isTokenChar(text[offset - 1])) offset--;
+        return offset;
+    }
+}
@@ -0,0 +1,57 @@
+package com.ontotext.tybus.benchmarks;
+
+import com.ontotext.tybus.Index;
+import com.ontotext.tybus.Model;
+import com.ontotext.tybus.tests.CorpusGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IndexBenchmarks {
+
+    @Param({"10000"})
+    public int vocabularySize;
+
+    @Param({"1000000"})
+    public int numTokens;
+
+    @Param({"0.02"})
+    public double typoRate;
+
+    private List<String> tokens;
+    private Model model;
+    private Index index;
+    private int position;
+
+    @Setup(Level.Trial)
+    public void buildIndex() {
+        double rate = typoRate / 4;
+        tokens = new CorpusGenerator(42, vocabularySize, rate, rate, rate, rate).generate(numTokens).tokens;
+        model = new Model();
+        for (String token : tokens) model.addToken(token);
+        index = new Index(model);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public Index construct() {
+        return new Index(model);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public String correct() {
+        String correction = index.correct(tokens.get(position));
+        if (++position == tokens.size()) position = 0;
+        return correction;
+    }
+}
@@ -0,0 +1,45 @@
+package com.ontotext.tybus.benchmarks;
+
+import com.ontotext.tybus.Model;
+import com.ontotext.tybus.tests.CorpusGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModelBenchmarks {
+
+    @Param({"10000"})
+    public int vocabularySize;
+
+    @Param({"0.02"})
+    public double typoRate;
+
+    private List<String> tokens;
+    private Model model;
+    private int position;
+
+    @Setup(Level.Trial)
+    public void generateCorpus() {
+        double rate = typoRate / 4;
+        tokens = new CorpusGenerator(42, vocabularySize, rate, rate, rate, rate).generate(1000000).tokens;
+    }
+
+    @Setup(Level.Iteration)
+    public void createModel() {
+        model = new Model();
+        position = 0;
+    }
+
+    @Benchmark
+    public void addToken() {
+        model.addToken(tokens.get(position));
+        if (++position == tokens.size()) position = 0;
+    }
+}
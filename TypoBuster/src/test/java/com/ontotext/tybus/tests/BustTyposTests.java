@@ -0,0 +1,117 @@
+package com.ontotext.tybus.tests;
+
+import com.ontotext.tybus.BustTypos;
+import com.ontotext.tybus.Index;
+import com.ontotext.tybus.Model;
+import com.ontotext.tybus.NGramModel;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class BustTyposTests {
+    private static final String[] SEPARATORS = { " ", " ", " ", ", ", ". ", "\n", " – " };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Index index;
+    private static NGramModel ngrams;
+
+    @BeforeClass
+    public static void buildIndex() {
+        index = new Index(NGramModelTests.ambiguousModel());
+        ngrams = new NGramModel();
+
+        for (int i = 0; i < 5; i++) {
+            ngrams.add("play", "video", "games");
+            ngrams.add("bake", "chocolate", "cakes");
+            ngrams.add(null, "cakes", "recipes");
+        }
+    }
+
+    @Test
+    public void textIsCorrectedInContext() {
+        assertEquals("We play video games, and bake chocolate cakes!",
+                BustTypos.correctText(index, ngrams, "We play video cames, and bake chocolate cames!"));
+    }
+
+    @Test
+    public void contextIsCarriedAcrossChunks() {
+
+        // the left context of the first token comes from the previous chunk
+        assertEquals("games all day. ", BustTypos.correctText(index, ngrams, "We play video ", "cames all day. ", "Then"));
+        assertEquals("cakes. ", BustTypos.correctText(index, ngrams, "We bake chocolate ", "cames. ", ""));
+
+        // the right context of the last token comes from the next chunk
+        assertEquals("Many cakes ", BustTypos.correctText(index, ngrams, "", "Many cames ", "recipes"));
+    }
+
+    @Test
+    public void splitTextIsCorrectedAsWhole() {
+        String text = "We play video cames and cames, bake chocolate cames from cames recipes.";
+        String expected = BustTypos.correctText(index, ngrams, text);
+
+        // split the text before each token
+        for (int split = 1; split < text.length(); split++) {
+            if (! Character.isLetter(text.charAt(split)) || Character.isLetter(text.charAt(split - 1))) continue;
+            int rightEnd = split;
+            while (rightEnd < text.length() && Character.isLetter(text.charAt(rightEnd))) rightEnd++;
+
+            String first = text.substring(0, split);
+            String second = text.substring(split);
+            assertEquals(expected, BustTypos.correctText(index, ngrams, "", first, text.substring(split, rightEnd)) +
+                    BustTypos.correctText(index, ngrams, first, second, ""));
+        }
+    }
+
+    @Test
+    public void chunkedTextIsCorrectedAsWhole() throws IOException {
+        CorpusGenerator.Corpus corpus = new CorpusGenerator(3, 300, 0.02, 0.02, 0.02, 0.02).generate(100000);
+        Model model = new Model();
+        for (String token : corpus.tokens) model.addToken(token);
+        Index corpusIndex = new Index(model);
+
+        // learn n-grams from the words, so that typos with several candidates are corrected in context
+        NGramModel corpusNGrams = new NGramModel();
+        List<String> words = corpus.words;
+        for (int i = 0; i < words.size(); i++) {
+            corpusNGrams.add(i < 2 ? null : words.get(i - 2), i < 1 ? null : words.get(i - 1), words.get(i));
+        }
+
+        // join the tokens with separators into a text of many chunks
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < corpus.tokens.size(); i++) {
+            text.append(corpus.tokens.get(i)).append(SEPARATORS[i % SEPARATORS.length]);
+        }
+
+        String expected = BustTypos.correctText(corpusIndex, corpusNGrams, text.toString());
+        assertEquals(expected, bustText(corpusIndex, corpusNGrams, text.toString(), 4));
+        assertEquals(expected, bustText(corpusIndex, corpusNGrams, text.toString(), 1));
+    }
+
+    @Test
+    public void tokensLongerThanChunksAreKept() throws IOException {
+        char[] letters = new char[200000];
+        Arrays.fill(letters, 'a');
+        String text = "cames " + new String(letters) + " video cames";
+        assertEquals("cakes " + new String(letters) + " video games", bustText(index, ngrams, text, 2));
+    }
+
+    private String bustText(Index index, NGramModel ngrams, String text, int numThreads) throws IOException {
+        File input = folder.newFile();
+        File output = folder.newFile();
+        Files.write(input.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        BustTypos.bustText(index, ngrams, input, output, numThreads);
+        return new String(Files.readAllBytes(output.toPath()), StandardCharsets.UTF_8);
+    }
+}
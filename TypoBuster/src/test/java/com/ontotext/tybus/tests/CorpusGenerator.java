@@ -0,0 +1,149 @@
+package com.ontotext.tybus.tests;
+
+import java.util.*;
+
+/**
+ * Deterministic generator of synthetic corpora with known typos. A vocabulary of random lowercase words is drawn with
+ * Zipf-distributed frequencies, and each drawn word is turned into a typo with a known rate per kind of typo:
+ * alteration, transposition, insertion and deletion. The same seed always produces the same corpus.
+ */
+public class CorpusGenerator {
+
+    // letters used in words and typos
+    private static final String LETTERS = "abcdefghijklmnopqrstuvwxyz";
+
+    // lengths of words in the vocabulary
+    private static final int MIN_WORD_LENGTH = 6;
+    private static final int MAX_WORD_LENGTH = 12;
+
+    private Random random;
+    private String[] vocabulary;
+    private double[] cumulativeWeights;
+    private double alterationRate;
+    private double transpositionRate;
+    private double insertionRate;
+    private double deletionRate;
+
+    /**
+     * Initialize a generator.
+     * @param seed The seed of the random number generator.
+     * @param vocabularySize The number of distinct words.
+     * @param alterationRate The probability that a word is altered.
+     * @param transpositionRate The probability that two adjacent characters of a word are swapped.
+     * @param insertionRate The probability that a character is inserted into a word.
+     * @param deletionRate The probability that a character is deleted from a word.
+     */
+    public CorpusGenerator(long seed, int vocabularySize, double alterationRate, double transpositionRate,
+                           double insertionRate, double deletionRate) {
+        random = new Random(seed);
+        this.alterationRate = alterationRate;
+        this.transpositionRate = transpositionRate;
+        this.insertionRate = insertionRate;
+        this.deletionRate = deletionRate;
+
+        // draw distinct words
+        vocabulary = new String[vocabularySize];
+        Set<String> words = new HashSet<>();
+        for (int i = 0; i < vocabularySize; i++) {
+            String word;
+            do word = randomWord(); while (! words.add(word));
+            vocabulary[i] = word;
+        }
+
+        // weigh the word of rank r with 1 / r
+        cumulativeWeights = new double[vocabularySize];
+        double sum = 0;
+        for (int i = 0; i < vocabularySize; i++) {
+            sum += 1.0 / (i + 1);
+            cumulativeWeights[i] = sum;
+        }
+    }
+
+    /**
+     * Generate a corpus.
+     * @param numTokens The number of tokens in the corpus.
+     * @return The corpus.
+     */
+    public Corpus generate(int numTokens) {
+        Corpus corpus = new Corpus(numTokens);
+
+        for (int i = 0; i < numTokens; i++) {
+            String word = drawWord();
+            corpus.tokens.add(mutate(word));
+            corpus.words.add(word);
+        }
+
+        return corpus;
+    }
+
+    /**
+     * Draw a word from the vocabulary according to its frequency.
+     * @return A word.
+     */
+    private String drawWord() {
+        double point = random.nextDouble() * cumulativeWeights[cumulativeWeights.length - 1];
+        int index = Arrays.binarySearch(cumulativeWeights, point);
+        if (index < 0) index = -index - 1;
+        return vocabulary[Math.min(index, vocabulary.length - 1)];
+    }
+
+    /**
+     * Turn a word into a typo with the configured rates.
+     * @param word The word.
+     * @return A typo of the word, or the word itself.
+     */
+    private String mutate(String word) {
+        double point = random.nextDouble();
+        StringBuilder result = new StringBuilder(word);
+
+        if ((point -= alterationRate) < 0) {
+            int index = random.nextInt(word.length());
+            char c;
+            do c = randomLetter(); while (c == word.charAt(index));
+            result.setCharAt(index, c);
+        } else if ((point -= transpositionRate) < 0) {
+            int index = random.nextInt(word.length() - 1);
+            if (word.charAt(index) == word.charAt(index + 1)) return word;
+            result.setCharAt(index, word.charAt(index + 1));
+            result.setCharAt(index + 1, word.charAt(index));
+        } else if ((point -= insertionRate) < 0) {
+            result.insert(random.nextInt(word.length() + 1), randomLetter());
+        } else if ((point -= deletionRate) < 0) {
+            result.deleteCharAt(random.nextInt(word.length()));
+        }
+
+        return result.toString();
+    }
+
+    /**
+     * Generate a random word.
+     * @return A random word.
+     */
+    private String randomWord() {
+        int length = MIN_WORD_LENGTH + random.nextInt(MAX_WORD_LENGTH - MIN_WORD_LENGTH + 1);
+        StringBuilder word = new StringBuilder(length);
+        for (int i = 0; i < length; i++) word.append(randomLetter());
+        return word.toString();
+    }
+
+    /**
+     * Generate a random letter.
+     * @return A random lowercase letter.
+     */
+    private char randomLetter() {
+        return LETTERS.charAt(random.nextInt(LETTERS.length()));
+    }
+
+    /**
+     * A synthetic corpus: the generated tokens and the words they were generated from.
+     */
+    public static class Corpus {
+        public final List<String> tokens;
+        public final List<String> words;
+
+        private Corpus(int numTokens) {
+            tokens = new ArrayList<>(numTokens);
+            words = new ArrayList<>(numTokens);
+        }
+    }
+}
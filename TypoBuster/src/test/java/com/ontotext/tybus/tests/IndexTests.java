@@ -0,0 +1,79 @@
+package com.ontotext.tybus.tests;
+
+import com.ontotext.tybus.Index;
+import com.ontotext.tybus.Model;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IndexTests {
+    private static CorpusGenerator.Corpus corpus;
+    private static Index index;
+
+    @BeforeClass
+    public static void buildIndex() {
+        corpus = new CorpusGenerator(42, 2000, 0.01, 0.01, 0.01, 0.01).generate(500000);
+        Model model = new Model();
+        for (String token : corpus.tokens) model.addToken(token);
+        index = new Index(model);
+    }
+
+    @Test
+    public void precisionAndRecall() {
+        int numTypos = 0;
+        int numChanged = 0;
+        int numFixed = 0;
+
+        for (int i = 0; i < corpus.tokens.size(); i++) {
+            String token = corpus.tokens.get(i);
+            String word = corpus.words.get(i);
+            String correction = index.correct(token);
+            boolean isTypo = ! token.equals(word);
+
+            if (isTypo) numTypos++;
+            if (! correction.equals(token)) numChanged++;
+            if (isTypo && correction.equals(word)) numFixed++;
+        }
+
+        double precision = (double) numFixed / numChanged;
+        double recall = (double) numFixed / numTypos;
+        assertTrue("precision " + precision, precision >= 0.95);
+        assertTrue("recall " + recall, recall >= 0.75);
+    }
+
+    @Test
+    public void correctFullyMatchesCorrectWithEnoughCorrections() {
+        for (String token : corpus.tokens) {
+            assertEquals(index.correct(token, Integer.MAX_VALUE), index.correctFully(token));
+        }
+    }
+
+    @Test
+    public void chainsAreResolved() {
+
+        // "strinqq" is a typo of "strinq", which is a typo of "string"
+        Model model = new Model();
+        model.addToken("string", 200);
+        model.addToken("strinq", 10);
+        model.addToken("strinqq", 1);
+        Index chainIndex = new Index(model);
+
+        assertEquals("strinq", chainIndex.correct("strinqq"));
+        assertEquals("string", chainIndex.correct("strinqq", 2));
+        assertEquals("string", chainIndex.correct("strinqq", 3));
+        assertEquals("strinqq", chainIndex.correct("strinqq", 0));
+        assertEquals("string", chainIndex.correctFully("strinqq"));
+        assertEquals("string", chainIndex.correct("strinq"));
+        assertEquals("string", chainIndex.correctFully("string"));
+        assertEquals("2 typos\n  chain length 1: 1 typos\n  chain length 2: 1 typos", chainIndex.statistics());
+    }
+
+    @Test
+    public void correctLeavesWordsAlone() {
+        for (String word : corpus.words.subList(0, 10000)) {
+            assertEquals(word, index.correct(word));
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.ontotext.tybus.tests;
+
+import com.ontotext.tybus.Model;
+import com.ontotext.tybus.ModelFile;
+import com.ontotext.tybus.Token;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+
+public class ModelTests {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void mergeSumsCounts() {
+        Model one = model(new CorpusGenerator(1, 500, 0.02, 0.02, 0.02, 0.02).generate(20000).tokens);
+        Model two = model(new CorpusGenerator(2, 500, 0.02, 0.02, 0.02, 0.02).generate(20000).tokens);
+        Model merged = Model.merge(one, two);
+
+        Map<String, Integer> expected = counts(one);
+        for (Map.Entry<String, Integer> entry : counts(two).entrySet()) {
+            Integer count = expected.get(entry.getKey());
+            expected.put(entry.getKey(), (count == null ? 0 : count) + entry.getValue());
+        }
+
+        assertEquals(expected, counts(merged));
+    }
+
+    @Test
+    public void streamingMergeMatchesInMemoryMerge() throws IOException {
+        List<Model> models = new ArrayList<>();
+        List<File> files = new ArrayList<>();
+
+        for (int seed = 0; seed < 3; seed++) {
+            Model model = model(new CorpusGenerator(seed, 500, 0.02, 0.02, 0.02, 0.02).generate(20000).tokens);
+            File file = folder.newFile();
+            ModelFile.save(file, model);
+            models.add(model);
+            files.add(file);
+        }
+
+        File output = folder.newFile();
+        ModelFile.merge(files, output, 3);
+        Model expected = Model.merge(3, models.toArray(new Model[models.size()]));
+        assertEquals(counts(expected), counts(ModelFile.load(output)));
+    }
+
+    private static Model model(List<String> tokens) {
+        Model model = new Model();
+        for (String token : tokens) model.addToken(token);
+        return model;
+    }
+
+    private static Map<String, Integer> counts(Model model) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (Token token : model.getTokens()) counts.put(token.getContent(), token.getNumOccurrences());
+        return counts;
+    }
+}
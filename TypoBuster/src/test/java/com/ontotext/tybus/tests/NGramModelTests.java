@@ -0,0 +1,116 @@
+package com.ontotext.tybus.tests;
+
+import com.ontotext.tybus.Index;
+import com.ontotext.tybus.Model;
+import com.ontotext.tybus.NGramModel;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NGramModelTests {
+
+    @Test
+    public void countsAreNeverUnderestimated() {
+        List<String> tokens = new CorpusGenerator(7, 300, 0, 0, 0, 0).generate(20000).tokens;
+
+        // a small sketch has many collisions
+        NGramModel ngrams = new NGramModel(2, 1 << 8);
+        Map<String, Integer> bigrams = new HashMap<>();
+        Map<String, Integer> trigrams = new HashMap<>();
+
+        for (int i = 0; i < tokens.size(); i++) {
+            String previous2 = i < 2 ? null : tokens.get(i - 2);
+            String previous = i < 1 ? null : tokens.get(i - 1);
+            ngrams.add(previous2, previous, tokens.get(i));
+            if (previous != null) increment(bigrams, previous + " " + tokens.get(i));
+            if (previous2 != null) increment(trigrams, previous2 + " " + previous + " " + tokens.get(i));
+        }
+
+        assertEquals(bigrams.values().stream().mapToInt(Integer::intValue).sum() +
+                trigrams.values().stream().mapToInt(Integer::intValue).sum(), ngrams.numNGrams());
+
+        for (Map.Entry<String, Integer> entry : bigrams.entrySet()) {
+            String[] bigram = entry.getKey().split(" ");
+            assertTrue(ngrams.count(bigram[0], bigram[1]) >= entry.getValue());
+        }
+
+        for (Map.Entry<String, Integer> entry : trigrams.entrySet()) {
+            String[] trigram = entry.getKey().split(" ");
+            assertTrue(ngrams.count(trigram[0], trigram[1], trigram[2]) >= entry.getValue());
+        }
+    }
+
+    @Test
+    public void bigramsAndTrigramsAreCountedApart() {
+        NGramModel ngrams = new NGramModel();
+        ngrams.add("play", "video", "games");
+        ngrams.add(null, "video", "games");
+        ngrams.add(null, null, "games");
+
+        assertEquals(2, ngrams.count("video", "games"));
+        assertEquals(1, ngrams.count("play", "video", "games"));
+        assertEquals(0, ngrams.count("games", "video"));
+        assertEquals(0, ngrams.count(null, "games"));
+        assertEquals(3, ngrams.numNGrams());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void widthMustBePowerOfTwo() {
+        new NGramModel(4, 1000);
+    }
+
+    @Test
+    public void candidatesAreScoredInContext() {
+        NGramModel ngrams = new NGramModel();
+        Index index = new Index(ambiguousModel());
+
+        // "cames" is a typo of both "games" and "cakes"
+        assertTrue(index.dependsOnContext("cames", ngrams));
+        assertFalse(index.dependsOnContext("cames", null));
+        assertFalse(index.dependsOnContext("games", ngrams));
+        assertEquals(2, index.candidates("cames").size());
+
+        for (int i = 0; i < 5; i++) {
+            ngrams.add("play", "video", "games");
+            ngrams.add("bake", "chocolate", "cakes");
+            ngrams.add(null, "cakes", "recipes");
+        }
+
+        assertEquals("games", index.correct(null, "video", "cames", null, ngrams));
+        assertEquals("cakes", index.correct(null, "chocolate", "cames", null, ngrams));
+        assertEquals("cakes", index.correct(null, null, "cames", "recipes", ngrams));
+
+        // the next token is taken as corrected without context
+        assertEquals("cakes", index.correct(null, null, "cames", "recipess", ngrams));
+
+        // without context, the typo is corrected as without n-grams
+        assertEquals(index.correct("cames"), index.correct(null, null, "cames", null, ngrams));
+        assertEquals(index.correct("cames"), index.correct(null, "video", "cames", null, null));
+    }
+
+    /**
+     * Make a model in which "cames" is a typo of both "games" and "cakes", and "recipess" is a typo of "recipes".
+     */
+    static Model ambiguousModel() {
+        Model model = new Model();
+        model.addToken("games", 100);
+        model.addToken("cakes", 100);
+        model.addToken("cames", 1);
+        model.addToken("recipes", 100);
+        model.addToken("recipess", 1);
+        model.addToken("video", 100);
+        model.addToken("chocolate", 100);
+        return model;
+    }
+
+    private static void increment(Map<String, Integer> counts, String key) {
+        Integer count = counts.get(key);
+        counts.put(key, count == null ? 1 : count + 1);
+    }
+}
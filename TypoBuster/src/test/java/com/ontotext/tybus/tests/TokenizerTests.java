@@ -0,0 +1,56 @@
+package com.ontotext.tybus.tests;
+
+import com.ontotext.tybus.Tokenizer;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TokenizerTests {
+
+    @Test
+    public void tokensAreLettersAndDigits() {
+        assertEquals(Arrays.asList("Größe", "42", "naïve", "x2"), tokens("  Größe: 42 (naïve) x2!"));
+        assertEquals(Arrays.asList("one"), tokens("one"));
+        assertEquals(new ArrayList<String>(), tokens(" ... "));
+        assertEquals(new ArrayList<String>(), tokens(""));
+    }
+
+    @Test
+    public void offsetsCoverTokens() {
+        String text = "<p>Hello, world</p>";
+        Tokenizer tokenizer = new Tokenizer(text);
+        StringBuilder separators = new StringBuilder();
+        int offset = 0;
+
+        while (tokenizer.next()) {
+            separators.append(text, offset, tokenizer.start()).append('|');
+            offset = tokenizer.end();
+        }
+
+        separators.append(text, offset, text.length());
+        assertEquals("<|>|, |</|>", separators.toString());
+    }
+
+    @Test
+    public void boundariesNeverSplitTokens() {
+        char[] text = "one two, three".toCharArray();
+        assertEquals(9, Tokenizer.lastBoundary(text, text.length));
+        assertEquals(9, Tokenizer.lastBoundary(text, 9));
+        assertEquals(0, Tokenizer.lastBoundary(text, 3));
+        assertEquals(4, Tokenizer.lastTokenStart(text, 9));
+        assertEquals(4, Tokenizer.lastTokenStart(text, 7));
+        assertEquals(0, Tokenizer.lastTokenStart(text, 4));
+        assertEquals(0, Tokenizer.lastTokenStart(" ,".toCharArray(), 2));
+    }
+
+    private static List<String> tokens(String text) {
+        List<String> tokens = new ArrayList<>();
+        Tokenizer tokenizer = new Tokenizer(text);
+        while (tokenizer.next()) tokens.add(tokenizer.token());
+        return tokens;
+    }
+}
@@ -0,0 +1,215 @@
+package com.ontotext.ehri.ead;
+
+import org.basex.core.Context;
+import org.basex.query.QueryException;
+import org.basex.query.QueryProcessor;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Turns the XQuery expressions of a mapping table into an XQuery library module, so that each distinct expression
+ * is parsed and compiled once per run instead of once per evaluation. Each expression becomes a function of the
+ * context item, and the module exposes a map from expression text to function which transform.xqm looks up before
+ * falling back to xquery:eval.
+ *
+ * Before an expression goes into the module, it is parsed on its own. An expression that does not parse is reported
+ * with the target paths where it is used and left out, so it fails alone when it is evaluated instead of breaking the
+ * whole module.
+ */
+public class ExpressionCompiler {
+    public static final String MODULE_NAMESPACE = "compiled";
+    public static final String FUNCTIONS_NAME = "functions";
+
+    private static final String ENCODING = "UTF-8";
+    private static final String COLUMN_SEPARATOR = "\t";
+    private static final String[] EXPRESSION_COLUMNS = { "source-node", "value" };
+    private static final String TARGET_PATH_COLUMN = "target-path";
+    private static final String TARGET_NODE_COLUMN = "target-node";
+
+    /**
+     * Collect the distinct expressions in a mapping table.
+     * @param configuration The mapping table in TSV format with a header line.
+     * @return The distinct expressions in order of appearance.
+     */
+    public static Map<String, String> collectExpressions(String configuration) {
+        Map<String, String> expressions = new LinkedHashMap<>();
+
+        // name each distinct expression
+        for (String expression : locateExpressions(configuration).keySet()) {
+            expressions.put(expression, "e" + (expressions.size() + 1));
+        }
+
+        return expressions;
+    }
+
+    /**
+     * Find where the distinct expressions of a mapping table are used.
+     * @param configuration The mapping table in TSV format with a header line.
+     * @return Map from the distinct non-empty expressions in order of appearance to the target paths and target nodes
+     * of the records that use them.
+     */
+    public static Map<String, Set<String>> locateExpressions(String configuration) {
+        Map<String, Set<String>> locations = new LinkedHashMap<>();
+        String[] lines = configuration.split("\n");
+        if (lines.length == 0) return locations;
+
+        // find the columns with expressions and the columns of the target
+        String[] header = stripReturn(lines[0]).split(COLUMN_SEPARATOR, -1);
+        int[] columns = new int[EXPRESSION_COLUMNS.length];
+        for (int i = 0; i < EXPRESSION_COLUMNS.length; i++) columns[i] = column(header, EXPRESSION_COLUMNS[i]);
+        int targetPathColumn = column(header, TARGET_PATH_COLUMN);
+        int targetNodeColumn = column(header, TARGET_NODE_COLUMN);
+
+        for (int l = 1; l < lines.length; l++) {
+            String[] fields = stripReturn(lines[l]).split(COLUMN_SEPARATOR, -1);
+            String location = field(fields, targetPathColumn) + field(fields, targetNodeColumn);
+
+            for (int column : columns) {
+                String expression = field(fields, column);
+                if (expression.isEmpty()) continue;
+                Set<String> expressionLocations = locations.get(expression);
+
+                if (expressionLocations == null) {
+                    expressionLocations = new LinkedHashSet<>();
+                    locations.put(expression, expressionLocations);
+                }
+
+                expressionLocations.add(location);
+            }
+        }
+
+        return locations;
+    }
+
+    /**
+     * Write a library module with one function per distinct expression of a mapping table, without checking the
+     * expressions.
+     * @param configuration The mapping table in TSV format with a header line.
+     * @param xtraURI The URI of the module with additional functions used in mapping tables.
+     * @param moduleFile The file to write the module to.
+     * @return The number of compiled expressions.
+     * @throws IOException
+     */
+    public static int compile(String configuration, String xtraURI, File moduleFile) throws IOException {
+        return compile(configuration, xtraURI, moduleFile, null);
+    }
+
+    /**
+     * Write a library module with one function per distinct expression of a mapping table. Each expression is parsed
+     * on its own first; expressions that do not parse are reported on standard error with the target paths where they
+     * are used, and are left out of the module.
+     * @param configuration The mapping table in TSV format with a header line.
+     * @param xtraURI The URI of the module with additional functions used in mapping tables.
+     * @param moduleFile The file to write the module to.
+     * @param context The context to parse the expressions in, or null to write them without checking.
+     * @return The number of compiled expressions.
+     * @throws IOException
+     */
+    public static int compile(String configuration, String xtraURI, File moduleFile, Context context) throws IOException {
+        Map<String, Set<String>> locations = locateExpressions(configuration);
+        Map<String, String> expressions = collectExpressions(configuration);
+
+        // leave out expressions that would break the module
+        if (context != null) {
+            for (Map.Entry<String, Set<String>> location : locations.entrySet()) {
+                String error = check(location.getKey(), xtraURI, context);
+                if (error == null) continue;
+                expressions.remove(location.getKey());
+                System.err.println("ERROR: cannot compile expression for " + String.join(", ", location.getValue()) +
+                        ": " + error);
+            }
+        }
+
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(moduleFile), ENCODING))) {
+            writer.write("xquery version \"3.0\";\n\n");
+            writer.write("module namespace " + MODULE_NAMESPACE + " = \"" + MODULE_NAMESPACE + "\";\n");
+            writer.write(importXtra(xtraURI) + "\n");
+
+            // one function per expression, evaluated with the argument as context item
+            for (Map.Entry<String, String> expression : expressions.entrySet()) {
+                writer.write("declare function " + MODULE_NAMESPACE + ":" + expression.getValue() +
+                        "($" + MODULE_NAMESPACE + ":context as item()) as item()* {\n");
+                writer.write("  " + body(expression.getKey()) + "\n};\n\n");
+            }
+
+            // map from expression text to function
+            writer.write("declare function " + MODULE_NAMESPACE + ":" + FUNCTIONS_NAME + "() as map(*) {\n  map {");
+            String separator = "\n    ";
+            for (Map.Entry<String, String> expression : expressions.entrySet()) {
+                writer.write(separator + "\"" + escape(expression.getKey()) + "\": " +
+                        MODULE_NAMESPACE + ":" + expression.getValue() + "#1");
+                separator = ",\n    ";
+            }
+            writer.write("\n  }\n};\n");
+        }
+
+        return expressions.size();
+    }
+
+    /**
+     * Parse an expression on its own as it would be in the module.
+     * @param expression The expression.
+     * @param xtraURI The URI of the module with additional functions used in mapping tables.
+     * @param context The context to parse the expression in.
+     * @return The error message, or null if the expression parses.
+     */
+    private static String check(String expression, String xtraURI, Context context) {
+        String query = importXtra(xtraURI) +
+                "declare namespace " + MODULE_NAMESPACE + " = \"" + MODULE_NAMESPACE + "\";\n" +
+                "declare variable $" + MODULE_NAMESPACE + ":context external;\n" + body(expression);
+
+        try (QueryProcessor processor = new QueryProcessor(query, context)) {
+            processor.parse();
+            return null;
+        } catch (QueryException e) {
+            return e.getMessage();
+        }
+    }
+
+    private static String importXtra(String xtraURI) {
+        return "import module namespace xtra = \"xtra\" at \"" + escape(xtraURI) + "\";\n";
+    }
+
+    /**
+     * Make the body of the function of an expression, which evaluates it with the argument as context item.
+     * @param expression The expression.
+     * @return The body of the function.
+     */
+    private static String body(String expression) {
+        return "$" + MODULE_NAMESPACE + ":context ! (" + expression + "\n)";
+    }
+
+    private static int column(String[] header, String name) {
+        for (int i = 0; i < header.length; i++) {
+            if (header[i].equals(name)) return i;
+        }
+
+        return -1;
+    }
+
+    private static String field(String[] fields, int column) {
+        return column < 0 || column >= fields.length ? "" : fields[column];
+    }
+
+    /**
+     * Escape a string for use in an XQuery string literal.
+     * @param string The string.
+     * @return The escaped string (without the surrounding quotes).
+     */
+    private static String escape(String string) {
+        return string.replace("&", "&amp;").replace("\"", "\"\"");
+    }
+
+    private static String stripReturn(String line) {
+        return line.endsWith("\r") ? line.substring(0, line.length() - 1) : line;
+    }
+}
@@ -10,6 +10,8 @@ import com.google.api.client.http.HttpTransport;
 import com.google.api.client.json.JsonFactory;
 import com.google.api.client.json.jackson2.JacksonFactory;
 import com.google.api.client.util.store.FileDataStoreFactory;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.DriveScopes;
 import com.google.api.services.sheets.v4.Sheets;
 import com.google.api.services.sheets.v4.SheetsScopes;
 import com.google.api.services.sheets.v4.model.ValueRange;
@@ -29,8 +31,11 @@ public class GoogleSheets {
     /** Application name. */
     private static final String APPLICATION_NAME = "EAD Generator";
 
-    /** Directory to store user credentials for this application. */
-    private static final File DATA_STORE_DIR = new File(System.getProperty("user.home"), ".credentials/sheets.googleapis.com-ead-generator");
+    /**
+     * Directory to store user credentials for this application. Credentials are stored per set of scopes, so that
+     * credentials authorized for fewer scopes are not reused; the user is asked to authorize the application again.
+     */
+    private static final File DATA_STORE_DIR = new File(System.getProperty("user.home"), ".credentials/sheets.googleapis.com-ead-generator-drive-metadata");
 
     /** Global instance of the {@link FileDataStoreFactory}. */
     private static FileDataStoreFactory DATA_STORE_FACTORY;
@@ -44,10 +49,19 @@ public class GoogleSheets {
     /**
      * Global instance of the scopes required by this application.
      *
-     * If modifying these scopes, delete your previously saved credentials
-     * at ~/.credentials/sheets.googleapis.com-ead-generator
+     * If modifying these scopes, rename DATA_STORE_DIR, or delete your previously saved credentials
+     * at ~/.credentials/sheets.googleapis.com-ead-generator-drive-metadata
      */
-    private static final List<String> SCOPES = Arrays.asList(SheetsScopes.SPREADSHEETS_READONLY);
+    private static final List<String> SCOPES = Arrays.asList(SheetsScopes.SPREADSHEETS_READONLY, DriveScopes.DRIVE_METADATA_READONLY);
+
+    /** Authorized credential, shared by all API clients once authorized. */
+    private static Credential CREDENTIAL;
+
+    /** Sheets API client, built once. */
+    private static Sheets SHEETS_SERVICE;
+
+    /** Drive API client, built once (used for spreadsheet metadata). */
+    private static Drive DRIVE_SERVICE;
 
     static {
         try {
@@ -81,15 +95,56 @@ public class GoogleSheets {
     }
 
     /**
-     * Build and return an authorized Sheets API client service.
+     * Return the authorized Credential, authorizing on first use only.
+     * @return an authorized Credential object.
+     * @throws IOException
+     */
+    private static synchronized Credential getCredential() throws IOException {
+        if (CREDENTIAL == null) CREDENTIAL = authorize();
+        return CREDENTIAL;
+    }
+
+    /**
+     * Return an authorized Sheets API client service, building it on first use only.
      * @return an authorized Sheets API client service
      * @throws IOException
      */
-    public static Sheets getSheetsService() throws IOException {
-        Credential credential = authorize();
-        return new Sheets.Builder(HTTP_TRANSPORT, JSON_FACTORY, credential)
-                .setApplicationName(APPLICATION_NAME)
-                .build();
+    public static synchronized Sheets getSheetsService() throws IOException {
+        if (SHEETS_SERVICE == null) {
+            SHEETS_SERVICE = new Sheets.Builder(HTTP_TRANSPORT, JSON_FACTORY, getCredential())
+                    .setApplicationName(APPLICATION_NAME)
+                    .build();
+        }
+
+        return SHEETS_SERVICE;
+    }
+
+    /**
+     * Return an authorized Drive API client service, building it on first use only.
+     * @return an authorized Drive API client service
+     * @throws IOException
+     */
+    public static synchronized Drive getDriveService() throws IOException {
+        if (DRIVE_SERVICE == null) {
+            DRIVE_SERVICE = new Drive.Builder(HTTP_TRANSPORT, JSON_FACTORY, getCredential())
+                    .setApplicationName(APPLICATION_NAME)
+                    .build();
+        }
+
+        return DRIVE_SERVICE;
+    }
+
+    /**
+     * Return the revision of the given spreadsheet, which changes whenever the spreadsheet is modified.
+     * @param spreadsheetId The ID of the spreadsheet.
+     * @return The version number of the spreadsheet file followed by its modification time.
+     * @throws IOException
+     */
+    public static String getRevision(String spreadsheetId) throws IOException {
+        com.google.api.services.drive.model.File file = getDriveService().files().get(spreadsheetId)
+                .setFields("version,modifiedTime")
+                .execute();
+        return file.getVersion() + "@" + file.getModifiedTime();
     }
 
     /**
@@ -0,0 +1,27 @@
+package com.ontotext.ehri.ead;
+
+import java.io.IOException;
+
+/**
+ * Takes mapping tables from Google spreadsheets through the local cache. The name of a mapping table is the ID of
+ * its spreadsheet.
+ */
+public class GoogleSheetsMappingSource implements MappingSource {
+
+    /** The range of a spreadsheet that holds the mapping table. */
+    public static final String RANGE = "A1:D";
+
+    private MappingTableCache cache;
+
+    /**
+     * @param cache The cache of mapping tables.
+     */
+    public GoogleSheetsMappingSource(MappingTableCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public String getTable(String name) throws IOException {
+        return cache.getTable(name, RANGE);
+    }
+}
@@ -0,0 +1,30 @@
+package com.ontotext.ehri.ead;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps mapping tables in memory, for tests and benchmarks that should not depend on files or Google.
+ */
+public class InMemoryMappingSource implements MappingSource {
+    private Map<String, String> tables = new HashMap<>();
+
+    /**
+     * Add a mapping table.
+     * @param name The name of the mapping table.
+     * @param table The mapping table in TSV format.
+     * @return This source.
+     */
+    public InMemoryMappingSource put(String name, String table) {
+        tables.put(name, table);
+        return this;
+    }
+
+    @Override
+    public String getTable(String name) throws IOException {
+        String table = tables.get(name);
+        if (table == null) throw new IOException("no mapping table named " + name);
+        return table;
+    }
+}
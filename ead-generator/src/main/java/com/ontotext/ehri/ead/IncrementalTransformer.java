@@ -0,0 +1,102 @@
+package com.ontotext.ehri.ead;
+
+import org.basex.query.QueryException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Transforms only the source documents that changed since the last run, according to the manifest in the output
+ * directory. If the mapping table or the structure file changed, every source document counts as changed. Target
+ * documents of changed source documents are removed before transforming them again, and those of source documents
+ * that no longer exist are removed for good. Source documents in the input directory are hashed as files; those in a
+ * database are hashed in BaseX after serializing them.
+ */
+public class IncrementalTransformer {
+
+    /**
+     * Transform the changed source documents of an input directory or a database and update the manifest. The
+     * configuration should have been checked with Transformer.checkConfiguration.
+     * @param session The session with the namespaces and the parser options.
+     * @param structurePath The path to the EAD structure file.
+     * @param configuration The mapping table in TSV format.
+     * @param compiledPath The path to the compiled expressions module, or the empty string.
+     * @param inputDir The directory of the source documents (must end with slash).
+     * @param database The name of the database with the source documents, or the empty string to read them from the input directory.
+     * @param outputDir The directory of the target documents (must end with slash).
+     * @param numThreads The number of worker threads.
+     * @param streaming Whether to write target documents from Java as they are produced.
+     * @return The number of source documents transformed successfully.
+     * @throws IOException
+     */
+    public static int transform(TransformerSession session, String structurePath, String configuration,
+                                String compiledPath, String inputDir, String database, String outputDir,
+                                int numThreads, boolean streaming) throws IOException {
+        File outputDirFile = new File(outputDir);
+        outputDirFile.mkdirs();
+        Manifest manifest = Manifest.load(outputDirFile);
+        Map<String, String> documentHashes = manifest.getDocumentHashes();
+        Set<String> removed = new HashSet<>(documentHashes.keySet());
+
+        // everything changed if the mapping table or the structure changed
+        String configurationHash = Manifest.hash(configuration);
+        String structureHash = Manifest.hash(new File(structurePath));
+        if (! configurationHash.equals(manifest.getConfigurationHash()) || ! structureHash.equals(manifest.getStructureHash())) {
+            documentHashes.clear();
+            manifest.setConfigurationHash(configurationHash);
+            manifest.setStructureHash(structureHash);
+        }
+
+        // hash the source documents
+        Map<String, String> newHashes = new LinkedHashMap<>();
+        if (database.isEmpty()) {
+            for (String document : ParallelTransformer.listDocuments(inputDir)) {
+                newHashes.put(document, Manifest.hash(new File(inputDir, document)));
+            }
+        } else {
+
+            try {
+                newHashes = session.hashDocuments(database);
+            } catch (QueryException e) {
+                e.printStackTrace();
+                return 0;
+            }
+        }
+
+        // find changed source documents
+        List<String> changed = new ArrayList<>();
+        for (Map.Entry<String, String> document : newHashes.entrySet()) {
+            if (! document.getValue().equals(documentHashes.get(document.getKey()))) changed.add(document.getKey());
+        }
+
+        // remove target documents of removed source documents
+        removed.removeAll(newHashes.keySet());
+        for (String document : removed) {
+            ParallelTransformer.deleteTargets(outputDir, document);
+            documentHashes.remove(document);
+        }
+
+        // remove stale target documents of changed source documents (they may now produce fewer)
+        for (String document : changed) {
+            ParallelTransformer.deleteTargets(outputDir, document);
+            documentHashes.remove(document);
+        }
+
+        // record the changed source documents that were transformed successfully
+        List<String> transformed = new ArrayList<>();
+        if (! changed.isEmpty()) {
+            transformed = ParallelTransformer.transform(session, configuration, compiledPath, inputDir, database,
+                    changed, outputDir, numThreads, streaming);
+            for (String document : transformed) documentHashes.put(document, newHashes.get(document));
+        }
+
+        manifest.save(outputDirFile);
+        return transformed.size();
+    }
+}
@@ -0,0 +1,139 @@
+package com.ontotext.ehri.ead;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Record of what the target documents in an output directory were made from: a content hash of each source document,
+ * and hashes of the mapping table and the structure file. It is kept in the output directory as a TSV file with one
+ * line per hash, so that a rerun can tell which source documents changed since the last run.
+ */
+public class Manifest {
+    public static final String FILE_NAME = ".ead-generator-manifest.tsv";
+
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final String CONFIGURATION_KEY = "#configuration";
+    private static final String STRUCTURE_KEY = "#structure";
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private String configurationHash = "";
+    private String structureHash = "";
+    private Map<String, String> documentHashes = new TreeMap<>();
+
+    /**
+     * Load the manifest of an output directory.
+     * @param outputDir The output directory.
+     * @return The manifest, which is empty if the directory has none.
+     * @throws IOException
+     */
+    public static Manifest load(File outputDir) throws IOException {
+        Manifest manifest = new Manifest();
+        File file = new File(outputDir, FILE_NAME);
+        if (! file.isFile()) return manifest;
+
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            int tab = line.lastIndexOf('\t');
+            if (tab < 0) continue;
+            String key = line.substring(0, tab);
+            String hash = line.substring(tab + 1);
+
+            if (key.equals(CONFIGURATION_KEY)) manifest.configurationHash = hash;
+            else if (key.equals(STRUCTURE_KEY)) manifest.structureHash = hash;
+            else manifest.documentHashes.put(key, hash);
+        }
+
+        return manifest;
+    }
+
+    /**
+     * Save the manifest to an output directory, replacing the previous one atomically.
+     * @param outputDir The output directory.
+     * @throws IOException
+     */
+    public void save(File outputDir) throws IOException {
+        File file = new File(outputDir, FILE_NAME);
+        File tempFile = new File(outputDir, FILE_NAME + ".tmp");
+
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8))) {
+            writer.write(CONFIGURATION_KEY + "\t" + configurationHash + "\n");
+            writer.write(STRUCTURE_KEY + "\t" + structureHash + "\n");
+            for (Map.Entry<String, String> entry : documentHashes.entrySet()) {
+                writer.write(entry.getKey() + "\t" + entry.getValue() + "\n");
+            }
+        }
+
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public String getConfigurationHash() {
+        return configurationHash;
+    }
+
+    public void setConfigurationHash(String configurationHash) {
+        this.configurationHash = configurationHash;
+    }
+
+    public String getStructureHash() {
+        return structureHash;
+    }
+
+    public void setStructureHash(String structureHash) {
+        this.structureHash = structureHash;
+    }
+
+    /**
+     * @return Map from source document name to content hash.
+     */
+    public Map<String, String> getDocumentHashes() {
+        return documentHashes;
+    }
+
+    /**
+     * Hash a string.
+     * @param string The string.
+     * @return The hash in hexadecimal.
+     */
+    public static String hash(String string) {
+        MessageDigest digest = newDigest();
+        digest.update(string.getBytes(StandardCharsets.UTF_8));
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Hash the content of a file.
+     * @param file The file.
+     * @return The hash in hexadecimal.
+     * @throws IOException
+     */
+    public static String hash(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        try (InputStream input = new FileInputStream(file)) {
+            for (int read; (read = input.read(buffer)) > 0; ) digest.update(buffer, 0, read);
+        }
+
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) hex.append(String.format("%02x", b));
+        return hex.toString();
+    }
+}
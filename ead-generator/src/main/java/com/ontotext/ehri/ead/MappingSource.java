@@ -0,0 +1,18 @@
+package com.ontotext.ehri.ead;
+
+import java.io.IOException;
+
+/**
+ * A source of mapping tables. Each transformation in config.yml names its mapping table, and the source turns that
+ * name into the table in TSV format with a header line (target-path, target-node, source-node, value).
+ */
+public interface MappingSource {
+
+    /**
+     * Return a mapping table.
+     * @param name The name of the mapping table as given in config.yml.
+     * @return The mapping table in TSV format.
+     * @throws IOException If the mapping table cannot be read.
+     */
+    String getTable(String name) throws IOException;
+}
@@ -0,0 +1,116 @@
+package com.ontotext.ehri.ead;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Local on-disk cache of mapping tables fetched from Google Sheets. Each table is stored as TSV together with the
+ * revision of the spreadsheet it was fetched at, keyed by spreadsheet ID and range. When online, a cached table is
+ * used as long as the spreadsheet revision has not changed. When offline, cached tables are used as they are.
+ *
+ * If Google cannot be reached, a cached table is used with a warning. Any other failure, such as a denied request or
+ * an unknown spreadsheet, is a configuration error and is thrown even if the table is cached.
+ */
+public class MappingTableCache {
+
+    /** Default directory of the cache. */
+    public static final File DEFAULT_DIR = new File(System.getProperty("user.home"), ".cache/ead-generator/mapping-tables");
+
+    private static final String TABLE_SUFFIX = ".tsv";
+    private static final String REVISION_SUFFIX = ".revision";
+
+    private File dir;
+    private boolean offline;
+
+    /**
+     * @param dir The directory of the cache.
+     * @param offline If true, never contact Google and use cached tables only.
+     */
+    public MappingTableCache(File dir, boolean offline) {
+        this.dir = dir;
+        this.offline = offline;
+    }
+
+    /**
+     * Return a mapping table in TSV format, from the cache if it is up to date and from Google Sheets otherwise.
+     * @param spreadsheetId The ID of the spreadsheet.
+     * @param range The range to take.
+     * @return The mapping table in TSV format.
+     * @throws IOException If the table is neither cached nor can be fetched.
+     */
+    public String getTable(String spreadsheetId, String range) throws IOException {
+        File tableFile = new File(dir, key(spreadsheetId, range) + TABLE_SUFFIX);
+        File revisionFile = new File(dir, key(spreadsheetId, range) + REVISION_SUFFIX);
+
+        if (offline) {
+            if (! tableFile.isFile()) {
+                throw new IOException("no cached mapping table for spreadsheet " + spreadsheetId + " range " + range);
+            }
+
+            return read(tableFile);
+        }
+
+        try {
+
+            // revalidate cached table against the current revision of the spreadsheet
+            String revision = GoogleSheets.getRevision(spreadsheetId);
+            if (tableFile.isFile() && revisionFile.isFile() && read(revisionFile).equals(revision)) {
+                return read(tableFile);
+            }
+
+            // fetch table and update cache
+            String table = GoogleSheets.toString(GoogleSheets.getValues(spreadsheetId, range), "\n", "\t");
+            dir.mkdirs();
+            write(tableFile, table);
+            write(revisionFile, revision);
+            return table;
+
+        } catch (IOException e) {
+
+            // fall back to cached table if Google cannot be reached
+            if (! isConnectivityFailure(e) || ! tableFile.isFile()) throw e;
+            System.err.println("WARNING: using cached mapping table for spreadsheet " + spreadsheetId + ": " + e.getMessage());
+            return read(tableFile);
+        }
+    }
+
+    /**
+     * Test if an exception means that Google could not be reached, as opposed to a request that Google rejected.
+     * @param e The exception.
+     * @return True if the exception or one of its causes is a connectivity failure; false otherwise.
+     */
+    private static boolean isConnectivityFailure(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof UnknownHostException || cause instanceof SocketTimeoutException ||
+                    cause instanceof ConnectException) return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Make a file name from a spreadsheet ID and range.
+     */
+    private static String key(String spreadsheetId, String range) {
+        return (spreadsheetId + "_" + range).replaceAll("[^A-Za-z0-9_\\-]", "_");
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write a file atomically, so that an interrupted run never leaves a partial table in the cache.
+     */
+    private static void write(File file, String content) throws IOException {
+        File tempFile = new File(file.getPath() + ".tmp");
+        Files.write(tempFile.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,351 @@
+package com.ontotext.ehri.ead;
+
+import org.basex.core.Context;
+import org.basex.io.serial.Serializer;
+import org.basex.query.QueryException;
+import org.basex.query.QueryProcessor;
+import org.basex.query.iter.Iter;
+import org.basex.query.value.item.Item;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+/**
+ * Transforms the documents of an input directory in parallel. The directory is listed in Java and each document is
+ * transformed by /xquery/transform-document.xqy on a pool of workers. Each worker has its own BaseX context, in which
+ * it parses and indexes the configuration and loads the precompiled expressions module once, with
+ * /xquery/load-configuration.xqy; the query of each document is only bound to these values and to the variables of
+ * the document. Target documents are named as in the sequential run. The worker contexts are derived from the context
+ * of the session, so source documents are parsed with the same options.
+ *
+ * In streaming mode, /xquery/transform-stream.xqy is used instead: its result is iterated and each target document is
+ * serialized to its file as soon as it is produced, so memory use is bounded by one target document rather than all
+ * target documents of a source document.
+ */
+public class ParallelTransformer {
+    private static final String QUERY_PATH = "/xquery/transform-document.xqy";
+    private static final String STREAM_QUERY_PATH = "/xquery/transform-stream.xqy";
+    private static final String LOAD_QUERY_PATH = "/xquery/load-configuration.xqy";
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * State of a worker thread: its BaseX context, and the configuration records and precompiled expressions, which
+     * are loaded once per worker and reused for every document it transforms. The query that loaded them stays open
+     * until the worker is closed, as the values belong to it.
+     */
+    private static class Worker {
+        final Context context;
+        QueryProcessor loader;
+        Item records;
+        Item compiled;
+
+        Worker(Context context) {
+            this.context = context;
+        }
+
+        /**
+         * Load the configuration records and the precompiled expressions the first time only.
+         * @param query The text of load-configuration.xqy.
+         * @param configuration The mapping table in TSV format.
+         * @param compiledPath The path to the compiled expressions module, or the empty string.
+         * @throws QueryException
+         */
+        void load(String query, String configuration, String compiledPath) throws QueryException {
+            if (loader != null) return;
+            QueryProcessor processor = new QueryProcessor(query, context);
+
+            try {
+                processor.bind("configuration", configuration, "xs:string");
+                processor.bind("compiled-path", compiledPath, "xs:string");
+                Iter iter = processor.iter();
+                records = iter.next();
+                compiled = iter.next();
+            } catch (QueryException e) {
+                processor.close();
+                throw e;
+            }
+
+            loader = processor;
+        }
+
+        void close() {
+            if (loader != null) loader.close();
+            context.close();
+        }
+    }
+
+    /**
+     * List the source documents of an input directory like file:list($source-dir, false(), "*.xml,*.XML").
+     * @param inputDir The input directory.
+     * @return The names of the source documents.
+     */
+    public static List<String> listDocuments(String inputDir) {
+        List<String> documents = new ArrayList<>();
+        File[] files = new File(inputDir).listFiles();
+        if (files == null) return documents;
+
+        for (File file : files) {
+            String name = file.getName();
+            if (file.isFile() && (name.endsWith(".xml") || name.endsWith(".XML"))) documents.add(name);
+        }
+
+        Collections.sort(documents);
+        return documents;
+    }
+
+    /**
+     * Make the path of a target document like transform:target-path in transform.xqm.
+     * @param outputDir The directory of the target documents (must end with slash).
+     * @param document The name of the source document, which may be in a subdirectory.
+     * @param count The position of the target document among those made from the source document (starting from 1).
+     * @return The path of the target document, in the same subdirectory as the source document.
+     */
+    public static String targetPath(String outputDir, String document, int count) {
+        int slash = document.lastIndexOf('/');
+        String subdirectory = document.substring(0, slash + 1);
+        String name = document.substring(slash + 1);
+        int dot = name.indexOf('.');
+        String base = dot < 0 ? "" : name.substring(0, dot);
+        String extension = dot < 0 ? "" : name.substring(dot + 1);
+        return String.format("%s%s%s_%09d.%s", outputDir, subdirectory, base, count, extension);
+    }
+
+    /**
+     * Delete the target documents made from a source document, named like targetPath.
+     * @param outputDir The directory of the target documents (must end with slash).
+     * @param document The name of the source document, which may be in a subdirectory.
+     */
+    public static void deleteTargets(String outputDir, String document) {
+        int slash = document.lastIndexOf('/');
+        String name = document.substring(slash + 1);
+        int dot = name.indexOf('.');
+        String base = dot < 0 ? "" : name.substring(0, dot);
+        String extension = dot < 0 ? "" : name.substring(dot + 1);
+        Pattern pattern = Pattern.compile(Pattern.quote(base) + "_\\d{9}\\." + Pattern.quote(extension));
+
+        File[] files = new File(outputDir, document.substring(0, slash + 1)).listFiles();
+        if (files == null) return;
+
+        for (File file : files) {
+            if (file.isFile() && pattern.matcher(file.getName()).matches() && ! file.delete()) {
+                System.err.println("ERROR: cannot delete " + file.getPath());
+            }
+        }
+    }
+
+    /**
+     * Transform a source document and write each target document to its file as soon as it is produced.
+     * @param processor The query processor of transform-stream.xqy with all variables bound.
+     * @param outputDir The directory of the target documents (must end with slash).
+     * @param document The name of the source document.
+     * @return The number of target documents written. A target document that cannot be written completely is
+     * deleted.
+     * @throws QueryException
+     * @throws IOException
+     */
+    public static int stream(QueryProcessor processor, String outputDir, String document)
+            throws QueryException, IOException {
+        Iter iter = processor.iter();
+        int count = 0;
+
+        for (Item item; (item = iter.next()) != null; ) {
+            count++;
+            Path path = Paths.get(targetPath(outputDir, document, count));
+            if (path.getParent() != null) Files.createDirectories(path.getParent());
+
+            try (FileChannel channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                 OutputStream output = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+                 Serializer serializer = processor.getSerializer(output)) {
+                serializer.serialize(item);
+            } catch (QueryException | IOException e) {
+
+                // do not leave a partial target document behind
+                Files.deleteIfExists(path);
+                throw e;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Transform the source documents of an input directory in parallel. Like the sequential run, the first error is
+     * printed and no target documents are left for the documents after the failing one. The configuration is not
+     * checked against the structure here; see Transformer.checkConfiguration.
+     * @param session The session with the namespaces and the context to derive worker contexts from.
+     * @param configuration The mapping table in TSV format.
+     * @param compiledPath The path to the compiled expressions module, or the empty string.
+     * @param inputDir The directory of the source documents (must end with slash).
+     * @param database The name of the database with the source documents, or the empty string to read them from the input directory.
+     * @param outputDir The directory of the target documents (must end with slash).
+     * @param numThreads The number of worker threads.
+     * @param streaming Whether to write target documents from Java as they are produced.
+     * @return The source documents that were transformed successfully.
+     */
+    public static List<String> transform(TransformerSession session, String configuration, String compiledPath,
+                                         String inputDir, String database, String outputDir, int numThreads,
+                                         boolean streaming) {
+        List<String> documents;
+
+        try {
+            documents = session.listDocuments(inputDir, database);
+        } catch (QueryException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+
+        return transform(session, configuration, compiledPath, inputDir, database, documents, outputDir, numThreads,
+                streaming);
+    }
+
+    /**
+     * Transform the given source documents of an input directory in parallel. Like the sequential run, the first error
+     * is printed and no target documents are left for the documents after the failing one: documents that were not
+     * started yet are skipped, running ones are stopped, and the target documents they wrote are deleted. The
+     * configuration is not checked against the structure here.
+     * @param session The session with the namespaces and the context to derive worker contexts from.
+     * @param configuration The mapping table in TSV format.
+     * @param compiledPath The path to the compiled expressions module, or the empty string.
+     * @param inputDir The directory of the source documents (must end with slash).
+     * @param database The name of the database with the source documents, or the empty string to read them from the input directory.
+     * @param documents The names of the source documents to transform.
+     * @param outputDir The directory of the target documents (must end with slash).
+     * @param numThreads The number of worker threads.
+     * @param streaming Whether to write target documents from Java as they are produced.
+     * @return The source documents that were transformed successfully.
+     */
+    public static List<String> transform(final TransformerSession session, final String configuration,
+                                         final String compiledPath, final String inputDir, final String database,
+                                         List<String> documents, final String outputDir, int numThreads,
+                                         final boolean streaming) {
+        final String query = session.query(streaming ? STREAM_QUERY_PATH : QUERY_PATH);
+        final String loadQuery = session.query(LOAD_QUERY_PATH);
+        final List<Worker> allWorkers = Collections.synchronizedList(new ArrayList<Worker>());
+
+        // one BaseX context per worker thread, with the parser options of the session
+        final ThreadLocal<Worker> workers = new ThreadLocal<Worker>() {
+
+            @Override
+            protected Worker initialValue() {
+                Worker worker = new Worker(session.newWorkerContext());
+                allWorkers.add(worker);
+                return worker;
+            }
+        };
+
+        // set at the first error; the documents that were started and the queries that are running
+        final AtomicBoolean failed = new AtomicBoolean();
+        final Set<String> started = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        final Map<String, QueryProcessor> running = new ConcurrentHashMap<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        List<Future<Void>> futures = new ArrayList<>();
+        List<String> transformed = new ArrayList<>();
+        int failure = documents.size();
+
+        try {
+
+            // submit one task per source document
+            for (final String document : documents) {
+                futures.add(executor.submit(new Callable<Void>() {
+
+                    @Override
+                    public Void call() throws QueryException, IOException {
+                        if (failed.get()) return null;
+                        started.add(document);
+
+                        Worker worker = workers.get();
+                        worker.load(loadQuery, configuration, compiledPath);
+
+                        // only the variables of the document change from one document to the next
+                        try (QueryProcessor processor = new QueryProcessor(query, worker.context)) {
+                            running.put(document, processor);
+                            processor.bind("namespaces", session.getNamespaces(), "map(xs:string, xs:string)");
+                            processor.bind("records", worker.records);
+                            processor.bind("compiled", worker.compiled);
+                            processor.bind("source-dir", inputDir, "xs:string");
+                            processor.bind("source-path-relative", document, "xs:string");
+                            processor.bind("database", database, "xs:string");
+                            processor.bind("profile", Profiler.isEnabled(), "xs:boolean");
+
+                            if (streaming) {
+                                stream(processor, outputDir, document);
+                            } else {
+                                processor.bind("target-dir", outputDir, "xs:string");
+                                processor.value();
+                            }
+                        } finally {
+                            running.remove(document);
+                        }
+
+                        return null;
+                    }
+                }));
+            }
+
+            // wait for documents in order and stop at the first error like the sequential run
+            for (int i = 0; i < futures.size(); i++) {
+
+                try {
+                    futures.get(i).get();
+                    transformed.add(documents.get(i));
+                } catch (ExecutionException e) {
+                    e.getCause().printStackTrace();
+                    failure = i;
+                    break;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    failure = i;
+                    break;
+                }
+            }
+
+            // skip the documents that were not started and stop the running ones
+            if (failure < documents.size()) {
+                failed.set(true);
+                for (QueryProcessor processor : running.values()) processor.stop();
+            }
+
+        } finally {
+            executor.shutdownNow();
+
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            for (Worker worker : allWorkers) worker.close();
+        }
+
+        // the sequential run writes nothing after the failing document
+        for (int i = failure + 1; i < documents.size(); i++) {
+            if (started.contains(documents.get(i))) deleteTargets(outputDir, documents.get(i));
+        }
+
+        return transformed;
+    }
+}
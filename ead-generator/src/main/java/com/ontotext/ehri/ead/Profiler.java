@@ -0,0 +1,133 @@
+package com.ontotext.ehri.ead;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the cost of each mapping-table record (target path and target node) while documents are transformed:
+ * how many times it was invoked, how long its expressions took and how many nodes it produced. The methods are called
+ * from transform:make-children-profiled in transform.xqm through the Java binding of BaseX, possibly from several
+ * worker threads at once. Profiling is off unless enabled, and costs nothing when off because transform.xqm then
+ * takes the unprofiled path.
+ */
+public class Profiler {
+    private static final String SEPARATOR = "\t";
+
+    private static volatile boolean enabled = false;
+    private static volatile String institution = "";
+    private static final ConcurrentHashMap<List<String>, Cost> COSTS = new ConcurrentHashMap<>();
+
+    /**
+     * Cost of one mapping-table record.
+     */
+    private static class Cost {
+        final LongAdder invocations = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+        final LongAdder nodes = new LongAdder();
+    }
+
+    public static void setEnabled(boolean enabled) {
+        Profiler.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Attribute the records profiled from now on to an institution.
+     * @param institution The name of the institution.
+     */
+    public static void setInstitution(String institution) {
+        Profiler.institution = institution;
+    }
+
+    /**
+     * Start measuring the evaluation of a record.
+     * @return The current time in nanoseconds.
+     */
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Finish measuring the evaluation of a record.
+     * @param start The time returned by start().
+     * @param evaluated Any value computed from the evaluated expressions, so that they are evaluated before this call.
+     * @return The elapsed time in nanoseconds.
+     */
+    public static long elapsed(long start, long evaluated) {
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Record one invocation of a record.
+     * @param targetPath The target path of the record.
+     * @param targetNode The target node of the record.
+     * @param nanos The time spent evaluating the expressions of the record.
+     * @param nodes The number of nodes produced.
+     */
+    public static void record(String targetPath, String targetNode, long nanos, long nodes) {
+        List<String> key = new ArrayList<>(3);
+        key.add(institution);
+        key.add(targetPath);
+        key.add(targetNode);
+
+        Cost cost = COSTS.get(key);
+        if (cost == null) {
+            Cost newCost = new Cost();
+            cost = COSTS.putIfAbsent(key, newCost);
+            if (cost == null) cost = newCost;
+        }
+
+        cost.invocations.increment();
+        cost.nanos.add(nanos);
+        cost.nodes.add(nodes);
+    }
+
+    /**
+     * Write the collected costs as TSV with a header line, the most expensive records first.
+     * @param reportFile The file to write the report to.
+     * @throws IOException
+     */
+    public static void writeReport(File reportFile) throws IOException {
+        List<Map.Entry<List<String>, Cost>> entries = new ArrayList<>(COSTS.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<List<String>, Cost>>() {
+
+            @Override
+            public int compare(Map.Entry<List<String>, Cost> e1, Map.Entry<List<String>, Cost> e2) {
+                return Long.compare(e2.getValue().nanos.sum(), e1.getValue().nanos.sum());
+            }
+        });
+
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(reportFile), StandardCharsets.UTF_8))) {
+            writer.write("institution\ttarget-path\ttarget-node\tinvocations\ttotal-ms\tms-per-invocation\tnodes\n");
+
+            for (Map.Entry<List<String>, Cost> entry : entries) {
+                long invocations = entry.getValue().invocations.sum();
+                double millis = entry.getValue().nanos.sum() / 1e6;
+
+                for (String field : entry.getKey()) writer.write(field + SEPARATOR);
+                writer.write(invocations + SEPARATOR);
+                writer.write(String.format(Locale.ROOT, "%.3f", millis) + SEPARATOR);
+                writer.write(String.format(Locale.ROOT, "%.6f", millis / Math.max(1, invocations)) + SEPARATOR);
+                writer.write(entry.getValue().nodes.sum() + "\n");
+            }
+        }
+    }
+
+    /**
+     * Forget the collected costs.
+     */
+    public static void reset() {
+        COSTS.clear();
+    }
+}
@@ -1,10 +1,8 @@
 package com.ontotext.ehri.ead;
 
-import org.basex.core.Context;
 import org.basex.query.QueryException;
 import org.basex.query.QueryProcessor;
-import org.basex.query.value.item.Str;
-import org.basex.query.value.type.AtomType;
+import org.basex.query.iter.Iter;
 import org.yaml.snakeyaml.Yaml;
 
 import java.io.*;
@@ -13,9 +11,10 @@ import java.util.List;
 import java.util.Map;
 
 public class Transformer {
-    private static final String ENCODING = "UTF-8";
+    static final String ENCODING = "UTF-8";
+    private static final String XTRA_MODULE = "/xquery/xtra.xqm";
 
-    private static String slurpText(String filePath, String encoding) {
+    static String slurpText(String filePath, String encoding) {
         StringBuilder result = new StringBuilder();
         InputStream input = Transformer.class.getResourceAsStream(filePath);
 
@@ -34,70 +33,221 @@ public class Transformer {
         return result.toString();
     }
 
+    private static String resolveResource(String resourcePath) {
+
+        try {
+            return new File(Transformer.class.getResource(resourcePath).toURI()).getAbsolutePath();
+        } catch (URISyntaxException e) {
+            e.printStackTrace();
+            return resourcePath;
+        }
+    }
+
+    /**
+     * Compile the distinct expressions of a mapping table into a temporary XQuery module. Expressions that do not
+     * parse are reported with their target paths and left out of the module.
+     * @param session The session to parse the expressions in.
+     * @param configuration The mapping table in TSV format.
+     * @return The path to the compiled module, or the empty string if compilation failed.
+     */
+    public static String compileExpressions(TransformerSession session, String configuration) {
+
+        try {
+            File moduleFile = File.createTempFile("compiled", ".xqm");
+            moduleFile.deleteOnExit();
+            String xtraURI = new File(resolveResource(XTRA_MODULE)).toURI().toString();
+            ExpressionCompiler.compile(configuration, xtraURI, moduleFile, session.getContext());
+            return moduleFile.getAbsolutePath();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return "";
+        }
+    }
+
     public static void transform(org.basex.query.value.map.Map namespaces, String structurePath, String configuration, String inputDir, String outputDir) {
-        String query = slurpText("/xquery/transform.xqy", ENCODING);
-        Context context = new Context();
+        transform(namespaces, structurePath, configuration, "", inputDir, outputDir);
+    }
 
-        try (QueryProcessor processor = new QueryProcessor(query, context)) {
-            processor.bind("namespaces", namespaces, "map(xs:string, xs:string)");
+    public static void transform(org.basex.query.value.map.Map namespaces, String structurePath, String configuration, String compiledPath, String inputDir, String outputDir) {
+
+        try (TransformerSession session = new TransformerSession(namespaces, true)) {
+            checkConfiguration(session, structurePath, configuration);
+            transform(session, configuration, compiledPath, inputDir, "", outputDir);
+        } catch (QueryException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Check the target elements of a mapping table against the EAD structure, parsing the structure file once.
+     * @param session The session to run the check in.
+     * @param structurePath The path to the EAD structure file.
+     * @param configuration The mapping table in TSV format.
+     * @throws QueryException If a target element does not exist or cannot have its parent.
+     */
+    public static void checkConfiguration(TransformerSession session, String structurePath, String configuration) throws QueryException {
+
+        try (QueryProcessor processor = new QueryProcessor(session.query("/xquery/check-configuration.xqy"), session.getContext())) {
             processor.bind("structure-path", structurePath, "xs:string");
             processor.bind("configuration", configuration, "xs:string");
+            processor.value();
+        }
+    }
+
+    /**
+     * Transform the source documents of an institution in the session context with a mapping table that has already
+     * been checked. The first error is printed and no further documents are transformed.
+     * @param session The session with the namespaces and the context.
+     * @param configuration The mapping table in TSV format.
+     * @param compiledPath The path to the compiled expressions module, or the empty string.
+     * @param inputDir The directory of the source documents (must end with slash).
+     * @param database The name of the database with the source documents, or the empty string to read them from the input directory.
+     * @param outputDir The directory of the target documents (must end with slash).
+     * @return The number of source documents transformed before the first error, if any.
+     */
+    public static int transform(TransformerSession session, String configuration, String compiledPath, String inputDir, String database, String outputDir) {
+        int numDocuments = 0;
+
+        try (QueryProcessor processor = new QueryProcessor(session.query("/xquery/transform.xqy"), session.getContext())) {
+            processor.bind("namespaces", session.getNamespaces(), "map(xs:string, xs:string)");
+            processor.bind("configuration", configuration, "xs:string");
+            processor.bind("compiled-path", compiledPath, "xs:string");
             processor.bind("source-dir", inputDir, "xs:string");
+            processor.bind("database", database, "xs:string");
             processor.bind("target-dir", outputDir, "xs:string");
-            processor.value();
+            processor.bind("profile", Profiler.isEnabled(), "xs:boolean");
+
+            // the query returns the path of each source document once its target documents are written
+            Iter iter = processor.iter();
+            while (iter.next() != null) numDocuments++;
 
         } catch (QueryException e) {
             e.printStackTrace();
-        } finally {
-            context.close();
         }
+
+        return numDocuments;
+    }
+
+    /**
+     * Choose the source of mapping tables given by the configuration.
+     * @param config The configuration.
+     * @param offline If true, use cached mapping tables without contacting Google.
+     * @return The source of mapping tables.
+     */
+    public static MappingSource mappingSource(Map config, boolean offline) {
+        String source = (String) config.get("mapping-source");
+
+        // mapping tables in local TSV files
+        if ("tsv".equals(source)) {
+            String dirOption = (String) config.get("mapping-dir");
+            return new TsvMappingSource(new File(dirOption == null ? "." : dirOption));
+        }
+
+        if (source != null && ! "google-sheets".equals(source)) {
+            throw new IllegalArgumentException("unknown mapping source: " + source);
+        }
+
+        // keep mapping tables on disk and refetch them only when the spreadsheet changes
+        String cacheDirOption = (String) config.get("mapping-table-cache");
+        File cacheDir = cacheDirOption == null ? MappingTableCache.DEFAULT_DIR : new File(cacheDirOption);
+        return new GoogleSheetsMappingSource(new MappingTableCache(cacheDir, offline));
     }
 
     public static void transformAll() {
+        transformAll(false);
+    }
+
+    /**
+     * Transform the files of all institutions in the configuration.
+     * @param offline If true, use cached mapping tables without contacting Google.
+     */
+    public static void transformAll(boolean offline) {
 
         try (InputStream configStream = Transformer.class.getResourceAsStream("/config.yml")) {
             Yaml yaml = new Yaml();
             Map config = (Map) yaml.load(configStream);
 
-            // convert from Java map to BaseX map
-            Map<String, String> namespacesJava = (Map) config.get("namespaces");
-            org.basex.query.value.map.Map namespaces = org.basex.query.value.map.Map.EMPTY;
-            for (String key : namespacesJava.keySet()) {
-                String value = namespacesJava.get(key);
-
-                try {
-                    namespaces = namespaces.put(
-                            new Str(key.getBytes(ENCODING), AtomType.STR),
-                            new Str(value.getBytes(ENCODING), AtomType.STR),
-                            null);
-                } catch (QueryException e) {
-                    e.printStackTrace();
-                }
-            }
-
             // resolve relative file path
-            String structureFile = (String) config.get("structure-file");
-            try {
-                structureFile = new File(Transformer.class.getResource(structureFile).toURI()).getAbsolutePath();
-            } catch (URISyntaxException e) {
-                e.printStackTrace();
-            }
+            String structureFile = resolveResource((String) config.get("structure-file"));
+
+            // compile mapping-table expressions once unless disabled
+            Object precompileOption = config.get("precompile-expressions");
+            boolean precompile = precompileOption == null || Boolean.TRUE.equals(precompileOption);
+
+            // number of documents to transform in parallel
+            Object threadsOption = config.get("threads");
+            int defaultThreads = threadsOption == null ? 1 : ((Number) threadsOption).intValue();
 
-            for (Map transformation : (List<Map>) config.get("transformations")) {
-                String institution = (String) transformation.get("institution");
-                System.out.print("transforming files for \"" + institution + "\"...");
-                long start = System.currentTimeMillis();
+            // write target documents from Java one by one instead of materializing them in the query
+            boolean streaming = Boolean.TRUE.equals(config.get("streaming"));
 
-                // fetch table in TSV format
-                String mappingTableId = (String) transformation.get("mapping-table");
-                String mappingTable = GoogleSheets.toString(GoogleSheets.getValues(mappingTableId, "A1:D"), "\n", "\t");
+            // transform only source documents that changed since the last run
+            boolean incremental = Boolean.TRUE.equals(config.get("incremental"));
 
-                String inputDir = (String) transformation.get("input-dir");
-                String outputDir = (String) transformation.get("output-dir");
+            MappingSource mappingTables = mappingSource(config, offline);
+
+            // record the cost of each mapping-table record if a report file is given
+            String profileReport = (String) config.get("profile-report");
+            Profiler.setEnabled(profileReport != null);
+
+            // one context for the whole run; whitespace-only text nodes are chopped unless disabled
+            Object chopOption = config.get("chop-whitespace");
+            boolean chop = chopOption == null || Boolean.TRUE.equals(chopOption);
+
+            try (TransformerSession session = new TransformerSession((Map<String, String>) config.get("namespaces"), chop)) {
+
+                for (Map transformation : (List<Map>) config.get("transformations")) {
+                    String institution = (String) transformation.get("institution");
+                    System.out.print("transforming files for \"" + institution + "\"...");
+                    long start = System.currentTimeMillis();
+                    Profiler.setInstitution(institution);
+
+                    // fetch table in TSV format
+                    String mappingTable = mappingTables.getTable((String) transformation.get("mapping-table"));
+
+                    // check the mapping table against the structure once, before any document is touched
+                    try {
+                        checkConfiguration(session, structureFile, mappingTable);
+                    } catch (QueryException e) {
+                        System.out.println();
+                        e.printStackTrace();
+                        continue;
+                    }
+
+                    String inputDir = (String) transformation.get("input-dir");
+                    String outputDir = (String) transformation.get("output-dir");
+
+                    // take source documents from a database built beforehand instead of parsing the input directory
+                    String databaseOption = (String) transformation.get("database");
+                    String database = databaseOption == null ? "" : databaseOption;
+
+                    long compileStart = System.currentTimeMillis();
+                    String compiledPath = precompile ? compileExpressions(session, mappingTable) : "";
+                    long compileTime = System.currentTimeMillis() - compileStart;
+
+                    Object transformationThreads = transformation.get("threads");
+                    int numThreads = transformationThreads == null ? defaultThreads : ((Number) transformationThreads).intValue();
+
+                    int numDocuments;
+                    if (incremental) {
+                        numDocuments = IncrementalTransformer.transform(session, structureFile, mappingTable, compiledPath, inputDir, database, outputDir, numThreads, streaming);
+                    } else if (numThreads > 1 || streaming) {
+                        numDocuments = ParallelTransformer.transform(session, mappingTable, compiledPath, inputDir, database, outputDir, numThreads, streaming).size();
+                    } else {
+                        numDocuments = transform(session, mappingTable, compiledPath, inputDir, database, outputDir);
+                    }
+
+                    long time = System.currentTimeMillis() - start;
+                    System.out.print(" " + time + " ms");
+                    System.out.print(" (" + numDocuments + " documents transformed, " + (time / Math.max(1, numDocuments)) + " ms per document");
+                    if (precompile) System.out.print(", expressions compiled in " + compileTime + " ms");
+                    System.out.println(")");
+                }
+            }
 
-                transform(namespaces, structureFile, mappingTable, inputDir, outputDir);
-                long time = System.currentTimeMillis() - start;
-                System.out.println(" " + time + " ms");
+            if (profileReport != null) {
+                Profiler.writeReport(new File(profileReport));
+                System.out.println("profile written to " + profileReport);
             }
 
         } catch (IOException e) {
@@ -106,6 +256,6 @@ public class Transformer {
     }
 
     public static void main(String[] args) {
-        transformAll();
+        transformAll(args.length > 0 && args[0].equals("--offline"));
     }
 }
@@ -0,0 +1,188 @@
+package com.ontotext.ehri.ead;
+
+import org.basex.core.Context;
+import org.basex.core.MainOptions;
+import org.basex.query.QueryException;
+import org.basex.query.QueryProcessor;
+import org.basex.query.iter.Iter;
+import org.basex.query.value.item.Item;
+import org.basex.query.value.item.Str;
+import org.basex.query.value.type.AtomType;
+
+import java.io.Closeable;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * State shared by all transformations of a run: one BaseX context with the parser options for source documents, the
+ * namespaces as a BaseX map and the text of the main modules, which are read from the classpath once. Worker threads
+ * get their own contexts derived from the session context, so they parse documents with the same options.
+ *
+ * Source documents are parsed by fn:doc with the internal parser and without DTD processing, so no DTD is ever fetched,
+ * and whitespace-only text nodes are chopped unless disabled. Alternatively, the source documents of an institution
+ * can be taken from a BaseX database built beforehand, which avoids parsing them again on every run.
+ */
+public class TransformerSession implements Closeable {
+
+    // lists the XML documents of a database without its raw resources
+    private static final String LIST_QUERY =
+            "declare variable $database external; db:list-details($database)[@raw = 'false']/fn:string()";
+
+    // returns each XML document of a database followed by a hash of its serialized content
+    private static final String HASH_QUERY = "declare variable $database external;\n" +
+            "for $path in db:list-details($database)[@raw = 'false']/fn:string() order by $path\n" +
+            "return ($path, fn:lower-case(fn:string(xs:hexBinary(hash:sha256(fn:serialize(db:open($database, $path)))))))";
+
+    private Context context;
+    private org.basex.query.value.map.Map namespaces;
+    private final Map<String, String> queries = new HashMap<>();
+
+    /**
+     * Start a session.
+     * @param namespaces Map from namespace prefix to namespace URI.
+     * @param chop Whether to chop whitespace-only text nodes of source documents.
+     */
+    public TransformerSession(Map<String, String> namespaces, boolean chop) {
+        this(toBaseXMap(namespaces), chop);
+    }
+
+    /**
+     * Start a session.
+     * @param namespaces Map from namespace prefix to namespace URI as a BaseX map.
+     * @param chop Whether to chop whitespace-only text nodes of source documents.
+     */
+    public TransformerSession(org.basex.query.value.map.Map namespaces, boolean chop) {
+        this.namespaces = namespaces;
+        context = new Context();
+        context.options.set(MainOptions.CHOP, chop);
+        context.options.set(MainOptions.DTD, false);
+        context.options.set(MainOptions.INTPARSE, true);
+    }
+
+    /**
+     * Convert a Java map to a BaseX map.
+     * @param map Map from namespace prefix to namespace URI.
+     * @return The same map as a BaseX map.
+     */
+    public static org.basex.query.value.map.Map toBaseXMap(Map<String, String> map) {
+        org.basex.query.value.map.Map result = org.basex.query.value.map.Map.EMPTY;
+
+        for (String key : map.keySet()) {
+            String value = map.get(key);
+
+            try {
+                result = result.put(
+                        new Str(key.getBytes(Transformer.ENCODING), AtomType.STR),
+                        new Str(value.getBytes(Transformer.ENCODING), AtomType.STR),
+                        null);
+            } catch (QueryException | UnsupportedEncodingException e) {
+                e.printStackTrace();
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @return The context of the session.
+     */
+    public Context getContext() {
+        return context;
+    }
+
+    /**
+     * @return Map from namespace prefix to namespace URI as a BaseX map.
+     */
+    public org.basex.query.value.map.Map getNamespaces() {
+        return namespaces;
+    }
+
+    /**
+     * Return the text of a main module, reading it from the classpath the first time only.
+     * @param queryPath The classpath location of the module.
+     * @return The text of the module.
+     */
+    public synchronized String query(String queryPath) {
+        String query = queries.get(queryPath);
+
+        if (query == null) {
+            query = Transformer.slurpText(queryPath, Transformer.ENCODING);
+            queries.put(queryPath, query);
+        }
+
+        return query;
+    }
+
+    /**
+     * Make a context for a worker thread with the options and the user of the session context. The caller must close
+     * it.
+     * @return A new context.
+     */
+    public Context newWorkerContext() {
+
+        // a derived context has no user of its own, and cannot open documents without one
+        Context workerContext = new Context(context);
+        workerContext.user(context.user());
+        return workerContext;
+    }
+
+    /**
+     * List the source documents of an institution like file:list($source-dir, false(), "*.xml,*.XML"), or the XML
+     * documents of its database if it has one, like transform:source-paths in transform.xqm.
+     * @param inputDir The directory of the source documents.
+     * @param database The name of the database with the source documents, or the empty string.
+     * @return The names of the source documents in order; those from a database may be in subdirectories.
+     * @throws QueryException
+     */
+    public List<String> listDocuments(String inputDir, String database) throws QueryException {
+        if (database.isEmpty()) return ParallelTransformer.listDocuments(inputDir);
+        List<String> documents = new ArrayList<>();
+
+        try (QueryProcessor processor = new QueryProcessor(LIST_QUERY, context)) {
+            processor.bind("database", database, "xs:string");
+            Iter iter = processor.iter();
+            for (Item item; (item = iter.next()) != null; ) documents.add(new String(item.string(null), Transformer.ENCODING));
+        } catch (UnsupportedEncodingException e) {
+            e.printStackTrace();
+        }
+
+        Collections.sort(documents);
+        return documents;
+    }
+
+    /**
+     * Hash the content of the XML documents of a database. The database keeps no modification time of each XML
+     * document, only one for the whole database, so the documents are serialized and hashed instead.
+     * @param database The name of the database with the source documents.
+     * @return Map from the names of the documents in order to the hashes of their content.
+     * @throws QueryException
+     */
+    public Map<String, String> hashDocuments(String database) throws QueryException {
+        Map<String, String> hashes = new LinkedHashMap<>();
+
+        try (QueryProcessor processor = new QueryProcessor(HASH_QUERY, context)) {
+            processor.bind("database", database, "xs:string");
+            Iter iter = processor.iter();
+
+            for (Item path; (path = iter.next()) != null; ) {
+                hashes.put(new String(path.string(null), Transformer.ENCODING),
+                        new String(iter.next().string(null), Transformer.ENCODING));
+            }
+
+        } catch (UnsupportedEncodingException e) {
+            e.printStackTrace();
+        }
+
+        return hashes;
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+}
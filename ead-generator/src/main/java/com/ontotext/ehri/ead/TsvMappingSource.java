@@ -0,0 +1,28 @@
+package com.ontotext.ehri.ead;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Takes mapping tables from local TSV files, such as XQuery/configuration-kazerne_dossin.tsv. The name of a mapping
+ * table is the path to its file, either absolute or relative to the base directory.
+ */
+public class TsvMappingSource implements MappingSource {
+    private File baseDir;
+
+    /**
+     * @param baseDir The directory to resolve relative paths against.
+     */
+    public TsvMappingSource(File baseDir) {
+        this.baseDir = baseDir;
+    }
+
+    @Override
+    public String getTable(String name) throws IOException {
+        File file = new File(name);
+        if (! file.isAbsolute()) file = new File(baseDir, name);
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
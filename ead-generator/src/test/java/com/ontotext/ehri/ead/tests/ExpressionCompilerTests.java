@@ -0,0 +1,85 @@
+package com.ontotext.ehri.ead.tests;
+
+import com.ontotext.ehri.ead.ExpressionCompiler;
+import com.ontotext.ehri.ead.TransformerSession;
+import org.basex.query.QueryException;
+import org.basex.query.QueryProcessor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+public class ExpressionCompilerTests {
+    private static final String HEADER = "target-path\ttarget-node\tsource-node\tvalue\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TransformerSession session;
+
+    @Before
+    public void setUp() {
+        session = new TransformerSession(Fixtures.namespaces(), true);
+    }
+
+    @After
+    public void tearDown() {
+        session.close();
+    }
+
+    @Test
+    public void testEscaping() throws IOException, QueryException {
+        String[] expressions = { "\"a \"\"quoted\"\" &amp; 'b'\"", "concat(\"&amp;\", 'x')", "string(@id) || \"&#9;\"" };
+        String configuration = HEADER +
+                "/ead/\teadid\t.\t" + expressions[0] + "\n" +
+                "/ead/\tunittitle\t.\t" + expressions[1] + "\n" +
+                "/ead/\tunitid\t.\t" + expressions[2] + "\n";
+        File module = compile(configuration, 4);
+
+        // each expression is found by its text and gives the same result as evaluating it directly
+        for (String expression : expressions) {
+            assertEquals(expression, evaluate("xquery:eval($expression, map { '': <a id='1'/> })", expression, ""),
+                    evaluate("compiled:functions()($expression)(<a id='1'/>)", expression, module.toURI().toString()));
+        }
+    }
+
+    @Test
+    public void testRejected() throws IOException, QueryException {
+        String configuration = HEADER +
+                "/ead/\teadid\t.\ttitle/text()\n" +
+                "/ead/\tunittitle\t.\ttitle/text(\n" +
+                "/ead/\tunitid\t.\txtra:no-such-function(.)\n" +
+                "/ead/\tunitdate\t.\txtra:normalize-date-interval(date/text())\n";
+        File module = compile(configuration, 3);
+
+        // the module loads without the expressions that do not parse; the source node . is compiled too
+        String uri = module.toURI().toString();
+        assertEquals("3", evaluate("map:size(compiled:functions())", "", uri));
+        assertEquals("true", evaluate("map:contains(compiled:functions(), 'title/text()')", "", uri));
+        assertEquals("false", evaluate("map:contains(compiled:functions(), $expression)", "title/text(", uri));
+    }
+
+    private File compile(String configuration, int expected) throws IOException {
+        File module = folder.newFile("compiled.xqm");
+        assertEquals(expected, ExpressionCompiler.compile(configuration, Fixtures.xtraURI(), module, session.getContext()));
+        return module;
+    }
+
+    private String evaluate(String query, String expression, String moduleURI) throws QueryException {
+        String prolog = "declare variable $expression external;\n";
+        if (! moduleURI.isEmpty()) {
+            prolog = "import module namespace compiled = \"compiled\" at \"" + moduleURI + "\";\n" + prolog;
+        }
+
+        try (QueryProcessor processor = new QueryProcessor(prolog + "string-join(" + query + ", '|')", session.getContext())) {
+            processor.bind("expression", expression);
+            return (String) processor.value().toJava();
+        }
+    }
+}
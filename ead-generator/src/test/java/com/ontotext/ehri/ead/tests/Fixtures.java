@@ -0,0 +1,98 @@
+package com.ontotext.ehri.ead.tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * A small mapping table and source documents for tests that run transformations.
+ */
+final class Fixtures {
+
+    // one target document per record; a record with an ID that is not a number makes the transformation fail
+    static final String MAPPING_TABLE = "target-path\ttarget-node\tsource-node\tvalue\n" +
+            "/\tead\t/records/record\t\n" +
+            "/ead/\teadheader\t.\t\n" +
+            "/ead/eadheader/\teadid\t.\txs:integer(id/text())\n" +
+            "/ead/\tarchdesc\t.\t\n" +
+            "/ead/archdesc/\t@level\t.\t\"fonds\"\n" +
+            "/ead/archdesc/\tdid\t.\t\n" +
+            "/ead/archdesc/did/\tunittitle\t.\ttitle/text()\n" +
+            "/ead/archdesc/did/\tunitdate\t.\txtra:normalize-date-interval(date/text())\n";
+
+    private Fixtures() {
+    }
+
+    static Map<String, String> namespaces() {
+        Map<String, String> namespaces = new HashMap<>();
+        namespaces.put("", "urn:isbn:1-931666-22-9");
+        namespaces.put("xsi", "http://www.w3.org/2001/XMLSchema-instance");
+        return namespaces;
+    }
+
+    static String structurePath() {
+        return resource("/ead2002.struct").getAbsolutePath();
+    }
+
+    static String xtraURI() {
+        return resource("/xquery/xtra.xqm").toURI().toString();
+    }
+
+    private static File resource(String path) {
+
+        try {
+            return new File(Fixtures.class.getResource(path).toURI());
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Write a source document with one record per ID.
+     * @param dir The directory of the source documents.
+     * @param name The name of the source document.
+     * @param ids The IDs of the records.
+     * @throws IOException
+     */
+    static void writeSource(File dir, String name, String... ids) throws IOException {
+        StringBuilder xml = new StringBuilder("<records>\n");
+
+        for (String id : ids) {
+            xml.append("  <record><id>").append(id).append("</id><title>Title ").append(id)
+                    .append("</title><date>1942-1945</date></record>\n");
+        }
+
+        xml.append("</records>\n");
+        File file = new File(dir, name);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), xml.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Read the target documents in a directory and its subdirectories.
+     * @param dir The directory of the target documents.
+     * @return Map from the paths of the target documents relative to the directory to their content, in order.
+     * @throws IOException
+     */
+    static Map<String, String> targets(File dir) throws IOException {
+        Map<String, String> targets = new TreeMap<>();
+        Path root = dir.toPath();
+
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                if (! Files.isRegularFile(path) || ! path.getFileName().toString().matches(".*_\\d{9}\\..*")) continue;
+                String content = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+                targets.put(root.relativize(path).toString().replace(File.separatorChar, '/'), content);
+            }
+        }
+
+        return targets;
+    }
+}
@@ -0,0 +1,109 @@
+package com.ontotext.ehri.ead.tests;
+
+import com.ontotext.ehri.ead.IncrementalTransformer;
+import com.ontotext.ehri.ead.Transformer;
+import com.ontotext.ehri.ead.TransformerSession;
+import org.basex.core.BaseXException;
+import org.basex.core.cmd.Close;
+import org.basex.core.cmd.CreateDB;
+import org.basex.core.cmd.DropDB;
+import org.basex.core.cmd.Open;
+import org.basex.core.cmd.Replace;
+import org.basex.query.QueryException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IncrementalTransformerTests {
+    private static final String DATABASE = "ead-generator-incremental-tests";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TransformerSession session;
+    private File input;
+    private File output;
+
+    @Before
+    public void setUp() throws QueryException, IOException {
+        session = new TransformerSession(Fixtures.namespaces(), true);
+        Transformer.checkConfiguration(session, Fixtures.structurePath(), Fixtures.MAPPING_TABLE);
+        input = folder.newFolder("input");
+        output = folder.newFolder("output");
+        Fixtures.writeSource(input, "a.xml", "1");
+        Fixtures.writeSource(input, "b.xml", "2", "3");
+        Fixtures.writeSource(input, "c.xml", "4");
+    }
+
+    @After
+    public void tearDown() throws BaseXException {
+        new DropDB(DATABASE).execute(session.getContext());
+        session.close();
+    }
+
+    @Test
+    public void testDirectory() throws IOException {
+        assertEquals(3, transform(Fixtures.MAPPING_TABLE, ""));
+        assertEquals(0, transform(Fixtures.MAPPING_TABLE, ""));
+
+        // only the changed document is transformed again, and its stale target documents are deleted
+        Fixtures.writeSource(input, "b.xml", "5");
+        assertEquals(1, transform(Fixtures.MAPPING_TABLE, ""));
+        Map<String, String> targets = Fixtures.targets(output);
+        assertEquals(Arrays.asList("a_000000001.xml", "b_000000001.xml", "c_000000001.xml"),
+                Arrays.asList(targets.keySet().toArray()));
+        assertTrue(targets.get("b_000000001.xml").contains("<eadid>5</eadid>"));
+
+        // the target documents of a removed document are deleted
+        new File(input, "c.xml").delete();
+        assertEquals(0, transform(Fixtures.MAPPING_TABLE, ""));
+        assertEquals(Arrays.asList("a_000000001.xml", "b_000000001.xml"),
+                Arrays.asList(Fixtures.targets(output).keySet().toArray()));
+
+        // everything is transformed again when the mapping table changes
+        assertEquals(2, transform(Fixtures.MAPPING_TABLE + "/ead/archdesc/did/\tunitid\t.\tid/text()\n", ""));
+    }
+
+    @Test
+    public void testFailure() throws IOException {
+        Fixtures.writeSource(input, "b.xml", "x");
+        assertEquals(1, transform(Fixtures.MAPPING_TABLE, ""));
+
+        // the documents from the failing one on are tried again
+        Fixtures.writeSource(input, "b.xml", "2");
+        assertEquals(2, transform(Fixtures.MAPPING_TABLE, ""));
+        assertEquals(0, transform(Fixtures.MAPPING_TABLE, ""));
+    }
+
+    @Test
+    public void testDatabase() throws IOException {
+        // the database is built beforehand and not kept open, as in a run
+        new CreateDB(DATABASE, input.getAbsolutePath()).execute(session.getContext());
+        new Close().execute(session.getContext());
+        assertEquals(3, transform(Fixtures.MAPPING_TABLE, DATABASE));
+        assertEquals(0, transform(Fixtures.MAPPING_TABLE, DATABASE));
+
+        // only the replaced document is transformed again
+        new Open(DATABASE).execute(session.getContext());
+        new Replace("b.xml", "<records><record><id>5</id><title>Title 5</title><date>1942-1945</date></record></records>").execute(session.getContext());
+        new Close().execute(session.getContext());
+        assertEquals(1, transform(Fixtures.MAPPING_TABLE, DATABASE));
+        assertEquals(Arrays.asList("a_000000001.xml", "b_000000001.xml", "c_000000001.xml"),
+                Arrays.asList(Fixtures.targets(output).keySet().toArray()));
+    }
+
+    private int transform(String configuration, String database) throws IOException {
+        return IncrementalTransformer.transform(session, Fixtures.structurePath(), configuration, "",
+                TransformerTests.dir(input), database, TransformerTests.dir(output), 2, false);
+    }
+}
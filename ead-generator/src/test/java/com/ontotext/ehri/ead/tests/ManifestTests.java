@@ -0,0 +1,47 @@
+package com.ontotext.ehri.ead.tests;
+
+import com.ontotext.ehri.ead.Manifest;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ManifestTests {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        File dir = Files.createTempDirectory("manifest").toFile();
+
+        Manifest manifest = Manifest.load(dir);
+        assertTrue(manifest.getDocumentHashes().isEmpty());
+
+        manifest.setConfigurationHash(Manifest.hash("configuration"));
+        manifest.setStructureHash(Manifest.hash("structure"));
+        manifest.getDocumentHashes().put("a b.xml", Manifest.hash("a"));
+        manifest.save(dir);
+
+        Manifest loaded = Manifest.load(dir);
+        assertEquals(manifest.getConfigurationHash(), loaded.getConfigurationHash());
+        assertEquals(manifest.getStructureHash(), loaded.getStructureHash());
+        assertEquals(manifest.getDocumentHashes(), loaded.getDocumentHashes());
+
+        new File(dir, Manifest.FILE_NAME).delete();
+        dir.delete();
+    }
+
+    @Test
+    public void testHash() throws IOException {
+        File file = File.createTempFile("manifest", ".xml");
+        Files.write(file.toPath(), "<a/>".getBytes("UTF-8"));
+
+        assertEquals(Manifest.hash("<a/>"), Manifest.hash(file));
+        assertNotEquals(Manifest.hash("<a/>"), Manifest.hash("<b/>"));
+
+        file.delete();
+    }
+}
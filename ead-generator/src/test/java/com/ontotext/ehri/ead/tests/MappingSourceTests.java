@@ -0,0 +1,70 @@
+package com.ontotext.ehri.ead.tests;
+
+import com.ontotext.ehri.ead.*;
+import org.basex.query.QueryException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MappingSourceTests {
+    private static final String HEADER = "target-path\ttarget-node\tsource-node\tvalue";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testInMemory() throws IOException {
+        MappingSource source = new InMemoryMappingSource().put("test", HEADER + "\n/\tead\t.\t");
+        assertEquals(HEADER + "\n/\tead\t.\t", source.getTable("test"));
+    }
+
+    @Test
+    public void testInMemoryTransformation() throws IOException, QueryException {
+        MappingSource source = new InMemoryMappingSource().put("test", Fixtures.MAPPING_TABLE);
+        File input = folder.newFolder("input");
+        File output = folder.newFolder("output");
+        Fixtures.writeSource(input, "a.xml", "1", "2");
+
+        // a table from memory is checked and applied like one from Google Sheets
+        try (TransformerSession session = new TransformerSession(Fixtures.namespaces(), true)) {
+            String table = source.getTable("test");
+            Transformer.checkConfiguration(session, Fixtures.structurePath(), table);
+            assertEquals(1, Transformer.transform(session, table, "", TransformerTests.dir(input), "",
+                    TransformerTests.dir(output)));
+        }
+
+        Map<String, String> targets = Fixtures.targets(output);
+        assertEquals(Arrays.asList("a_000000001.xml", "a_000000002.xml"), Arrays.asList(targets.keySet().toArray()));
+        assertTrue(targets.get("a_000000001.xml").contains("<eadid>1</eadid>"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testInMemoryMissing() throws IOException {
+        new InMemoryMappingSource().getTable("missing");
+    }
+
+    @Test
+    public void testTsv() throws IOException {
+        MappingSource source = new TsvMappingSource(new File("XQuery"));
+        String table = source.getTable("configuration-kazerne_dossin.tsv");
+        assertTrue(table.startsWith(HEADER + "\n/\tead\t"));
+    }
+
+    @Test
+    public void testChoice() {
+        Map<String, Object> config = new HashMap<>();
+        assertTrue(Transformer.mappingSource(config, true) instanceof GoogleSheetsMappingSource);
+
+        config.put("mapping-source", "tsv");
+        assertTrue(Transformer.mappingSource(config, true) instanceof TsvMappingSource);
+    }
+}
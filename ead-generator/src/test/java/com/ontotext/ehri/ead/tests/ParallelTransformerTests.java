@@ -0,0 +1,91 @@
+package com.ontotext.ehri.ead.tests;
+
+import com.ontotext.ehri.ead.ParallelTransformer;
+import com.ontotext.ehri.ead.Transformer;
+import com.ontotext.ehri.ead.TransformerSession;
+import org.basex.query.QueryException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class ParallelTransformerTests {
+    private static final String[] DOCUMENTS = { "a.xml", "b.xml", "c.xml", "d.xml", "e.xml", "f.xml", "g.xml", "h.xml" };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TransformerSession session;
+    private File input;
+
+    @Before
+    public void setUp() throws QueryException, IOException {
+        session = new TransformerSession(Fixtures.namespaces(), true);
+        Transformer.checkConfiguration(session, Fixtures.structurePath(), Fixtures.MAPPING_TABLE);
+        input = folder.newFolder("input");
+    }
+
+    @After
+    public void tearDown() {
+        session.close();
+    }
+
+    @Test
+    public void testSameTargets() throws IOException {
+        for (int i = 0; i < DOCUMENTS.length; i++) Fixtures.writeSource(input, DOCUMENTS[i], "" + i, "" + (i + 10));
+        File sequential = folder.newFolder("sequential");
+        assertEquals(DOCUMENTS.length, Transformer.transform(session, Fixtures.MAPPING_TABLE, "", dir(input), "", dir(sequential)));
+
+        // each worker loads the configuration once and transforms several documents with it
+        for (boolean streaming : new boolean[] { false, true }) {
+            File parallel = folder.newFolder("parallel-" + streaming);
+            assertEquals(Arrays.asList(DOCUMENTS), ParallelTransformer.transform(session, Fixtures.MAPPING_TABLE, "",
+                    dir(input), "", dir(parallel), 3, streaming));
+            assertEquals(Fixtures.targets(sequential), Fixtures.targets(parallel));
+        }
+    }
+
+    @Test
+    public void testFailure() throws IOException {
+        for (int i = 0; i < DOCUMENTS.length; i++) Fixtures.writeSource(input, DOCUMENTS[i], "" + i);
+        Fixtures.writeSource(input, "c.xml", "x");
+        File sequential = folder.newFolder("sequential");
+        assertEquals(2, Transformer.transform(session, Fixtures.MAPPING_TABLE, "", dir(input), "", dir(sequential)));
+        Map<String, String> expected = Fixtures.targets(sequential);
+        assertEquals(Arrays.asList("a_000000001.xml", "b_000000001.xml"), Arrays.asList(expected.keySet().toArray()));
+
+        // no target documents are left for the documents after the failing one
+        for (boolean streaming : new boolean[] { false, true }) {
+            File parallel = folder.newFolder("parallel-" + streaming);
+            assertEquals(Arrays.asList("a.xml", "b.xml"), ParallelTransformer.transform(session, Fixtures.MAPPING_TABLE,
+                    "", dir(input), "", dir(parallel), 3, streaming));
+            assertEquals(expected.keySet(), Fixtures.targets(parallel).keySet());
+        }
+    }
+
+    @Test
+    public void testDeleteTargets() throws IOException {
+        File output = folder.newFolder("output");
+        Fixtures.writeSource(output, "a_000000001.xml", "1");
+        Fixtures.writeSource(output, "sub/a_000000001.xml", "1");
+        Fixtures.writeSource(output, "sub/a_000000002.xml", "2");
+        Fixtures.writeSource(output, "sub/ab_000000001.xml", "3");
+
+        // only the target documents in the subdirectory of the source document are deleted
+        ParallelTransformer.deleteTargets(dir(output), "sub/a.xml");
+        assertEquals(Arrays.asList("a_000000001.xml", "sub/ab_000000001.xml"),
+                Arrays.asList(Fixtures.targets(output).keySet().toArray()));
+    }
+
+    private static String dir(File dir) {
+        return TransformerTests.dir(dir);
+    }
+}
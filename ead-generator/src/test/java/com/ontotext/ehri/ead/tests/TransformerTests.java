@@ -0,0 +1,102 @@
+package com.ontotext.ehri.ead.tests;
+
+import com.ontotext.ehri.ead.Profiler;
+import com.ontotext.ehri.ead.Transformer;
+import com.ontotext.ehri.ead.TransformerSession;
+import org.basex.query.QueryException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TransformerTests {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TransformerSession session;
+
+    @Before
+    public void setUp() throws QueryException {
+        session = new TransformerSession(Fixtures.namespaces(), true);
+        Transformer.checkConfiguration(session, Fixtures.structurePath(), Fixtures.MAPPING_TABLE);
+    }
+
+    @After
+    public void tearDown() {
+        session.close();
+    }
+
+    @Test
+    public void testCount() throws IOException {
+        File input = folder.newFolder("input");
+        Fixtures.writeSource(input, "a.xml", "1", "2");
+        Fixtures.writeSource(input, "c.xml", "3");
+
+        // documents are counted once all their target documents are written
+        File output = folder.newFolder("output");
+        assertEquals(2, Transformer.transform(session, Fixtures.MAPPING_TABLE, "", dir(input), "", dir(output)));
+        Map<String, String> targets = Fixtures.targets(output);
+        assertEquals(Arrays.asList("a_000000001.xml", "a_000000002.xml", "c_000000001.xml"), Arrays.asList(targets.keySet().toArray()));
+        assertTrue(targets.get("a_000000002.xml").contains("<unittitle>Title 2</unittitle>"));
+
+        // a document that fails is not counted
+        File failing = folder.newFolder("failing");
+        Fixtures.writeSource(failing, "b.xml", "x");
+        assertEquals(0, Transformer.transform(session, Fixtures.MAPPING_TABLE, "", dir(failing), "", dir(folder.newFolder("none"))));
+    }
+
+    @Test
+    public void testPrecompiled() throws IOException {
+        File input = folder.newFolder("input");
+        Fixtures.writeSource(input, "a.xml", "1", "2");
+        Fixtures.writeSource(input, "c.xml", "3");
+
+        // compiled expressions give the same target documents as evaluated ones
+        File evaluated = folder.newFolder("evaluated");
+        File compiled = folder.newFolder("compiled");
+        String compiledPath = Transformer.compileExpressions(session, Fixtures.MAPPING_TABLE);
+        assertEquals(2, Transformer.transform(session, Fixtures.MAPPING_TABLE, "", dir(input), "", dir(evaluated)));
+        assertEquals(2, Transformer.transform(session, Fixtures.MAPPING_TABLE, compiledPath, dir(input), "", dir(compiled)));
+        assertEquals(Fixtures.targets(evaluated), Fixtures.targets(compiled));
+        new File(compiledPath).delete();
+    }
+
+    @Test
+    public void testProfile() throws IOException {
+        File input = folder.newFolder("input");
+        Fixtures.writeSource(input, "a.xml", "1", "2");
+        Profiler.reset();
+        Profiler.setInstitution("test");
+        Profiler.setEnabled(true);
+
+        try {
+            assertEquals(1, Transformer.transform(session, Fixtures.MAPPING_TABLE, "", dir(input), "", dir(folder.newFolder("output"))));
+        } finally {
+            Profiler.setEnabled(false);
+        }
+
+        // each record is recorded once per target node it is evaluated for
+        File report = folder.newFile("profile.tsv");
+        Profiler.writeReport(report);
+        Profiler.reset();
+        String profile = new String(Files.readAllBytes(report.toPath()), StandardCharsets.UTF_8);
+        assertTrue(profile, profile.contains("test\t/ead/archdesc/did/\tunittitle\t2\t"));
+        assertTrue(profile, profile.contains("test\t/\tead\t1\t"));
+    }
+
+    static String dir(File dir) {
+        return dir.getAbsolutePath() + File.separator;
+    }
+}